@@ -0,0 +1,136 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccessLogFilter 의 요청 처리 비용 측정.
+ * 할당량은 -prof gc 옵션으로 확인한다.
+ *
+ * baseline 은 필터 없이 mock 요청 생성과 filter chain 만 실행한 결과이므로
+ * 필터 자체의 비용은 두 결과의 차이로 판단한다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccessLogFilterBenchmark {
+
+    private static final String URI = "/api/v1/sample";
+
+    private static final String WHITE_LISTED_URI = "/api/v1/health";
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/90.0.4430.93 Safari/537.36";
+
+    @Param({"true", "false"})
+    public boolean contentLogging;
+
+    @Param({"false", "true"})
+    public boolean whiteListed;
+
+    @Param({"4", "32"})
+    public int headerCount;
+
+    @Param({"128", "16384"})
+    public int bodySize;
+
+    // false 일 경우 매 요청 마다 다른 User-Agent 를 사용하여 cache miss 를 유도한다.
+    @Param({"true", "false"})
+    public boolean userAgentCacheHit;
+
+    private AccessLogFilter accessLogFilter;
+
+    private byte[] requestBody;
+
+    private byte[] responseBody;
+
+    private FilterChain filterChain;
+
+    // MockServletContext 생성 비용이 크므로 공유한다.
+    private final MockServletContext servletContext = new MockServletContext();
+
+    private long sequence;
+
+    // 로그가 JIT 에 의해 제거되지 않도록 보관
+    private AccessLog lastAccessLog;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        AccessLogFilterConfigurer configurer = AccessLogFilterConfigurer.builder()
+                .whiteList(Arrays.asList(WHITE_LISTED_URI, "/favicon.ico", "/static/", "/actuator/"))
+                .maxContentLength(1024 * 1024)
+                .enableContentLogging(contentLogging)
+                // User agent 분석이 요청 thread 에서 실행되어야 cache hit, miss 차이가 측정된다.
+                .asyncEnrichment(false)
+                .build();
+
+        accessLogFilter = new AccessLogFilter(configurer, accessLog -> lastAccessLog = accessLog);
+        // User agent analyzer 초기화를 기다려 분석 비용이 측정에 포함되도록 한다.
+        UserAgentService.getInstance().awaitReady(1, TimeUnit.MINUTES);
+
+        requestBody = BenchmarkPayloads.json(bodySize).getBytes(StandardCharsets.UTF_8);
+        responseBody = BenchmarkPayloads.json(bodySize).getBytes(StandardCharsets.UTF_8);
+
+        // Controller 처럼 request body 를 읽고 response body 를 쓴다.
+        filterChain = (request, response) -> {
+            InputStream is = request.getInputStream();
+            byte[] buf = new byte[4096];
+            while (is.read(buf, 0, buf.length) >= 0) {
+                // 끝까지 읽음
+            }
+            response.getOutputStream().write(responseBody, 0, responseBody.length);
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        accessLogFilter.destroy();
+    }
+
+    @Benchmark
+    public Object filter() throws ServletException, IOException {
+        MockHttpServletRequest request = createRequest();
+        MockHttpServletResponse response = createResponse();
+        accessLogFilter.doFilterInternal(request, response, filterChain);
+        return lastAccessLog;
+    }
+
+    @Benchmark
+    public Object baseline() throws ServletException, IOException {
+        MockHttpServletRequest request = createRequest();
+        MockHttpServletResponse response = createResponse();
+        filterChain.doFilter(request, response);
+        return response;
+    }
+
+    private MockHttpServletRequest createRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "POST", whiteListed ? WHITE_LISTED_URI : URI);
+        request.setQueryString("hello=world");
+        request.setContentType("application/json");
+        request.setContent(requestBody);
+        request.addHeader("User-Agent", userAgentCacheHit ? USER_AGENT : USER_AGENT + " Build/" + (sequence++));
+        for (int i = 0; i < headerCount; i++)
+            request.addHeader("X-Sample-Header-" + i, "value-" + i);
+        return request;
+    }
+
+    private MockHttpServletResponse createResponse() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setStatus(200);
+        response.setContentType("application/json");
+        response.setHeader("X-Response-Header", "value");
+        return response;
+    }
+}
@@ -0,0 +1,31 @@
+package io.omnipede.system.filter.accesslog;
+
+/**
+ * 벤치마크에서 사용하는 요청, 응답 데이터
+ */
+final class BenchmarkPayloads {
+
+    private BenchmarkPayloads() {
+    }
+
+    /**
+     * 대략 size 바이트 크기의 JSON 배열 문자열을 만드는 메소드
+     */
+    static String json(int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        sb.append('[');
+        int id = 0;
+        while (sb.length() < size - 1) {
+            if (id > 0)
+                sb.append(',');
+            sb.append("{\"id\":").append(id)
+                    .append(",\"name\":\"user-").append(id)
+                    .append("\",\"email\":\"user").append(id).append("@example.com\"")
+                    .append(",\"active\":").append(id % 2 == 0)
+                    .append('}');
+            id++;
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response body 를 output stream 에 쓰는 비용 측정.
+ * bulkWrite 는 Jackson/Spring 처럼 배열 단위로, byteAtATimeWrite 는 바이트 단위로 쓴다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TeeServletOutputStreamBenchmark {
+
+    // Jackson UTF8JsonGenerator 의 기본 output buffer 크기
+    private static final int CHUNK_SIZE = 8000;
+
+    private static final int MAX_CONTENT_LENGTH = 10 * 1024 * 1024;
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean contentLogging;
+
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        json = BenchmarkPayloads.json(size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long bulkWrite() throws IOException {
+        NullServletOutputStream sink = new NullServletOutputStream();
+        CaptureBuffer content = new CaptureBuffer(MAX_CONTENT_LENGTH);
+        ServletOutputStream os = contentLogging ? new CachingResponseWrapper.TeeServletOutputStream(sink, content) : sink;
+
+        for (int off = 0; off < json.length; off += CHUNK_SIZE)
+            os.write(json, off, Math.min(CHUNK_SIZE, json.length - off));
+
+        content.release();
+        return sink.count;
+    }
+
+    @Benchmark
+    public long byteAtATimeWrite() throws IOException {
+        NullServletOutputStream sink = new NullServletOutputStream();
+        CaptureBuffer content = new CaptureBuffer(MAX_CONTENT_LENGTH);
+        ServletOutputStream os = contentLogging ? new CachingResponseWrapper.TeeServletOutputStream(sink, content) : sink;
+
+        for (byte b : json)
+            os.write(b);
+
+        content.release();
+        return sink.count;
+    }
+
+    /**
+     * 쓰여진 바이트 수만 세는 output stream
+     */
+    static class NullServletOutputStream extends ServletOutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+
+        }
+    }
+}
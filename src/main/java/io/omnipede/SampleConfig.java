@@ -1,11 +1,13 @@
 package io.omnipede;
 
 import io.omnipede.system.filter.accesslog.AccessLog;
+import io.omnipede.system.filter.accesslog.AccessLogEncoder;
 import io.omnipede.system.filter.accesslog.AccessLogFilter;
 import io.omnipede.system.filter.accesslog.AccessLogFilterConfigurer;
 import io.omnipede.system.filter.accesslog.AccessLogger;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.omnipede.system.filter.accesslog.AsyncAccessLogger;
+import io.omnipede.system.filter.accesslog.EnrichingAccessLogger;
+import io.omnipede.system.filter.accesslog.MaskingPolicy;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +15,9 @@ import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 
 @Slf4j
 @Configuration
@@ -50,33 +54,43 @@ class SampleConfig {
                 .maxContentLength(10 * 1024 * 1024)
                 // Body 로깅 활성화 여부
                 .enableContentLogging(true)
+                // password, token 등 민감한 값, 카드 번호, 이메일을 가림
+                .maskingPolicy(MaskingPolicy.builder().build())
+                // Enrichment 는 accessLogger 의 consumer thread 에서 실행하므로 필터에서는 하지 않는다.
+                .enrichers(Collections.emptyList())
                 // 설정 생성
                 .build();
     }
 
     /**
      * Sample access logger 구현체 작성
+     * 요청 thread 에서 로그를 남기지 않도록 AsyncAccessLogger 로 감싸고, IP, device class 분석도 consumer thread 에서 실행한다.
      * @return Access logger 구현체 빈
      */
     @Bean
     public AccessLogger accessLogger() {
-        return new AccessLogger() {
+        AccessLogger sampleLogger = new AccessLogger() {
             private final Logger logger = LoggerFactory.getLogger(AccessLogger.class);
-            private ObjectMapper objectMapper = new ObjectMapper();
+            private final AccessLogEncoder encoder = new AccessLogEncoder();
 
             @Override
             public void log(AccessLog accessLog) {
-                // For example, if access log contains secret field
-                if (accessLog.getRequestBody() != null && accessLog.getRequestBody().contains("password"))
-                    accessLog.setRequestBody("Secret hidden value.");
-
                 try {
-                    String message = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(accessLog);
+                    // 한 줄짜리 JSON 으로 변환
+                    String message = encoder.encodeToString(accessLog);
                     logger.info(message);
-                } catch (JsonProcessingException e) {
+                } catch (IOException e) {
                     logger.info(e.getMessage());
                 }
             }
         };
+
+        return AsyncAccessLogger.builder()
+                .delegate(new EnrichingAccessLogger(EnrichingAccessLogger.defaultEnrichers(0), sampleLogger))
+                // 최대 buffer 크기
+                .capacity(8192)
+                // Buffer 가 가득 찼을 때 새 로그를 버림
+                .overflowPolicy(AsyncAccessLogger.OverflowPolicy.DROP_NEWEST)
+                .build();
     }
 }
@@ -1,45 +1,461 @@
 package io.omnipede.system.filter.accesslog;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.lang.Nullable;
+import org.springframework.util.LinkedCaseInsensitiveMap;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
+/**
+ * Access log 레코드.
+ * 시각은 epoch millis 로, 헤더는 flat 배열로 담아 두었다가 getter 를 호출할 때 Date, Map 으로 변환한다.
+ * 따라서 AccessLogger 는 실제로 읽는 필드에 대해서만 비용을 지불한다.
+ *
+ * 변환 결과는 한번만 만들어 공유하므로, FanOutAccessLogger 처럼 여러 thread 에서 같은 레코드의 getter 를 동시에 호출해도 된다.
+ *
+ * AccessLogFilterConfigurer.reuseAccessLog 설정 시 레코드는 pool 에서 재사용된다.
+ * 이 경우 AccessLogger.log 가 끝난 뒤에도 레코드를 참조하려면 retain 을 호출하고, 다 사용한 뒤 release 를 호출해야 한다.
+ */
 @Getter
 @Setter
-@AllArgsConstructor
-@Builder
+@NoArgsConstructor
 public class AccessLog {
 
-    // 요청 시각
-    Date requestAt;
-    // 응답 시각
-    Date responseAt;
+    private static final AtomicIntegerFieldUpdater<AccessLog> refCountUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(AccessLog.class, "refCount");
+
+    // 요청 시각 (epoch millis). 0 이면 없음
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long requestAtMillis;
+    // 응답 시각 (epoch millis). 0 이면 없음
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long responseAtMillis;
 
     // Client hostname
     private String userAgent;
     private String hostName;
     private String ip;
     private String uri;
+    // URI 를 정규화 한 route template (예: /users/{id}). 없으면 null
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String route;
     private String query;
     private String method;
-    private Map<String, String> requestHeaders;
+
+    // Request headers. requestHeaders 가 null 이면 requestHeaderList 로부터 생성한다.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile Map<String, String> requestHeaders;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final HeaderList requestHeaderList = new HeaderList();
+
     @Nullable
-    private String requestBody;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile String requestBody;
 
     // Response status
     private Integer status;
 
     // Response headers
-    private Map<String, String> responseHeaders;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile Map<String, String> responseHeaders;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final HeaderList responseHeaderList = new HeaderList();
+
     @Nullable
-    private String responseBody;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile String responseBody;
 
-    // 요청 처리 소요 시간
+    // 요청 처리 소요 시간 (ms)
     private long elapsed;
+
+    // Body 전체 길이 (bytes). ContentCapturePolicy 설정 시에만 남는다.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long requestBodySize;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long responseBodySize;
+
+    // FieldSelection 의 사용자 정의 extractor 로 추출한 필드. 없으면 null
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile Map<String, String> extraFields;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final HeaderList extraFieldList = new HeaderList(4);
+
+    // UTF-8 로 인코딩 된 body. 문자열이 필요할 때 까지 decode 하지 않는다.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private byte[] requestBodyBytes;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private byte[] responseBodyBytes;
+
+    // 필터가 이 레코드를 만들며 사용한 시간 (ns). AccessLogFilterConfigurer.attachFilterStats 설정 시에만 기록된다.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long filterNanos;
+
+    // AccessLogFormat 별로 직렬화 된 레코드. 여러 sink 가 같은 형식을 요청해도 한번만 직렬화 한다.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private byte[][] encoded;
+
+    // 레코드를 참조하는 곳의 수. 0 이 되면 pool 로 반환된다.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile int refCount = 1;
+
+    // 레코드를 반환할 pool. 재사용하지 않는 레코드는 null
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private AccessLogPool pool;
+
+    @Builder
+    public AccessLog(Date requestAt, Date responseAt, String userAgent, String hostName, String ip, String uri,
+                     String query, String method, Map<String, String> requestHeaders, @Nullable String requestBody,
+                     Integer status, Map<String, String> responseHeaders, @Nullable String responseBody, long elapsed) {
+        setRequestAt(requestAt);
+        setResponseAt(responseAt);
+        this.userAgent = userAgent;
+        this.hostName = hostName;
+        this.ip = ip;
+        this.uri = uri;
+        this.query = query;
+        this.method = method;
+        this.requestHeaders = requestHeaders;
+        this.requestBody = requestBody;
+        this.status = status;
+        this.responseHeaders = responseHeaders;
+        this.responseBody = responseBody;
+        this.elapsed = elapsed;
+    }
+
+    AccessLog(AccessLogPool pool) {
+        this.pool = pool;
+    }
+
+    public Date getRequestAt() {
+        return requestAtMillis != 0 ? new Date(requestAtMillis) : null;
+    }
+
+    public void setRequestAt(Date requestAt) {
+        this.requestAtMillis = requestAt != null ? requestAt.getTime() : 0;
+    }
+
+    public Date getResponseAt() {
+        return responseAtMillis != 0 ? new Date(responseAtMillis) : null;
+    }
+
+    public void setResponseAt(Date responseAt) {
+        this.responseAtMillis = responseAt != null ? responseAt.getTime() : 0;
+    }
+
+    /**
+     * @return 요청 시각 (epoch millis). 없으면 0
+     */
+    @JsonIgnore
+    public long getRequestAtMillis() {
+        return requestAtMillis;
+    }
+
+    public void setRequestAtMillis(long requestAtMillis) {
+        this.requestAtMillis = requestAtMillis;
+    }
+
+    /**
+     * @return 응답 시각 (epoch millis). 없으면 0
+     */
+    @JsonIgnore
+    public long getResponseAtMillis() {
+        return responseAtMillis;
+    }
+
+    public void setResponseAtMillis(long responseAtMillis) {
+        this.responseAtMillis = responseAtMillis;
+    }
+
+    /**
+     * 요청 헤더. 처음 호출될 때 Map 으로 변환되며, 반환된 Map 을 수정하면 로그에 반영된다.
+     */
+    public Map<String, String> getRequestHeaders() {
+        Map<String, String> headers = requestHeaders;
+        if (headers != null)
+            return headers;
+
+        synchronized (this) {
+            if (requestHeaders == null)
+                requestHeaders = requestHeaderList.toMap();
+            return requestHeaders;
+        }
+    }
+
+    public void setRequestHeaders(Map<String, String> requestHeaders) {
+        this.requestHeaders = requestHeaders;
+        this.requestHeaderList.clear();
+    }
+
+    /**
+     * 응답 헤더. 처음 호출될 때 Map 으로 변환되며, 반환된 Map 을 수정하면 로그에 반영된다.
+     */
+    public Map<String, String> getResponseHeaders() {
+        Map<String, String> headers = responseHeaders;
+        if (headers != null)
+            return headers;
+
+        synchronized (this) {
+            if (responseHeaders == null)
+                responseHeaders = responseHeaderList.toMap();
+            return responseHeaders;
+        }
+    }
+
+    public void setResponseHeaders(Map<String, String> responseHeaders) {
+        this.responseHeaders = responseHeaders;
+        this.responseHeaderList.clear();
+    }
+
+    /**
+     * 요청 헤더 하나를 조회하는 메소드 (대소문자 구분 없음). Map 을 만들지 않는다.
+     * @return 없으면 null
+     */
+    public String getRequestHeader(String name) {
+        if (requestHeaders == null)
+            return requestHeaderList.get(name);
+
+        String value = requestHeaders.get(name);
+        if (value != null || requestHeaders instanceof LinkedCaseInsensitiveMap)
+            return value;
+
+        // setRequestHeaders 로 설정한 Map 은 대소문자를 구분할 수 있음
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name))
+                value = header.getValue();
+        }
+        return value;
+    }
+
+    /**
+     * 요청 헤더 추가. 이미 Map 으로 변환된 경우 Map 에 추가한다.
+     */
+    public void addRequestHeader(String name, String value) {
+        if (requestHeaders != null) {
+            requestHeaders.put(name, value);
+            return;
+        }
+        requestHeaderList.add(name, value);
+    }
+
+    /**
+     * 응답 헤더 추가. 이미 Map 으로 변환된 경우 Map 에 추가한다.
+     */
+    public void addResponseHeader(String name, String value) {
+        if (responseHeaders != null) {
+            responseHeaders.put(name, value);
+            return;
+        }
+        responseHeaderList.add(name, value);
+    }
+
+    /**
+     * 사용자 정의 필드. 처음 호출될 때 Map 으로 변환된다.
+     * @return 필드가 없으면 null
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Map<String, String> getExtraFields() {
+        Map<String, String> fields = extraFields;
+        if (fields != null || extraFieldList.size() == 0)
+            return fields;
+
+        synchronized (this) {
+            if (extraFields == null)
+                extraFields = extraFieldList.toMap();
+            return extraFields;
+        }
+    }
+
+    /**
+     * 사용자 정의 필드 추가. 이미 Map 으로 변환된 경우 Map 에 추가한다.
+     */
+    public void addExtraField(String name, String value) {
+        if (extraFields != null) {
+            extraFields.put(name, value);
+            return;
+        }
+        extraFieldList.add(name, value);
+    }
+
+    /**
+     * 아직 Map 으로 변환되지 않은 사용자 정의 필드. 이미 변환되었으면 null
+     */
+    HeaderList extraFieldList() {
+        return extraFields == null ? extraFieldList : null;
+    }
+
+    /**
+     * 형식 별로 한번만 직렬화 하는 메소드. 여러 sink thread 에서 동시에 호출될 수 있다.
+     */
+    synchronized byte[] encoded(AccessLogFormat format) throws IOException {
+        if (encoded == null)
+            encoded = new byte[AccessLogFormat.values().length][];
+
+        byte[] bytes = encoded[format.ordinal()];
+        if (bytes == null) {
+            bytes = format.encodeUncached(this);
+            encoded[format.ordinal()] = bytes;
+        }
+        return bytes;
+    }
+
+    void addFilterNanos(long nanos) {
+        filterNanos += nanos;
+    }
+
+    long filterNanos() {
+        return filterNanos;
+    }
+
+    /**
+     * 아직 Map 으로 변환되지 않은 요청 헤더. 이미 변환되었으면 null
+     */
+    HeaderList requestHeaderList() {
+        return requestHeaders == null ? requestHeaderList : null;
+    }
+
+    HeaderList responseHeaderList() {
+        return responseHeaders == null ? responseHeaderList : null;
+    }
+
+    @Nullable
+    public String getRequestBody() {
+        String body = requestBody;
+        if (body != null || requestBodyBytes == null)
+            return body;
+
+        synchronized (this) {
+            if (requestBody == null)
+                requestBody = new String(requestBodyBytes, StandardCharsets.UTF_8);
+            return requestBody;
+        }
+    }
+
+    public void setRequestBody(@Nullable String requestBody) {
+        this.requestBody = requestBody;
+        this.requestBodyBytes = null;
+    }
+
+    @Nullable
+    public String getResponseBody() {
+        String body = responseBody;
+        if (body != null || responseBodyBytes == null)
+            return body;
+
+        synchronized (this) {
+            if (responseBody == null)
+                responseBody = new String(responseBodyBytes, StandardCharsets.UTF_8);
+            return responseBody;
+        }
+    }
+
+    public void setResponseBody(@Nullable String responseBody) {
+        this.responseBody = responseBody;
+        this.responseBodyBytes = null;
+    }
+
+    /**
+     * UTF-8 body 바이트 설정. getRequestBody 호출 시 문자열로 변환된다.
+     */
+    void setRequestBodyBytes(byte[] requestBodyBytes) {
+        this.requestBody = null;
+        this.requestBodyBytes = requestBodyBytes;
+    }
+
+    void setResponseBodyBytes(byte[] responseBodyBytes) {
+        this.responseBody = null;
+        this.responseBodyBytes = responseBodyBytes;
+    }
+
+    /**
+     * 아직 문자열로 변환되지 않은 UTF-8 body 바이트. 문자열로 설정된 경우 null
+     */
+    byte[] requestBodyBytes() {
+        return requestBody == null ? requestBodyBytes : null;
+    }
+
+    byte[] responseBodyBytes() {
+        return responseBody == null ? responseBodyBytes : null;
+    }
+
+    /**
+     * AccessLogger.log 가 끝난 뒤에도 레코드를 참조할 때 호출하는 메소드.
+     * 다 사용한 뒤에는 반드시 release 를 호출해야 한다.
+     */
+    public void retain() {
+        refCountUpdater.incrementAndGet(this);
+    }
+
+    /**
+     * 레코드 참조를 해제하는 메소드. 마지막 참조가 해제되면 레코드는 pool 로 반환되어 재사용된다.
+     */
+    public void release() {
+        if (refCountUpdater.decrementAndGet(this) != 0 || pool == null)
+            return;
+
+        reset();
+        pool.recycle(this);
+    }
+
+    /**
+     * Pool 에서 꺼낸 레코드를 사용 가능한 상태로 만드는 메소드
+     */
+    void reuse() {
+        refCount = 1;
+    }
+
+    private void reset() {
+        requestAtMillis = 0;
+        responseAtMillis = 0;
+        userAgent = null;
+        hostName = null;
+        ip = null;
+        uri = null;
+        route = null;
+        query = null;
+        method = null;
+        requestHeaders = null;
+        requestHeaderList.clear();
+        requestBody = null;
+        requestBodyBytes = null;
+        status = null;
+        responseHeaders = null;
+        responseHeaderList.clear();
+        responseBody = null;
+        responseBodyBytes = null;
+        elapsed = 0;
+        requestBodySize = null;
+        responseBodySize = null;
+        extraFields = null;
+        extraFieldList.clear();
+        filterNanos = 0;
+        synchronized (this) {
+            encoded = null;
+        }
+    }
 }
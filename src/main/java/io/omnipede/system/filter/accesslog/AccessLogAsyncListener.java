@@ -0,0 +1,62 @@
+package io.omnipede.system.filter.accesslog;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.io.IOException;
+
+/**
+ * 비동기 요청 (DeferredResult, Callable, SSE, StreamingResponseBody 등) 처리가 끝났을 때 로그를 남기는 listener.
+ * Timeout, 에러 여부를 기록해 두었다가 onComplete 시점에 한번만 callback 을 호출한다.
+ */
+class AccessLogAsyncListener implements AsyncListener {
+
+    /**
+     * 비동기 처리가 끝났을 때 호출되는 callback
+     */
+    @FunctionalInterface
+    interface Callback {
+
+        /**
+         * @param failed 처리 중 에러 발생 여부
+         * @param timedOut Timeout 여부
+         */
+        void onFinish(boolean failed, boolean timedOut) throws IOException;
+    }
+
+    private final Callback callback;
+
+    private boolean failed = false;
+
+    private boolean timedOut = false;
+
+    private boolean finished = false;
+
+    AccessLogAsyncListener(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+        // Container 는 같은 비동기 처리에 대한 이벤트를 순서대로 전달한다.
+        if (finished)
+            return;
+        finished = true;
+        callback.onFinish(failed, timedOut);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        timedOut = true;
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        failed = true;
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        // 비동기 처리가 다시 시작되면 listener 목록이 초기화되므로 다시 등록한다.
+        event.getAsyncContext().addListener(this);
+    }
+}
@@ -0,0 +1,328 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * AccessLog 를 compact 한 binary 레코드로 변환하는 codec.
+ * 필드 이름 없이 정해진 순서로 기록하며, 숫자는 varint, 문자열은 길이 + UTF-8 바이트로 기록한다.
+ * Null 을 표현하기 위해 길이, 개수, status 등은 1 을 더해서 기록하고 0 을 null 로 사용한다.
+ *
+ * 레코드 형식 (version 2. Version 1 에는 route 가 없다.)
+ * <pre>
+ * version(1) requestAt(8) responseAt(8) elapsed(varint) status(varint)
+ * userAgent hostName ip uri route query method (string)
+ * requestHeaders(map) requestBody(bytes) responseHeaders(map) responseBody(bytes)
+ * extraFields(map) requestBodySize(varint) responseBodySize(varint)
+ * </pre>
+ * 인코딩 buffer 를 재사용하므로 thread-safe 하지 않다.
+ */
+final class AccessLogCodec {
+
+    static final byte VERSION = 2;
+
+    // route 필드가 없는 version
+    private static final byte VERSION_1 = 1;
+
+    private byte[] buffer = new byte[1024];
+
+    private int position;
+
+    /**
+     * AccessLog 를 내부 buffer 에 인코딩 하는 메소드.
+     * 결과는 다음 encode 호출 전까지 buffer() 의 0 부터 length 까지 유효하다.
+     * @return 인코딩 된 바이트 수
+     */
+    int encode(AccessLog accessLog) {
+        position = 0;
+        writeByte(VERSION);
+        writeFixedLong(accessLog.getRequestAtMillis());
+        writeFixedLong(accessLog.getResponseAtMillis());
+        writeVarLong(accessLog.getElapsed());
+        writeVarLong(accessLog.getStatus() != null ? accessLog.getStatus() + 1L : 0);
+        writeString(accessLog.getUserAgent());
+        writeString(accessLog.getHostName());
+        writeString(accessLog.getIp());
+        writeString(accessLog.getUri());
+        writeString(accessLog.getRoute());
+        writeString(accessLog.getQuery());
+        writeString(accessLog.getMethod());
+
+        HeaderList requestHeaderList = accessLog.requestHeaderList();
+        if (requestHeaderList != null)
+            writeHeaderList(requestHeaderList);
+        else
+            writeMap(accessLog.getRequestHeaders());
+        byte[] requestBodyBytes = accessLog.requestBodyBytes();
+        if (requestBodyBytes != null)
+            writeBytes(requestBodyBytes);
+        else
+            writeString(accessLog.getRequestBody());
+
+        HeaderList responseHeaderList = accessLog.responseHeaderList();
+        if (responseHeaderList != null)
+            writeHeaderList(responseHeaderList);
+        else
+            writeMap(accessLog.getResponseHeaders());
+        byte[] responseBodyBytes = accessLog.responseBodyBytes();
+        if (responseBodyBytes != null)
+            writeBytes(responseBodyBytes);
+        else
+            writeString(accessLog.getResponseBody());
+
+        HeaderList extraFieldList = accessLog.extraFieldList();
+        if (extraFieldList != null)
+            writeHeaderList(extraFieldList);
+        else
+            writeMap(accessLog.getExtraFields());
+        writeNullableSize(accessLog.getRequestBodySize());
+        writeNullableSize(accessLog.getResponseBodySize());
+        return position;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Binary 레코드를 AccessLog 로 변환하는 메소드
+     * @throws IllegalArgumentException 지원하지 않는 version 이거나 레코드가 손상된 경우
+     */
+    static AccessLog decode(byte[] bytes, int offset, int length) {
+        Reader reader = new Reader(bytes, offset, offset + length);
+        byte version = reader.readByte();
+        if (version != VERSION && version != VERSION_1)
+            throw new IllegalArgumentException("Unsupported access log record version: " + version);
+
+        AccessLog accessLog = new AccessLog();
+        accessLog.setRequestAtMillis(reader.readFixedLong());
+        accessLog.setResponseAtMillis(reader.readFixedLong());
+        accessLog.setElapsed(reader.readVarLong());
+        long status = reader.readVarLong();
+        accessLog.setStatus(status != 0 ? (int) (status - 1) : null);
+        accessLog.setUserAgent(reader.readString());
+        accessLog.setHostName(reader.readString());
+        accessLog.setIp(reader.readString());
+        accessLog.setUri(reader.readString());
+        if (version != VERSION_1)
+            accessLog.setRoute(reader.readString());
+        accessLog.setQuery(reader.readString());
+        accessLog.setMethod(reader.readString());
+
+        int requestHeaderCount = reader.readCount();
+        for (int i = 0; i < requestHeaderCount; i++)
+            accessLog.addRequestHeader(reader.readString(), reader.readString());
+        byte[] requestBody = reader.readBytes();
+        if (requestBody != null)
+            accessLog.setRequestBodyBytes(requestBody);
+
+        int responseHeaderCount = reader.readCount();
+        for (int i = 0; i < responseHeaderCount; i++)
+            accessLog.addResponseHeader(reader.readString(), reader.readString());
+        byte[] responseBody = reader.readBytes();
+        if (responseBody != null)
+            accessLog.setResponseBodyBytes(responseBody);
+
+        int extraFieldCount = reader.readCount();
+        for (int i = 0; i < extraFieldCount; i++)
+            accessLog.addExtraField(reader.readString(), reader.readString());
+        accessLog.setRequestBodySize(reader.readNullableSize());
+        accessLog.setResponseBodySize(reader.readNullableSize());
+        return accessLog;
+    }
+
+    private void writeHeaderList(HeaderList headers) {
+        writeVarLong(headers.size() + 1L);
+        for (int i = 0; i < headers.size(); i++) {
+            writeString(headers.nameAt(i));
+            writeString(headers.valueAt(i));
+        }
+    }
+
+    private void writeMap(Map<String, String> map) {
+        if (map == null) {
+            writeVarLong(0);
+            return;
+        }
+
+        writeVarLong(map.size() + 1L);
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(entry.getKey());
+            writeString(entry.getValue());
+        }
+    }
+
+    private void writeNullableSize(Long size) {
+        writeVarLong(size != null ? size + 1 : 0);
+    }
+
+    private void writeBytes(byte[] bytes) {
+        writeVarLong(bytes.length + 1L);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * 문자열을 중간 byte[] 없이 UTF-8 로 인코딩 하여 기록
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+
+        int length = value.length();
+        writeVarLong(utf8Length(value) + 1L);
+        ensureCapacity(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // 짝이 없는 surrogate 는 String.getBytes 와 같이 ? 로 기록
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = value.length();
+        int utf8Length = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80)
+                continue;
+            if (c < 0x800) {
+                utf8Length += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // Surrogate pair 2 char -> 4 bytes
+                utf8Length += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                utf8Length += 2;
+            }
+        }
+        return utf8Length;
+    }
+
+    private void writeByte(byte b) {
+        ensureCapacity(1);
+        buffer[position++] = b;
+    }
+
+    private void writeFixedLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8)
+            buffer[position++] = (byte) (value >>> shift);
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (position + additional > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additional));
+    }
+
+    /**
+     * 레코드를 읽는 cursor
+     */
+    private static final class Reader {
+
+        private final byte[] bytes;
+
+        private final int limit;
+
+        private int position;
+
+        private Reader(byte[] bytes, int offset, int limit) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        byte readByte() {
+            require(1);
+            return bytes[position++];
+        }
+
+        long readFixedLong() {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++)
+                value = (value << 8) | (bytes[position++] & 0xff);
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        int readCount() {
+            long count = readVarLong();
+            return count == 0 ? 0 : (int) (count - 1);
+        }
+
+        Long readNullableSize() {
+            long size = readVarLong();
+            return size == 0 ? null : size - 1;
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length == 0)
+                return null;
+
+            int size = (int) (length - 1);
+            require(size);
+            String value = new String(bytes, position, size, StandardCharsets.UTF_8);
+            position += size;
+            return value;
+        }
+
+        byte[] readBytes() {
+            long length = readVarLong();
+            if (length == 0)
+                return null;
+
+            int size = (int) (length - 1);
+            require(size);
+            byte[] value = Arrays.copyOfRange(bytes, position, position + size);
+            position += size;
+            return value;
+        }
+
+        private void require(int size) {
+            if (size < 0 || position + size > limit)
+                throw new IllegalArgumentException("Truncated access log record");
+        }
+    }
+}
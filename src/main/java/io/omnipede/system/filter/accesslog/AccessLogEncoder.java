@@ -0,0 +1,229 @@
+package io.omnipede.system.filter.accesslog;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * AccessLog 를 한 줄짜리 JSON 으로 변환하는 encoder.
+ * ObjectMapper 를 사용하지 않고 필드를 직접 기록하며, UTF-8 body 바이트는 문자열로 변환하지 않고 그대로 escape 하여 기록한다.
+ * 여러 thread 에서 동시에 사용할 수 있다.
+ */
+public class AccessLogEncoder {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    // 재사용하는 thread 별 출력 buffer
+    private static final ThreadLocal<ReusableOutputStream> buffers = ThreadLocal.withInitial(ReusableOutputStream::new);
+
+    // 이 크기를 넘어선 thread 별 buffer 는 재사용하지 않는다.
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte LINE_SEPARATOR = '\n';
+
+    /**
+     * JSON 한 줄을 output stream 에 기록하는 메소드. 줄바꿈 문자는 기록하지 않는다.
+     * @param accessLog 기록할 access log
+     * @param out 출력 stream
+     */
+    public void encode(AccessLog accessLog, OutputStream out) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            writeAccessLog(generator, accessLog);
+        }
+    }
+
+    /**
+     * NDJSON 형식으로 JSON 한 줄과 줄바꿈 문자를 기록하는 메소드
+     */
+    public void encodeLine(AccessLog accessLog, OutputStream out) throws IOException {
+        encode(accessLog, out);
+        out.write(LINE_SEPARATOR);
+    }
+
+    /**
+     * JSON 문자열로 변환하는 메소드. SLF4J 처럼 문자열만 받는 곳에 로그를 넘길 때 사용한다.
+     */
+    public String encodeToString(AccessLog accessLog) throws IOException {
+        ReusableOutputStream buffer = buffers.get();
+        try {
+            encode(accessLog, buffer);
+            return buffer.toString(StandardCharsets.UTF_8.name());
+        } finally {
+            buffer.recycle();
+        }
+    }
+
+    private void writeAccessLog(JsonGenerator generator, AccessLog accessLog) throws IOException {
+        generator.writeStartObject();
+        writeMillis(generator, "requestAt", accessLog.getRequestAtMillis());
+        writeMillis(generator, "responseAt", accessLog.getResponseAtMillis());
+        generator.writeStringField("userAgent", accessLog.getUserAgent());
+        generator.writeStringField("hostName", accessLog.getHostName());
+        generator.writeStringField("ip", accessLog.getIp());
+        generator.writeStringField("uri", accessLog.getUri());
+        if (accessLog.getRoute() != null)
+            generator.writeStringField("route", accessLog.getRoute());
+        generator.writeStringField("query", accessLog.getQuery());
+        generator.writeStringField("method", accessLog.getMethod());
+        HeaderList requestHeaderList = accessLog.requestHeaderList();
+        if (requestHeaderList != null)
+            writeHeaders(generator, "requestHeaders", requestHeaderList);
+        else
+            writeHeaders(generator, "requestHeaders", accessLog.getRequestHeaders());
+        byte[] requestBodyBytes = accessLog.requestBodyBytes();
+        writeBody(generator, "requestBody", requestBodyBytes, requestBodyBytes == null ? accessLog.getRequestBody() : null);
+        writeStatus(generator, accessLog.getStatus());
+        HeaderList responseHeaderList = accessLog.responseHeaderList();
+        if (responseHeaderList != null)
+            writeHeaders(generator, "responseHeaders", responseHeaderList);
+        else
+            writeHeaders(generator, "responseHeaders", accessLog.getResponseHeaders());
+        byte[] responseBodyBytes = accessLog.responseBodyBytes();
+        writeBody(generator, "responseBody", responseBodyBytes, responseBodyBytes == null ? accessLog.getResponseBody() : null);
+        generator.writeNumberField("elapsed", accessLog.getElapsed());
+        writeSizeIfPresent(generator, "requestBodySize", accessLog.getRequestBodySize());
+        writeSizeIfPresent(generator, "responseBodySize", accessLog.getResponseBodySize());
+        // 사용자 정의 필드는 있을 때만 기록
+        HeaderList extraFieldList = accessLog.extraFieldList();
+        if (extraFieldList != null) {
+            if (extraFieldList.size() > 0)
+                writeHeaders(generator, "extraFields", extraFieldList);
+        } else if (accessLog.getExtraFields() != null) {
+            writeHeaders(generator, "extraFields", accessLog.getExtraFields());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * 시각 기록. 0 이면 시각이 없는 것으로 보고 null 을 기록한다.
+     */
+    private void writeMillis(JsonGenerator generator, String name, long millis) throws IOException {
+        generator.writeFieldName(name);
+        if (millis == 0) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeNumber(millis);
+    }
+
+    private void writeSizeIfPresent(JsonGenerator generator, String name, Long size) throws IOException {
+        if (size != null)
+            generator.writeNumberField(name, size);
+    }
+
+    private void writeStatus(JsonGenerator generator, Integer status) throws IOException {
+        generator.writeFieldName("status");
+        if (status == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeNumber(status);
+    }
+
+    private void writeHeaders(JsonGenerator generator, String name, Map<String, String> headers) throws IOException {
+        generator.writeFieldName(name);
+        if (headers == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartObject();
+        for (Map.Entry<String, String> header : headers.entrySet())
+            generator.writeStringField(header.getKey(), header.getValue());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Map 으로 변환되지 않은 헤더 기록
+     */
+    private void writeHeaders(JsonGenerator generator, String name, HeaderList headers) throws IOException {
+        generator.writeFieldName(name);
+        generator.writeStartObject();
+        for (int i = 0; i < headers.size(); i++)
+            generator.writeStringField(headers.nameAt(i), headers.valueAt(i));
+        generator.writeEndObject();
+    }
+
+    /**
+     * Body 기록. UTF-8 바이트가 있으면 문자열 변환 없이 escape 만 하여 기록한다.
+     * 올바른 UTF-8 이 아니면 (Latin-1 body 등) 잘못된 JSON 이 되지 않도록 문자열로 변환하여 기록한다.
+     */
+    private void writeBody(JsonGenerator generator, String name, byte[] bytes, String body) throws IOException {
+        generator.writeFieldName(name);
+        if (bytes != null) {
+            if (isWellFormedUtf8(bytes))
+                generator.writeUTF8String(bytes, 0, bytes.length);
+            else
+                generator.writeString(new String(bytes, StandardCharsets.UTF_8));
+            return;
+        }
+        generator.writeString(body);
+    }
+
+    /**
+     * Overlong 인코딩, surrogate, U+10FFFF 를 넘는 값, 잘린 문자가 없는 UTF-8 인지 확인하는 메소드
+     */
+    private static boolean isWellFormedUtf8(byte[] bytes) {
+        int i = 0;
+        while (i < bytes.length) {
+            int b = bytes[i] & 0xff;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+
+            int length;
+            int min;
+            if (b >= 0xc2 && b <= 0xdf) {
+                length = 2;
+                min = 0x80;
+            } else if (b >= 0xe0 && b <= 0xef) {
+                length = 3;
+                min = 0x800;
+            } else if (b >= 0xf0 && b <= 0xf4) {
+                length = 4;
+                min = 0x10000;
+            } else {
+                return false;
+            }
+            if (i + length > bytes.length)
+                return false;
+
+            int codePoint = b & (0xff >> (length + 1));
+            for (int j = 1; j < length; j++) {
+                int next = bytes[i + j] & 0xff;
+                if ((next & 0xc0) != 0x80)
+                    return false;
+                codePoint = (codePoint << 6) | (next & 0x3f);
+            }
+            if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+                return false;
+            i += length;
+        }
+        return true;
+    }
+
+    /**
+     * 내부 배열을 재사용하는 ByteArrayOutputStream
+     */
+    private static class ReusableOutputStream extends ByteArrayOutputStream {
+
+        ReusableOutputStream() {
+            super(1024);
+        }
+
+        void recycle() {
+            reset();
+            if (buf.length > MAX_RETAINED_BUFFER_SIZE)
+                buf = new byte[1024];
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.omnipede.system.filter.accesslog;
+
+/**
+ * 로그를 남기기 전에 access log 에 정보를 추가하는 인터페이스.
+ * 필터는 요청에서 원본 값만 수집하고, 분석이 필요한 정보는 enricher 가 채운다.
+ * AccessLogFilterConfigurer.asyncEnrichment 를 설정하면 요청 thread 가 아닌 별도 thread 에서 호출된다.
+ */
+public interface AccessLogEnricher {
+
+    /**
+     * Access log 에 정보를 추가하는 메소드
+     * @param accessLog 정보를 추가할 access log
+     */
+    void enrich(AccessLog accessLog);
+}
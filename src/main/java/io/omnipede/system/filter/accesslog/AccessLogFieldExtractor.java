@@ -0,0 +1,19 @@
+package io.omnipede.system.filter.accesslog;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 요청, 응답에서 사용자 정의 필드 값을 추출하는 인터페이스.
+ * 추출한 값은 AccessLog 의 extraFields 에 남는다.
+ */
+@FunctionalInterface
+public interface AccessLogFieldExtractor {
+
+    /**
+     * @param request 요청
+     * @param response 응답
+     * @return 필드 값. null 이면 남기지 않는다.
+     */
+    String extract(HttpServletRequest request, HttpServletResponse response);
+}
@@ -7,8 +7,10 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -21,23 +23,142 @@ public class AccessLogFilter extends OncePerRequestFilter {
     // Access log filter configuration
     private AccessLogFilterConfigurer accessLogFilterConfigurer;
 
-    // User agent 분석 시 사용하는 객체
-    private UserAgentService userAgentService = new UserAgentService();
+    // 설정의 white list 를 컴파일 한 객체
+    private final UriMatcher whiteList;
 
-    // 실제 access log 를 남길 시 사용하는 인터페이스
+    // 설정의 sampling policy 를 컴파일 한 객체
+    private final AccessLogSampler sampler;
+
+    // 설정의 field selection 을 컴파일 한 객체
+    private final ExtractionPlan extractionPlan;
+
+    // 설정의 masking policy 를 컴파일 한 객체
+    private final BodyMasker bodyMasker;
+
+    // URI 를 route template 으로 정규화 하는 객체
+    private final RouteNormalizer routeNormalizer;
+
+    // 설정의 content capture policy 를 컴파일 한 객체. 설정하지 않으면 null
+    private final ContentCaptureRules contentCaptureRules;
+
+    // 실제 access log 를 남길 시 사용하는 인터페이스. Enricher 를 실행한 뒤 사용자의 AccessLogger 로 넘긴다.
     private AccessLogger accessLogger;
 
+    // Enrichment 를 별도 thread 에서 실행할 때 필터가 생성한 async logger. 필터 종료 시 닫는다.
+    private final AsyncAccessLogger enrichmentWorker;
+
+    // 느린 요청 감시 객체. 설정하지 않으면 null
+    private final SlowRequestWatchdog slowRequestWatchdog;
+
+    // DeviceClassEnricher 가 사용하는 user agent 분석 객체. DeviceClassEnricher 를 실행하지 않으면 null
+    private final UserAgentService userAgentService;
+
+    // 필터 자체의 처리 시간 통계
+    private final AccessLogFilterStats stats = new AccessLogFilterStats();
+
+    // 필터 자체의 처리 시간을 측정할지 여부
+    private final boolean measureStats;
+
+    // 측정한 처리 시간을 로그에 남길지 여부
+    private final boolean attachStats;
+
     // 서버 host name
     private HostName hostName = new HostName();
 
+    // AccessLog 레코드 pool. 레코드를 재사용하지 않으면 null
+    private final AccessLogPool accessLogPool;
+
+    private static final int ACCESS_LOG_POOL_SIZE = 1024;
+
+    // Response body 가 없을 때 남기는 메시지
+    private static final String DEFAULT_NO_RESPONSE_MESSAGE = "No response data";
+
+    // Body 가 최대 길이보다 길 때 남기는 메시지
+    private static final String TOO_LONG_CONTENTS_MESSAGE = "TOO LONG CONTENTS";
+
+    // Tail capture 시 앞부분만 남긴 body 의 끝에 붙이는 문자열
+    private static final byte[] TRUNCATED_MARKER = "...(truncated)".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] NO_MARKER = new byte[0];
+
+    // 느린 요청 감시 entry 를 담는 request attribute
+    private static final String WATCHDOG_ENTRY_ATTRIBUTE = AccessLogFilter.class.getName() + ".WATCHDOG_ENTRY";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     public AccessLogFilter(AccessLogFilterConfigurer accessLogFilterConfigurer) {
-        this.accessLogFilterConfigurer = accessLogFilterConfigurer;
-        this.accessLogger = new DefaultAccessLogger();
+        this(accessLogFilterConfigurer, null);
     }
 
+    /**
+     * @param accessLogger 로그를 남길 AccessLogger. null 이면 한 줄짜리 JSON 으로 남기는 기본 구현체를 사용한다.
+     */
     public AccessLogFilter(AccessLogFilterConfigurer accessLogFilterConfigurer, AccessLogger accessLogger) {
         this.accessLogFilterConfigurer = accessLogFilterConfigurer;
-        this.accessLogger = accessLogger;
+        this.whiteList = new UriMatcher(accessLogFilterConfigurer.getWhiteList());
+        this.sampler = new AccessLogSampler(accessLogFilterConfigurer.getSamplingPolicy());
+        this.extractionPlan = new ExtractionPlan(accessLogFilterConfigurer.getFieldSelection());
+        this.bodyMasker = new BodyMasker(accessLogFilterConfigurer.getMaskingPolicy());
+        this.routeNormalizer = new RouteNormalizer(accessLogFilterConfigurer.getRouteCacheSize(),
+                accessLogFilterConfigurer.getMaxRouteSegmentValues());
+        ContentCapturePolicy contentCapturePolicy = accessLogFilterConfigurer.getContentCapturePolicy();
+        this.contentCaptureRules = contentCapturePolicy != null ? new ContentCaptureRules(contentCapturePolicy) : null;
+        this.accessLogPool = accessLogFilterConfigurer.isReuseAccessLog() ? new AccessLogPool(ACCESS_LOG_POOL_SIZE) : null;
+        SlowRequestPolicy slowRequestPolicy = accessLogFilterConfigurer.getSlowRequestPolicy();
+        this.slowRequestWatchdog = slowRequestPolicy != null ? new SlowRequestWatchdog(slowRequestPolicy) : null;
+        this.attachStats = accessLogFilterConfigurer.isAttachFilterStats();
+        this.measureStats = attachStats || accessLogFilterConfigurer.isEnableFilterStats();
+
+        if (accessLogger == null)
+            accessLogger = new DefaultAccessLogger(measureStats ? stats : null);
+
+        List<AccessLogEnricher> enrichers = accessLogFilterConfigurer.getEnrichers();
+        if (enrichers == null)
+            enrichers = EnrichingAccessLogger.defaultEnrichers(accessLogFilterConfigurer.getUserAgentCacheSize());
+        if (!enrichers.isEmpty())
+            accessLogger = new EnrichingAccessLogger(enrichers, accessLogger, measureStats ? stats : null);
+        this.userAgentService = findUserAgentService(enrichers);
+
+        if (accessLogFilterConfigurer.isAsyncEnrichment()) {
+            // 요청 thread 는 원본 값만 수집하고, enrichment 와 로깅은 consumer thread 에서 처리한다.
+            this.enrichmentWorker = new AsyncAccessLogger(accessLogger);
+            this.accessLogger = enrichmentWorker;
+        } else {
+            this.enrichmentWorker = null;
+            this.accessLogger = accessLogger;
+        }
+    }
+
+    /**
+     * @return 필터 자체의 단계별 처리 시간, body capture 양 통계.
+     * AccessLogFilterConfigurer.enableFilterStats 또는 attachFilterStats 를 설정하지 않으면 비어 있다.
+     */
+    public AccessLogFilterStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return Device class 분석에 사용하는 user agent 분석 객체. L1 cache hit, miss 통계를 조회할 때 사용한다.
+     * DeviceClassEnricher 를 실행하지 않으면 null
+     */
+    public UserAgentService getUserAgentService() {
+        return userAgentService;
+    }
+
+    private static UserAgentService findUserAgentService(List<AccessLogEnricher> enrichers) {
+        for (AccessLogEnricher enricher : enrichers) {
+            if (enricher instanceof DeviceClassEnricher)
+                return ((DeviceClassEnricher) enricher).getUserAgentService();
+        }
+        return null;
+    }
+
+    @Override
+    public void destroy() {
+        if (slowRequestWatchdog != null)
+            slowRequestWatchdog.close();
+        if (enrichmentWorker != null)
+            enrichmentWorker.close();
     }
 
     /**
@@ -47,34 +168,37 @@ public class AccessLogFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain) throws ServletException, IOException {
 
         // White list 된 request URI 일 경우 pass 처리
-        if (isWhiteListed(httpServletRequest.getRequestURI())) {
+        if (isWhiteListed(httpServletRequest)) {
             filterChain.doFilter(httpServletRequest, httpServletResponse);
             return;
         }
 
-        // Access log 처리
-        processAccessLog(httpServletRequest, httpServletResponse, filterChain);
+        // 느린 요청 감시. 비동기 요청은 요청 thread 가 처리하는 동안만 감시한다.
+        SlowRequestWatchdog.Entry watchdogEntry = slowRequestWatchdog != null ? slowRequestWatchdog.register() : null;
+        if (watchdogEntry != null)
+            httpServletRequest.setAttribute(WATCHDOG_ENTRY_ATTRIBUTE, watchdogEntry);
+        try {
+            // Sampling 에서 제외된 요청은 wrapping 하지 않고 에러, 느린 요청만 로그를 남김
+            if (!sampler.sample(httpServletRequest.getRequestURI())) {
+                processUnsampled(httpServletRequest, httpServletResponse, filterChain);
+                return;
+            }
+
+            // Access log 처리
+            processAccessLog(httpServletRequest, httpServletResponse, filterChain);
+        } finally {
+            if (watchdogEntry != null)
+                slowRequestWatchdog.unregister(watchdogEntry);
+        }
     }
 
     /**
-     * 요청 URI 가 white list 된 URI 인지 확인하는 메소드
-     * @param requestUri 요청 URI
+     * 요청이 white list 된 URI 인지 확인하는 메소드
+     * @param httpServletRequest 요청
      * @return White list 여부
      */
-    private boolean isWhiteListed(String requestUri) {
-        // 설정 로드
-        List<String> whiteList = accessLogFilterConfigurer.getWhiteList();
-        if (whiteList == null)
-            return false;
-
-        // White list 상에서 request uri 가 존재하는지 확인
-        String findResult = whiteList
-                .stream().filter(requestUri::startsWith)
-                .findFirst()
-                .orElse(null);
-
-        // 존재하면 true 반환
-        return findResult != null;
+    private boolean isWhiteListed(HttpServletRequest httpServletRequest) {
+        return whiteList.matches(httpServletRequest.getMethod(), httpServletRequest.getRequestURI());
     }
 
     /**
@@ -84,7 +208,8 @@ public class AccessLogFilter extends OncePerRequestFilter {
 
         // IF enableContentCapture is true
         // request, response body 를 로그에 남김
-        if (accessLogFilterConfigurer.isEnableContentLogging()) {
+        if (accessLogFilterConfigurer.isEnableContentLogging()
+                && (extractionPlan.isCaptureRequestBody() || extractionPlan.isCaptureResponseBody())) {
             processAccessLogWithContents(httpServletRequest, httpServletResponse, filterChain);
             return;
         }
@@ -95,27 +220,126 @@ public class AccessLogFilter extends OncePerRequestFilter {
 
     /**
      * Contents (request, response body) 를 로그에 남기는 메소드
+     * Tail capture 설정 시, 처리 결과에 따라 캐싱한 contents 를 버릴 수 있다.
      */
     private void processAccessLogWithContents(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain) throws IOException, ServletException {
-        CachingRequestWrapper requestWrapper = new CachingRequestWrapper(httpServletRequest);
-        CachingResponseWrapper responseWrapper = new CachingResponseWrapper(httpServletResponse);
+        TailCapturePolicy tailCapturePolicy = accessLogFilterConfigurer.getTailCapturePolicy();
+        int captureLength = tailCapturePolicy != null
+                ? Math.min(tailCapturePolicy.resolveMaxCaptureLength(), accessLogFilterConfigurer.getMaxContentLength())
+                : accessLogFilterConfigurer.getMaxContentLength();
+
+        // 남기지 않을 body 는 캐싱하지 않음
+        long wrapStart = startStats();
+        CachingRequestWrapper requestWrapper = extractionPlan.isCaptureRequestBody()
+                ? wrapRequest(httpServletRequest, captureLength) : null;
+        CachingResponseWrapper responseWrapper = extractionPlan.isCaptureResponseBody()
+                ? new CachingResponseWrapper(httpServletResponse, captureLength, contentCaptureRules) : null;
+        HttpServletRequest request = requestWrapper != null ? requestWrapper : httpServletRequest;
+        HttpServletResponse response = responseWrapper != null ? responseWrapper : httpServletResponse;
+        long wrapNanos = measureStats ? System.nanoTime() - wrapStart : 0;
+        if (measureStats)
+            stats.record(AccessLogFilterStats.Phase.WRAP, wrapNanos);
         // 요청 시각
-        Date requestAt = new Date();
-        filterChain.doFilter(requestWrapper, responseWrapper);
-        // 응답 시각
-        Date responseAt = new Date();
-        AccessLog accessLog = createAccessLog(requestWrapper, responseWrapper, requestAt, responseAt);
+        long requestAt = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } catch (Throwable t) {
+            // 로그를 남기다 발생한 예외가 어플리케이션의 예외를 가리지 않도록 한다.
+            try {
+                finishWithContents(request, response, requestWrapper, responseWrapper, requestAt, startNanos,
+                        wrapNanos, true, false, false, tailCapturePolicy);
+            } catch (IOException | RuntimeException e) {
+                t.addSuppressed(e);
+            }
+            throw t;
+        }
 
-        // Body 추출
-        String requestBody = getRequestBody(requestWrapper);
-        String responseBody = getResponseBody(responseWrapper);
+        if (request.isAsyncStarted()) {
+            // 비동기 처리가 끝났을 때 로그를 남김. 캐싱된 contents 도 그 때 반환한다.
+            request.getAsyncContext().addListener(new AccessLogAsyncListener((asyncFailed, timedOut) ->
+                    finishWithContents(request, response, requestWrapper, responseWrapper, requestAt, startNanos,
+                            wrapNanos, asyncFailed, timedOut, true, tailCapturePolicy)));
+            return;
+        }
+        finishWithContents(request, response, requestWrapper, responseWrapper, requestAt, startNanos,
+                wrapNanos, false, false, false, tailCapturePolicy);
+    }
+
+    /**
+     * 요청 처리가 끝난 뒤 contents 를 포함하여 로그를 남기고 캐싱된 contents 를 반환하는 메소드
+     * @param wrapNanos Wrapper 생성에 사용한 시간 (ns)
+     * @param failed 요청 처리 중 예외 발생 여부
+     * @param timedOut 비동기 처리 timeout 여부
+     * @param async 비동기 처리 여부
+     */
+    private void finishWithContents(HttpServletRequest request, HttpServletResponse response,
+                                    CachingRequestWrapper requestWrapper, CachingResponseWrapper responseWrapper,
+                                    long requestAt, long startNanos, long wrapNanos, boolean failed, boolean timedOut, boolean async,
+                                    TailCapturePolicy tailCapturePolicy) throws IOException {
+        try {
+            AccessLog accessLog = createAccessLog(request, response, requestAt, startNanos);
+            accessLog.addFilterNanos(wrapNanos);
+            applyFailureStatus(accessLog, failed, timedOut);
+            // 비동기 처리가 끝난 뒤에는 request body 를 더 읽을 수 없음
+            logWithContents(accessLog, requestWrapper, responseWrapper, failed || timedOut, !async, tailCapturePolicy);
+        } finally {
+            if (requestWrapper != null)
+                requestWrapper.getContent().release();
+            if (responseWrapper != null)
+                responseWrapper.releaseContent();
+        }
+    }
 
-        // Access 로그에 body 추가
-        accessLog.setRequestBody(requestBody);
-        accessLog.setResponseBody(responseBody);
+    /**
+     * Content capture 규칙에 따라 request body 를 캐싱하는 wrapper 를 만드는 메소드
+     */
+    private CachingRequestWrapper wrapRequest(HttpServletRequest httpServletRequest, int captureLength) {
+        if (contentCaptureRules == null)
+            return new CachingRequestWrapper(httpServletRequest, captureLength);
+
+        CaptureMode captureMode = contentCaptureRules.decide(httpServletRequest.getContentType(),
+                httpServletRequest.getHeader("Content-Encoding"), httpServletRequest.getContentLengthLong(), captureLength);
+        return new CachingRequestWrapper(httpServletRequest, captureMode, contentCaptureRules.captureLimit(captureMode, captureLength));
+    }
+
+    /**
+     * 캐싱된 contents 를 포함하여 로그를 남기는 메소드
+     * @param requestWrapper Request body 를 캐싱한 wrapper. Request body 를 남기지 않으면 null
+     * @param responseWrapper Response body 를 캐싱한 wrapper. Response body 를 남기지 않으면 null
+     * @param failed 요청 처리 중 예외 발생 또는 timeout 여부
+     * @param drainRequest 어플리케이션이 읽지 않은 request body 를 읽어서 캐싱할지 여부
+     * @param tailCapturePolicy Tail capture 설정. null 이면 항상 contents 를 남김
+     */
+    private void logWithContents(AccessLog accessLog, CachingRequestWrapper requestWrapper, CachingResponseWrapper responseWrapper,
+                                 boolean failed, boolean drainRequest, TailCapturePolicy tailCapturePolicy) throws IOException {
+        // Tail capture 시 남길 필요가 없는 contents 는 decode 하지 않고 버림
+        if (tailCapturePolicy != null && !tailCapturePolicy.shouldKeep(accessLog.getStatus(), accessLog.getElapsed(), failed)) {
+            if (measureStats) {
+                if (requestWrapper != null)
+                    stats.addDroppedBytes(requestWrapper.getContent().totalLength());
+                if (responseWrapper != null && responseWrapper.getContent() != null)
+                    stats.addDroppedBytes(responseWrapper.getContent().totalLength());
+            }
+            log(accessLog);
+            return;
+        }
+
+        // Body 추출 후 access 로그에 추가
+        long bodyStart = startStats();
+        boolean keepTruncatedHead = tailCapturePolicy != null;
+        if (requestWrapper != null) {
+            // 예외가 발생한 경우 어플리케이션이 읽지 않은 body 는 더 읽지 않음
+            if (drainRequest && !failed)
+                requestWrapper.finishCapture();
+            setRequestBody(accessLog, requestWrapper, keepTruncatedHead);
+        }
+        if (responseWrapper != null)
+            setResponseBody(accessLog, responseWrapper, keepTruncatedHead);
+        recordStats(accessLog, AccessLogFilterStats.Phase.BODY, bodyStart);
 
         // 로그 남기기
-        accessLogger.log(accessLog);
+        log(accessLog);
     }
 
     /**
@@ -123,168 +347,338 @@ public class AccessLogFilter extends OncePerRequestFilter {
      */
     private void processAccessLogWithoutContents(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain) throws IOException, ServletException {
         // 요청 시각
-        Date requestAt = new Date();
-        filterChain.doFilter(httpServletRequest, httpServletResponse);
-        // 응답 시각
-        Date responseAt = new Date();
-        AccessLog accessLog = createAccessLog(httpServletRequest, httpServletResponse, requestAt, responseAt);
+        long requestAt = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        try {
+            filterChain.doFilter(httpServletRequest, httpServletResponse);
+        } catch (Throwable t) {
+            // 로그를 남기다 발생한 예외가 어플리케이션의 예외를 가리지 않도록 한다.
+            try {
+                logWithoutContents(httpServletRequest, httpServletResponse, requestAt, startNanos, true, false);
+            } catch (RuntimeException e) {
+                t.addSuppressed(e);
+            }
+            throw t;
+        }
+
+        // 비동기 처리가 끝났을 때 로그를 남김
+        if (httpServletRequest.isAsyncStarted()) {
+            httpServletRequest.getAsyncContext().addListener(new AccessLogAsyncListener((failed, timedOut) ->
+                    logWithoutContents(httpServletRequest, httpServletResponse, requestAt, startNanos, failed, timedOut)));
+            return;
+        }
+
         // 로그 남기기
-        accessLogger.log(accessLog);
+        logWithoutContents(httpServletRequest, httpServletResponse, requestAt, startNanos, false, false);
+    }
+
+    /**
+     * Contents 없이 로그를 남기는 메소드
+     * @param failed 요청 처리 중 예외 발생 여부
+     * @param timedOut 비동기 처리 timeout 여부
+     */
+    private void logWithoutContents(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+                                    long requestAt, long startNanos, boolean failed, boolean timedOut) {
+        AccessLog accessLog = createAccessLog(httpServletRequest, httpServletResponse, requestAt, startNanos);
+        applyFailureStatus(accessLog, failed, timedOut);
+        log(accessLog);
+    }
+
+    /**
+     * Sampling 에서 제외된 요청 처리.
+     * 응답이 에러이거나 느린 경우에만 contents 없이 로그를 남긴다.
+     */
+    private void processUnsampled(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain) throws IOException, ServletException {
+        long requestAt = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        try {
+            filterChain.doFilter(httpServletRequest, httpServletResponse);
+        } catch (Throwable t) {
+            // 예외가 발생한 요청은 sampling 과 관계 없이 남긴다.
+            try {
+                logUnsampled(httpServletRequest, httpServletResponse, requestAt, startNanos, true, false);
+            } catch (RuntimeException e) {
+                t.addSuppressed(e);
+            }
+            throw t;
+        }
+
+        // 비동기 처리가 끝났을 때 판단
+        if (httpServletRequest.isAsyncStarted()) {
+            httpServletRequest.getAsyncContext().addListener(new AccessLogAsyncListener((failed, timedOut) ->
+                    logUnsampled(httpServletRequest, httpServletResponse, requestAt, startNanos, failed, timedOut)));
+            return;
+        }
+
+        logUnsampled(httpServletRequest, httpServletResponse, requestAt, startNanos, false, false);
+    }
+
+    /**
+     * Sampling 에서 제외된 요청이 에러이거나 느린 경우에만 로그를 남기는 메소드
+     * @param failed 요청 처리 중 예외 발생 여부
+     * @param timedOut 비동기 처리 timeout 여부
+     */
+    private void logUnsampled(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+                              long requestAt, long startNanos, boolean failed, boolean timedOut) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (!failed && !timedOut && !sampler.mustLog(httpServletResponse.getStatus(), elapsed))
+            return;
+
+        AccessLog accessLog = createAccessLog(httpServletRequest, httpServletResponse, requestAt, startNanos);
+        applyFailureStatus(accessLog, failed, timedOut);
+        log(accessLog);
+    }
+
+    /**
+     * 예외, timeout 이 발생했으나 에러 status 가 설정되지 않은 경우 status 를 보정하는 메소드
+     */
+    private void applyFailureStatus(AccessLog accessLog, boolean failed, boolean timedOut) {
+        if (accessLog.getStatus() >= 400)
+            return;
+        if (timedOut)
+            accessLog.setStatus(503);
+        else if (failed)
+            accessLog.setStatus(500);
+    }
+
+    /**
+     * AccessLogger 로 로그를 넘긴 뒤 레코드 참조를 해제하는 메소드
+     */
+    private void log(AccessLog accessLog) {
+        if (attachStats)
+            accessLog.addExtraField("filterNanos", Long.toString(accessLog.filterNanos()));
+
+        long logStart = startStats();
+        try {
+            accessLogger.log(accessLog);
+        } finally {
+            accessLog.release();
+            if (measureStats)
+                stats.record(AccessLogFilterStats.Phase.LOG, System.nanoTime() - logStart);
+        }
+    }
+
+    /**
+     * @return 처리 시간 측정 시 현재 System.nanoTime, 측정하지 않으면 0
+     */
+    private long startStats() {
+        return measureStats ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 단계의 처리 시간을 통계와 레코드에 기록하는 메소드
+     * @param start startStats 로 구한 단계 시작 시점
+     */
+    private void recordStats(AccessLog accessLog, AccessLogFilterStats.Phase phase, long start) {
+        if (!measureStats)
+            return;
+
+        long nanos = System.nanoTime() - start;
+        stats.record(phase, nanos);
+        accessLog.addFilterNanos(nanos);
     }
 
     /**
      * Servlet request, servlet response 상에서 로깅할 정보를 추출하는 메소드
      * @param httpServletRequest Servlet request
      * @param httpServletResponse Servlet response
-     * @param requestAt 요청 시각
-     * @param responseAt 응답 시각
+     * @param requestAt 요청 시각 (epoch millis)
+     * @param startNanos 요청 처리 시작 시점의 System.nanoTime
      */
-    private AccessLog createAccessLog(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, Date requestAt, Date responseAt) {
+    private AccessLog createAccessLog(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, long requestAt, long startNanos) {
         // 소요 시간 측정
-        long elapsed = responseAt.getTime() - requestAt.getTime();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        long extractStart = startStats();
+        AccessLog accessLog = accessLogPool != null ? accessLogPool.acquire() : new AccessLog();
+        accessLog.setRequestAtMillis(requestAt);
+        // 응답 시각
+        accessLog.setResponseAtMillis(System.currentTimeMillis());
+        accessLog.setElapsed(elapsed);
 
-        // User-Agent 분석
+        // User-Agent. 분석은 DeviceClassEnricher 에서 한다.
         String userAgent = httpServletRequest.getHeader("User-Agent");
         if (userAgent == null)
             userAgent = "Unknown";
-        String deviceClass = userAgentService.getDeviceClass(userAgent);
+        accessLog.setUserAgent(userAgent);
+
+        // Add hostname
+        accessLog.setHostName(hostName.toString());
 
         // Request
-        // IP address
-        String ip = extractIpAddress(httpServletRequest);
+        // IP address. Proxy 헤더의 원본 client IP 는 IpAddressEnricher 에서 찾는다.
+        accessLog.setIp(httpServletRequest.getRemoteAddr());
         // URI
-        String uri = httpServletRequest.getRequestURI();
+        accessLog.setUri(httpServletRequest.getRequestURI());
+        // Route template. Handler mapping 이 끝난 뒤에 구해야 하므로 여기서 구한다.
+        accessLog.setRoute(routeNormalizer.normalize(httpServletRequest, httpServletResponse.getStatus()));
         // URL query part
-        String query = httpServletRequest.getQueryString();
-
+        if (extractionPlan.isCaptureQuery())
+            accessLog.setQuery(httpServletRequest.getQueryString());
         // METHOD
-        String method = httpServletRequest.getMethod();
+        accessLog.setMethod(httpServletRequest.getMethod());
         // Request headers
-        Map<String, String> requestHeaders = getMapOfRequestHeaders(httpServletRequest);
-        requestHeaders.put("DeviceClass", deviceClass);
+        extractionPlan.extractRequestHeaders(httpServletRequest, accessLog);
+
         // Response STATUS
-        Integer httpStatus = httpServletResponse.getStatus();
+        accessLog.setStatus(httpServletResponse.getStatus());
         // Response headers
-        Map<String, String> responseHeaders = getMapOfResponseHeaders(httpServletResponse);
-
-        return AccessLog.builder()
-                .requestAt(requestAt)
-                .responseAt(responseAt)
-                .userAgent(userAgent)
-                // Add hostname
-                .hostName(hostName.toString())
-                .ip(ip)
-                .uri(uri)
-                .query(query)
-                .method(method)
-                .requestHeaders(requestHeaders)
-                .status(httpStatus)
-                .responseHeaders(responseHeaders)
-                // Add elapsed time
-                .elapsed(elapsed)
-                .build();
+        extractionPlan.extractResponseHeaders(httpServletResponse, accessLog);
+
+        // 사용자 정의 필드
+        extractionPlan.extractCustomFields(httpServletRequest, httpServletResponse, accessLog);
+
+        // 느린 요청의 stack trace
+        Object watchdogEntry = httpServletRequest.getAttribute(WATCHDOG_ENTRY_ATTRIBUTE);
+        if (watchdogEntry instanceof SlowRequestWatchdog.Entry) {
+            SlowRequestWatchdog.Entry entry = (SlowRequestWatchdog.Entry) watchdogEntry;
+            slowRequestWatchdog.unregister(entry);
+            String samples = entry.samples();
+            if (samples != null)
+                accessLog.addExtraField("stackSamples", samples);
+        }
+
+        recordStats(accessLog, AccessLogFilterStats.Phase.EXTRACT, extractStart);
+        return accessLog;
     }
 
     /**
-     * Servlet request 의 헤더에서 IP 주소를 추출하는 메소드
-     * @param httpServletRequest IP 주소를 추출할 servlet request
-     * @return IP 주소
+     * 요청 바디를 access log 에 추가
+     * @param accessLog 바디를 추가할 access log
+     * @param requestWrapper 요청 바디를 캐싱한 wrapper
+     * @param keepTruncatedHead 최대 길이보다 긴 경우 앞부분을 남길지 여부
      */
-    private String extractIpAddress(HttpServletRequest httpServletRequest) {
+    private void setRequestBody(AccessLog accessLog, CachingRequestWrapper requestWrapper, boolean keepTruncatedHead) {
+        CaptureBuffer content = requestWrapper.getContent();
+        if (contentCaptureRules != null)
+            accessLog.setRequestBodySize(content.totalLength());
+        recordCapture(content, requestWrapper.getCaptureMode(), keepTruncatedHead);
+
+        // Binary body 는 content type, 길이만 남김
+        CaptureMode captureMode = requestWrapper.getCaptureMode();
+        if (captureMode == CaptureMode.SKIP || captureMode == CaptureMode.SUMMARIZE) {
+            accessLog.setRequestBody(describeBody(requestWrapper.getContentType(), content, captureMode));
+            return;
+        }
 
-        // 요청이 proxy 되었을 때 다음 헤더 중 하나에 원본 client ip 가 존재한다.
+        // 최대 길이보다 긴지 확인
+        if (content.isTruncated() && !keepTruncatedHead && captureMode != CaptureMode.TRUNCATE) {
+            accessLog.setRequestBody(TOO_LONG_CONTENTS_MESSAGE);
+            return;
+        }
 
-        String xForwardedFor = httpServletRequest.getHeader("X-Forwarded-For");
-        if (isValidIp(xForwardedFor))
-            return xForwardedFor;
+        accessLog.setRequestBodyBytes(copyBody(content, null));
+    }
 
-        String proxyClientIp = httpServletRequest.getHeader("Proxy-Client-IP");
-        if (isValidIp(proxyClientIp))
-            return proxyClientIp;
+    /**
+     * 응답 바디를 access log 에 추가
+     * @param accessLog 바디를 추가할 access log
+     * @param responseWrapper 응답 바디를 캐싱한 wrapper
+     * @param keepTruncatedHead 최대 길이보다 긴 경우 앞부분을 남길지 여부
+     */
+    private void setResponseBody(AccessLog accessLog, CachingResponseWrapper responseWrapper, boolean keepTruncatedHead) {
+        CaptureBuffer content = responseWrapper.getContent();
+        // Output stream 을 사용하지 않은 경우
+        if (content == null) {
+            accessLog.setResponseBody(DEFAULT_NO_RESPONSE_MESSAGE);
+            return;
+        }
 
-        String wlProxyClientIp = httpServletRequest.getHeader("WL-Proxy-Client-IP");
-        if (isValidIp(wlProxyClientIp))
-            return wlProxyClientIp;
+        if (contentCaptureRules != null)
+            accessLog.setResponseBodySize(content.totalLength());
+        recordCapture(content, responseWrapper.getCaptureMode(), keepTruncatedHead);
 
-        String httpClientIp = httpServletRequest.getHeader("HTTP_CLIENT_IP");
-        if (isValidIp(httpClientIp))
-            return httpClientIp;
+        // Binary body 는 content type, 길이만 남김
+        CaptureMode captureMode = responseWrapper.getCaptureMode();
+        if (captureMode == CaptureMode.SKIP || captureMode == CaptureMode.SUMMARIZE) {
+            accessLog.setResponseBody(describeBody(responseWrapper.getContentType(), content, captureMode));
+            return;
+        }
 
-        String httpXForwardedFor = httpServletRequest.getHeader("HTTP_X_FORWARDED_FOR");
-        if (isValidIp(httpXForwardedFor))
-            return httpXForwardedFor;
+        // 최대 길이보다 긴지 확인
+        if (content.isTruncated() && !keepTruncatedHead && captureMode != CaptureMode.TRUNCATE) {
+            accessLog.setResponseBody(TOO_LONG_CONTENTS_MESSAGE);
+            return;
+        }
 
-        // 그 외의 경우, proxy 되지 않았다고 판단하여 getRemoteAddr() 메소드로 IP 주소를 가져옴.
-        return httpServletRequest.getRemoteAddr();
+        accessLog.setResponseBodyBytes(copyBody(content, responseWrapper.getWriterCharset()));
     }
 
     /**
-     * 대상 IP 문자열이 valid ip string 인지 확인하는 메소드
-     * @param target 확인할 문자열
-     * @return IP address validity
+     * 로그에 남길 body bytes 와 남기지 않을 bytes 를 통계에 기록하는 메소드
      */
-    private boolean isValidIp(String target) {
-        if (target == null || target.length() == 0)
-            return false;
+    private void recordCapture(CaptureBuffer content, CaptureMode captureMode, boolean keepTruncatedHead) {
+        if (!measureStats)
+            return;
 
-        return !"unknown".equalsIgnoreCase(target);
+        long captured = content.size();
+        if (captureMode == CaptureMode.SKIP || captureMode == CaptureMode.SUMMARIZE
+                || content.isTruncated() && !keepTruncatedHead && captureMode != CaptureMode.TRUNCATE)
+            captured = 0;
+        stats.addCapturedBytes(captured);
+        stats.addDroppedBytes(content.totalLength() - captured);
     }
 
     /**
-     * Servlet request 의 헤더를 Map 형태로 변환하는 메소드
-     * @param httpServletRequest 헤더를 포함하는 servlet request
-     * @return Map 형태의 헤더
+     * 캐싱하지 않은 body 의 요약. "[content type, 길이 bytes]" 형식이며, SUMMARIZE 일 경우 캐싱된 앞부분을 hex 로 덧붙인다.
      */
-    private Map<String, String> getMapOfRequestHeaders(HttpServletRequest httpServletRequest) {
-        Map<String, String> headers = new LinkedHashMap<>();
-        Enumeration<String> headerNames = httpServletRequest.getHeaderNames();
-        while(headerNames.hasMoreElements()) {
-            String headerName = headerNames.nextElement();
-            headers.put(headerName, httpServletRequest.getHeader(headerName));
+    private String describeBody(String contentType, CaptureBuffer content, CaptureMode captureMode) {
+        StringBuilder description = new StringBuilder(64 + content.size() * 2)
+                .append('[')
+                .append(contentType != null ? contentType : "unknown")
+                .append(", ")
+                .append(content.totalLength())
+                .append(" bytes]");
+        if (captureMode != CaptureMode.SUMMARIZE || content.size() == 0)
+            return description.toString();
+
+        description.append(' ');
+        byte[] bytes = content.array();
+        for (int i = 0; i < content.size(); i++) {
+            description.append(HEX_DIGITS[(bytes[i] >> 4) & 0xf]);
+            description.append(HEX_DIGITS[bytes[i] & 0xf]);
         }
-        return headers;
+        if (content.isTruncated())
+            description.append("...");
+        return description.toString();
     }
 
     /**
-     * Servlet response 의 헤더를 Map 형태로 변환하는 메소드
-     * @param httpServletResponse 헤더를 포함하는 servlet response
-     * @return Map 형태의 헤더
+     * 캐싱된 바디에서 줄바꿈, 탭 문자를 제외하고 민감한 값을 가려 복사하는 메소드.
+     * 일부만 캐싱된 경우 끝에 TRUNCATED_MARKER 를 붙이며, 잘린 UTF-8 문자는 남기지 않는다.
+     * @param charset 캐싱된 바디의 charset. UTF-8 이 아니면 UTF-8 로 변환한다. 모르면 null
      */
-    private Map<String, String> getMapOfResponseHeaders(HttpServletResponse httpServletResponse) {
-        Map<String, String> headers = new LinkedHashMap<>();
-        httpServletResponse.getHeaderNames().forEach((headerName) -> {
-            headers.put(headerName, httpServletResponse.getHeader(headerName));
-        });
-        return headers;
+    private byte[] copyBody(CaptureBuffer content, Charset charset) {
+        byte[] marker = content.isTruncated() ? TRUNCATED_MARKER : NO_MARKER;
+        if (charset != null && !StandardCharsets.UTF_8.equals(charset) && !isAscii(content.array(), content.size())) {
+            byte[] utf8 = content.toString(charset).getBytes(StandardCharsets.UTF_8);
+            return bodyMasker.copy(utf8, utf8.length, marker);
+        }
+        int length = content.isTruncated() ? completeUtf8Length(content.array(), content.size()) : content.size();
+        return bodyMasker.copy(content.array(), length, marker);
     }
 
     /**
-     * 요청 바디 추출
-     * @param cachingRequestWrapper 요청 바디를 추출할 wrapper 객체
-     * @return 요청 바디
+     * 최대 길이에서 잘린 UTF-8 bytes 의 끝에 남은 불완전한 문자를 제외한 길이를 구하는 메소드
      */
-    private String getRequestBody(CachingRequestWrapper cachingRequestWrapper) {
-        byte[] buf = cachingRequestWrapper.getContentsAsByteArray();
-        // 최대 길이보다 긴지 확인하고 반환
-        if (buf.length > accessLogFilterConfigurer.getMaxContentLength())
-            return "TOO LONG CONTENTS";
-
-        return new String(buf, StandardCharsets.UTF_8)
-                .replaceAll("[\\n\\t]", "");
+    private static int completeUtf8Length(byte[] bytes, int length) {
+        // 끝에서부터 continuation byte (10xxxxxx) 를 건너 뛰어 마지막 문자의 첫 byte 를 찾는다.
+        int start = length;
+        while (start > 0 && length - start < 3 && (bytes[start - 1] & 0xc0) == 0x80)
+            start--;
+        if (start == 0)
+            return length;
+
+        int lead = bytes[start - 1] & 0xff;
+        int sequenceLength = lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : lead >= 0xc0 ? 2 : 1;
+        return length - (start - 1) < sequenceLength ? start - 1 : length;
     }
 
-    /**
-     * 응답 바디 추출
-     * @param cachingResponseWrapper 응답 바디 추출할 wrapper 객체
-     * @return 응답 바디
-     */
-    private String getResponseBody(CachingResponseWrapper cachingResponseWrapper) {
-        byte[] buf = cachingResponseWrapper.getContentAsByteArray();
-        // 최대 길이보다 긴지 확인하고 반환
-        if (buf.length > accessLogFilterConfigurer.getMaxContentLength())
-            return "TOO LONG CONTENTS";
-
-        return new String(buf, StandardCharsets.UTF_8)
-                .replaceAll("[\\n\\t]", "");
+    private static boolean isAscii(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0)
+                return false;
+        }
+        return true;
     }
 }
@@ -18,6 +18,7 @@ import java.util.List;
 public class AccessLogFilterConfigurer {
 
     // 로그를 남기지 않을 URI 리스트
+    // "/prefix", Ant style pattern ("/static/**"), method 지정 ("GET /api/v1/users") 형식을 사용할 수 있다.
     private List<String> whiteList;
 
     // Maximum request, response contents length
@@ -25,4 +26,51 @@ public class AccessLogFilterConfigurer {
 
     // Request, response body 를 로그로 남길지 여부
     private boolean enableContentLogging = false;
+
+    // Sampling 설정. 설정하지 않으면 모든 요청의 로그를 남긴다.
+    private SamplingPolicy samplingPolicy;
+
+    // Tail capture 설정. 설정하면 에러, 느린 요청의 body 만 남긴다.
+    private TailCapturePolicy tailCapturePolicy;
+
+    // 로그에 남길 필드 설정. 설정하지 않으면 모든 헤더, query, body 를 남긴다.
+    private FieldSelection fieldSelection;
+
+    // Body masking 설정. 설정하지 않으면 줄바꿈만 제거하고 그대로 남긴다.
+    private MaskingPolicy maskingPolicy;
+
+    // Content type 별 body capture 설정. 설정하지 않으면 모든 body 를 텍스트로 캐싱한다.
+    private ContentCapturePolicy contentCapturePolicy;
+
+    // AccessLog 레코드를 pool 에서 재사용할지 여부.
+    // AccessLogger 가 log 메소드 밖에서 레코드를 참조한다면 AccessLog.retain, release 를 호출해야 한다.
+    private boolean reuseAccessLog;
+
+    // User agent 분석 결과 cache 크기. 0 이면 기본값 (25000)
+    // 모든 필터가 하나의 analyzer 를 공유하므로 처음 생성된 필터의 설정만 적용된다.
+    private int userAgentCacheSize;
+
+    // 로그를 남기기 전에 실행할 enricher 목록.
+    // 설정하지 않으면 IpAddressEnricher, DeviceClassEnricher 를 사용하고, 빈 리스트이면 실행하지 않는다.
+    private List<AccessLogEnricher> enrichers;
+
+    // URI 별 route 정규화 결과 cache 크기. 0 이면 기본값 (10000)
+    private int routeCacheSize;
+
+    // Route 정규화 시 같은 위치에서 서로 다른 값이 이 수 만큼 나온 segment 는 {var} 로 바꾼다. 0 이면 기본값 (100)
+    // 정상 처리된 (2xx, 3xx) 요청의 값만 센다.
+    private int maxRouteSegmentValues;
+
+    // 느린 요청 감시 설정. 설정하면 처리 중인 요청이 느릴 때 thread stack trace 를 수집하여 로그에 남긴다.
+    private SlowRequestPolicy slowRequestPolicy;
+
+    // 필터 자체의 단계별 처리 시간, body capture 양을 측정할지 여부. AccessLogFilter.getStats 로 조회한다.
+    private boolean enableFilterStats;
+
+    // 요청마다 필터가 로깅 전까지 사용한 시간 (ns) 을 filterNanos 사용자 정의 필드로 남길지 여부. 설정하면 측정도 한다.
+    private boolean attachFilterStats;
+
+    // Enrichment 와 로깅을 요청 thread 가 아닌 별도 thread 에서 실행할지 여부. 설정하면 user agent 분석 등이 응답 시간에 포함되지 않는다.
+    // AccessLogger 는 요청 thread 의 상태 (MDC 등) 를 사용할 수 없고, queue 가 가득 차면 새 로그를 버린다.
+    private boolean asyncEnrichment;
 }
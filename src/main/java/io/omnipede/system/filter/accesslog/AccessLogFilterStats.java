@@ -0,0 +1,111 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AccessLogFilter 가 자신의 처리에 사용한 시간과 body capture 양에 대한 통계.
+ * AccessLogFilterConfigurer.enableFilterStats 설정 시에만 기록된다.
+ */
+public class AccessLogFilterStats {
+
+    /**
+     * 필터의 처리 단계
+     */
+    public enum Phase {
+        // Request, response wrapper 생성
+        WRAP,
+        // AccessLog 생성 및 헤더, 사용자 정의 필드 추출
+        EXTRACT,
+        // Enricher 실행 (user agent 분석 등). Enrichment 를 별도 thread 에서 실행하면 consumer thread 에서 측정된다.
+        ENRICH,
+        // 캐싱된 body 의 masking, 복사
+        BODY,
+        // 기본 AccessLogger 의 JSON 직렬화. LOG 에 포함되며, 직접 구현한 AccessLogger 를 사용하면 측정되지 않는다.
+        SERIALIZE,
+        // AccessLogger 호출. Enrichment 를 별도 thread 에서 실행하면 queue 에 넣는 시간만 측정된다.
+        LOG
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+
+    private final LongAdder capturedBytes = new LongAdder();
+
+    private final LongAdder droppedBytes = new LongAdder();
+
+    AccessLogFilterStats() {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    void addCapturedBytes(long bytes) {
+        capturedBytes.add(bytes);
+    }
+
+    void addDroppedBytes(long bytes) {
+        droppedBytes.add(bytes);
+    }
+
+    /**
+     * @return 단계별 처리 시간 (ns) 통계
+     */
+    public List<PhaseStats> getPhases() {
+        List<PhaseStats> phases = new ArrayList<>(PHASES.length);
+        for (Phase phase : PHASES) {
+            LatencyHistogram histogram = histograms[phase.ordinal()];
+            long count = histogram.getCount();
+            long[] percentiles = histogram.getValuesAtPercentiles(50, 99, 99.9);
+            phases.add(new PhaseStats(phase, count, count > 0 ? (double) histogram.getSum() / count : 0,
+                    histogram.getMax(), percentiles[0], percentiles[1], percentiles[2]));
+        }
+        return phases;
+    }
+
+    /**
+     * @return 로그에 남긴 body 의 bytes
+     */
+    public long getCapturedBytes() {
+        return capturedBytes.sum();
+    }
+
+    /**
+     * @return 최대 길이 초과, capture 정책, tail capture 로 로그에 남기지 않은 body 의 bytes
+     */
+    public long getDroppedBytes() {
+        return droppedBytes.sum();
+    }
+
+    /**
+     * 단계 하나의 처리 시간 (ns) 통계
+     */
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class PhaseStats {
+
+        private final Phase phase;
+
+        private final long count;
+
+        private final double meanNanos;
+
+        private final long maxNanos;
+
+        private final long p50Nanos;
+
+        private final long p99Nanos;
+
+        private final long p999Nanos;
+    }
+}
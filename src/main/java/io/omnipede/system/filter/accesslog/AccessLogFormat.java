@@ -0,0 +1,45 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Access log 직렬화 형식.
+ * encode 결과는 레코드에 저장되므로, FanOutAccessLogger 로 여러 sink 가 같은 형식을 요청해도 레코드 당 한번만 직렬화 한다.
+ * 따라서 encode 를 호출한 뒤에는 레코드를 수정하지 않아야 한다.
+ */
+public enum AccessLogFormat {
+
+    // AccessLogEncoder 의 JSON 한 줄. 줄바꿈 문자는 포함하지 않는다.
+    JSON {
+        @Override
+        byte[] encodeUncached(AccessLog accessLog) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+            JSON_ENCODER.encode(accessLog, out);
+            return out.toByteArray();
+        }
+    },
+
+    // SegmentFileAccessLogger 와 같은 compact binary 레코드
+    BINARY {
+        @Override
+        byte[] encodeUncached(AccessLog accessLog) {
+            AccessLogCodec codec = new AccessLogCodec();
+            int length = codec.encode(accessLog);
+            return Arrays.copyOf(codec.buffer(), length);
+        }
+    };
+
+    private static final AccessLogEncoder JSON_ENCODER = new AccessLogEncoder();
+
+    /**
+     * 레코드를 직렬화 하는 메소드. 같은 레코드에 대해 이미 직렬화 했으면 그 결과를 반환한다.
+     * @return 직렬화 된 레코드. 반환된 배열은 수정하지 않아야 한다.
+     */
+    public byte[] encode(AccessLog accessLog) throws IOException {
+        return accessLog.encoded(this);
+    }
+
+    abstract byte[] encodeUncached(AccessLog accessLog) throws IOException;
+}
@@ -0,0 +1,15 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.util.List;
+
+/**
+ * MetricsAccessLogger 를 JMX 로 조회하기 위한 인터페이스
+ */
+public interface AccessLogMetricsMXBean {
+
+    List<RouteMetricsSnapshot> getRoutes();
+
+    long getRecordedCount();
+
+    long getOverflowCount();
+}
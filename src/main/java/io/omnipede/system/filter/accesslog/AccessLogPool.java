@@ -0,0 +1,31 @@
+package io.omnipede.system.filter.accesslog;
+
+/**
+ * AccessLog 레코드를 재사용하기 위한 pool.
+ * 레코드의 마지막 참조가 release 되면 pool 로 돌아온다.
+ */
+class AccessLogPool {
+
+    private final BoundedRingBuffer<AccessLog> pool;
+
+    AccessLogPool(int capacity) {
+        this.pool = new BoundedRingBuffer<>(capacity);
+    }
+
+    /**
+     * 재사용할 레코드를 가져오는 메소드. Pool 이 비어 있으면 새로 만든다.
+     */
+    AccessLog acquire() {
+        AccessLog accessLog = pool.poll();
+        if (accessLog == null)
+            return new AccessLog(this);
+
+        accessLog.reuse();
+        return accessLog;
+    }
+
+    void recycle(AccessLog accessLog) {
+        // Pool 이 가득 찼으면 버림
+        pool.offer(accessLog);
+    }
+}
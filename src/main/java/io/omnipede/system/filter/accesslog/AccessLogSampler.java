@@ -0,0 +1,106 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SamplingPolicy 를 컴파일 하여 요청 별로 로그를 남길지 결정하는 객체
+ */
+class AccessLogSampler {
+
+    private final double rate;
+
+    // URI prefix 별 rate limiter
+    private final PrefixTrie<RateLimiter> rateLimiters = new PrefixTrie<>();
+
+    private final boolean hasRateLimits;
+
+    private final boolean alwaysLogErrors;
+
+    // 0 이하면 사용하지 않음
+    private final long slowRequestThresholdMillis;
+
+    AccessLogSampler(SamplingPolicy samplingPolicy) {
+        if (samplingPolicy == null)
+            samplingPolicy = new SamplingPolicy();
+
+        this.rate = samplingPolicy.getRate() != null ? samplingPolicy.getRate() : 1.0;
+        this.alwaysLogErrors = samplingPolicy.getAlwaysLogErrors() == null || samplingPolicy.getAlwaysLogErrors();
+        this.slowRequestThresholdMillis = samplingPolicy.getSlowRequestThresholdMillis() != null ? samplingPolicy.getSlowRequestThresholdMillis() : 0;
+
+        Map<String, Integer> rateLimits = samplingPolicy.getRateLimits();
+        this.hasRateLimits = rateLimits != null && !rateLimits.isEmpty();
+        if (hasRateLimits)
+            rateLimits.forEach((prefix, permitsPerSecond) -> rateLimiters.put(prefix, new RateLimiter(permitsPerSecond)));
+    }
+
+    /**
+     * 요청 처리 전, 로그를 남길 요청인지 결정하는 메소드
+     * @param uri 요청 URI
+     * @return Sampling 되었으면 true
+     */
+    boolean sample(String uri) {
+        if (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate)
+            return false;
+
+        if (!hasRateLimits)
+            return true;
+
+        RateLimiter rateLimiter = rateLimiters.findLongestPrefix(uri);
+        return rateLimiter == null || rateLimiter.tryAcquire();
+    }
+
+    /**
+     * Sampling 에서 제외된 요청이라도 로그를 남겨야 하는지 확인하는 메소드
+     * @param status 응답 status
+     * @param elapsedMillis 요청 처리 소요 시간
+     */
+    boolean mustLog(int status, long elapsedMillis) {
+        if (alwaysLogErrors && status >= 500)
+            return true;
+
+        return slowRequestThresholdMillis > 0 && elapsedMillis >= slowRequestThresholdMillis;
+    }
+
+    /**
+     * Lock 을 사용하지 않는 token bucket.
+     * GCRA 방식으로 다음 token 이 생기는 시각 하나만 관리하며, 최대 1초 분량의 burst 를 허용한다.
+     */
+    static class RateLimiter {
+
+        // Token 하나가 생기는 간격
+        private final long intervalNanos;
+
+        // 허용하는 burst 크기 (nanos)
+        private final long burstNanos;
+
+        // Theoretical arrival time
+        private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+
+        // 0 이면 모든 요청 거부
+        private final boolean blockAll;
+
+        RateLimiter(int permitsPerSecond) {
+            this.blockAll = permitsPerSecond <= 0;
+            this.intervalNanos = blockAll ? Long.MAX_VALUE : TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+            this.burstNanos = TimeUnit.SECONDS.toNanos(1) - intervalNanos;
+        }
+
+        boolean tryAcquire() {
+            if (blockAll)
+                return false;
+
+            long now = System.nanoTime();
+            for (;;) {
+                long current = tat.get();
+                long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+                if (base - now > burstNanos)
+                    return false;
+                if (tat.compareAndSet(current, base + intervalNanos))
+                    return true;
+            }
+        }
+    }
+}
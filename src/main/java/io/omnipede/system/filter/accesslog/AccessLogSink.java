@@ -0,0 +1,46 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * FanOutAccessLogger 의 sink 설정 클래스.
+ * Sink 마다 별도의 queue 와 thread 를 가지며, 연속으로 실패하는 sink 는 circuit breaker 로 잠시 건너뛴다.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AccessLogSink {
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_MILLIS = 30_000;
+
+    // 통계, 로그에 표시할 sink 이름
+    private String name;
+
+    // 실제로 로그를 남기는 객체
+    private AccessLogger accessLogger;
+
+    // Sink queue 크기. 설정하지 않으면 AsyncAccessLogger 기본값 (8192)
+    private Integer queueCapacity;
+
+    // Queue 가 가득 찼을 때의 처리 정책. 설정하지 않으면 DROP_NEWEST
+    private AsyncAccessLogger.OverflowPolicy overflowPolicy;
+
+    // 이 횟수만큼 연속으로 실패하면 circuit 을 연다. 설정하지 않으면 5
+    private Integer failureThreshold;
+
+    // Circuit 을 연 뒤 로그를 버리는 시간 (ms). 이후 한 batch 를 시도하여 성공하면 circuit 을 닫는다. 설정하지 않으면 30000
+    private Long openMillis;
+
+    int resolveFailureThreshold() {
+        return failureThreshold != null ? failureThreshold : DEFAULT_FAILURE_THRESHOLD;
+    }
+
+    long resolveOpenMillis() {
+        return openMillis != null ? openMillis : DEFAULT_OPEN_MILLIS;
+    }
+}
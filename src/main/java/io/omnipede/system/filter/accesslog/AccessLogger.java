@@ -1,9 +1,21 @@
 package io.omnipede.system.filter.accesslog;
 
+import java.util.List;
+
 /**
  * 로그를 남길 때 사용하는 인터페이스
  */
 public interface AccessLogger {
 
     void log(AccessLog accessLog);
+
+    /**
+     * 여러 개의 로그를 한번에 남기는 메소드.
+     * 기본 구현은 log 를 반복 호출하며, batch 단위 처리가 유리한 구현체는 override 한다.
+     * @param accessLogs 로그 리스트
+     */
+    default void logBatch(List<AccessLog> accessLogs) {
+        for (AccessLog accessLog : accessLogs)
+            log(accessLog);
+    }
 }
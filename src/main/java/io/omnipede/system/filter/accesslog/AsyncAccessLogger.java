@@ -0,0 +1,264 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.Builder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 다른 AccessLogger 를 감싸서 별도의 consumer thread 에서 로그를 남기는 decorator.
+ * 요청 thread 는 ring buffer 에 로그를 넣기만 하므로 직렬화, appender 비용이 응답 시간에 포함되지 않는다.
+ *
+ * 사용이 끝나면 반드시 close 를 호출해야 buffer 에 남은 로그가 처리된다.
+ * Spring bean 으로 등록하면 context 종료 시 close 가 자동으로 호출된다.
+ */
+public class AsyncAccessLogger implements AccessLogger, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncAccessLogger.class);
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 10;
+    private static final int DEFAULT_SAMPLE_RATE = 10;
+
+    // Consumer 가 할 일이 없을 때 대기하는 최대 시간
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // Close 시 남은 로그를 처리하기 위해 기다리는 최대 시간
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * Buffer 가 가득 찼을 때의 처리 정책
+     */
+    public enum OverflowPolicy {
+        // 새로 들어온 로그를 버림
+        DROP_NEWEST,
+        // 가장 오래된 로그를 버리고 새 로그를 넣음
+        DROP_OLDEST,
+        // 정해진 시간 동안 빈 자리가 생길 때 까지 요청 thread 를 대기시킴
+        BLOCK,
+        // Buffer 가 절반 이상 차면 sampleRate 개 중 1 개만 받음
+        SAMPLE
+    }
+
+    // 실제로 로그를 남기는 객체
+    private final AccessLogger delegate;
+
+    private final BoundedRingBuffer<AccessLog> buffer;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long blockTimeoutNanos;
+
+    private final int sampleRate;
+
+    private final int batchSize;
+
+    private final Thread consumer;
+
+    private volatile boolean running = true;
+
+    // Consumer 가 park 상태인지 여부. Producer 가 깨울지 판단할 때 사용
+    private volatile boolean consumerParked = false;
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private final LongAdder failedCount = new LongAdder();
+
+    private final AtomicLong sampleSequence = new AtomicLong();
+
+    public AsyncAccessLogger(AccessLogger delegate) {
+        this(delegate, DEFAULT_CAPACITY, OverflowPolicy.DROP_NEWEST, DEFAULT_BLOCK_TIMEOUT_MILLIS, DEFAULT_SAMPLE_RATE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param delegate 실제로 로그를 남길 객체
+     * @param capacity Buffer 크기
+     * @param overflowPolicy Buffer 가 가득 찼을 때 처리 정책
+     * @param blockTimeoutMillis BLOCK 정책 사용 시 최대 대기 시간
+     * @param sampleRate SAMPLE 정책 사용 시 sampling 비율 (N 개 중 1 개)
+     * @param batchSize Consumer 가 한번에 꺼내서 처리하는 로그 개수
+     */
+    @Builder
+    private AsyncAccessLogger(AccessLogger delegate, int capacity, OverflowPolicy overflowPolicy,
+                              long blockTimeoutMillis, int sampleRate, int batchSize) {
+        if (delegate == null)
+            throw new IllegalArgumentException("Delegate access logger is required");
+
+        this.delegate = delegate;
+        this.buffer = new BoundedRingBuffer<>(capacity > 0 ? capacity : DEFAULT_CAPACITY);
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.DROP_NEWEST;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis > 0 ? blockTimeoutMillis : DEFAULT_BLOCK_TIMEOUT_MILLIS);
+        this.sampleRate = sampleRate > 0 ? sampleRate : DEFAULT_SAMPLE_RATE;
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+
+        this.consumer = new Thread(this::consume, "async-access-logger");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    @Override
+    public void log(AccessLog accessLog) {
+        if (!running) {
+            droppedCount.increment();
+            return;
+        }
+
+        // Consumer thread 가 처리할 때 까지 레코드가 재사용되지 않도록 참조를 유지한다.
+        accessLog.retain();
+        if (!enqueue(accessLog)) {
+            droppedCount.increment();
+            accessLog.release();
+            return;
+        }
+
+        if (consumerParked)
+            LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Overflow 정책에 따라 buffer 에 로그를 넣는 메소드
+     * @return Buffer 에 넣었는지 여부
+     */
+    private boolean enqueue(AccessLog accessLog) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!buffer.offer(accessLog)) {
+                    AccessLog oldest = buffer.poll();
+                    if (oldest != null) {
+                        droppedCount.increment();
+                        oldest.release();
+                    }
+                }
+                return true;
+            case BLOCK:
+                return offerWithTimeout(accessLog);
+            case SAMPLE:
+                if (buffer.size() >= buffer.capacity() / 2
+                        && sampleSequence.getAndIncrement() % sampleRate != 0)
+                    return false;
+                return buffer.offer(accessLog);
+            case DROP_NEWEST:
+            default:
+                return buffer.offer(accessLog);
+        }
+    }
+
+    private boolean offerWithTimeout(AccessLog accessLog) {
+        if (buffer.offer(accessLog))
+            return true;
+
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        do {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(this, 50_000);
+            if (buffer.offer(accessLog))
+                return true;
+        } while (running && System.nanoTime() - deadline < 0);
+
+        return false;
+    }
+
+    /**
+     * Consumer thread 에서 실행되는 메소드
+     */
+    private void consume() {
+        List<AccessLog> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            if (buffer.drainTo(batch, batchSize) == 0) {
+                park();
+                continue;
+            }
+
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void park() {
+        consumerParked = true;
+        // Flag 설정 후 다시 확인하여 producer 의 unpark 를 놓치지 않도록 한다.
+        if (running && buffer.isEmpty())
+            LockSupport.parkNanos(this, PARK_NANOS);
+        consumerParked = false;
+    }
+
+    private void flush(List<AccessLog> batch) {
+        try {
+            delegate.logBatch(batch);
+        } catch (VirtualMachineError e) {
+            failedCount.add(batch.size());
+            throw e;
+        } catch (Throwable t) {
+            // Delegate 의 Error (NoClassDefFoundError 등) 로 consumer thread 가 종료되지 않도록 한다.
+            failedCount.add(batch.size());
+            logger.error("Failed to write access logs", t);
+        } finally {
+            for (int i = 0; i < batch.size(); i++)
+                batch.get(i).release();
+        }
+    }
+
+    /**
+     * Buffer 에 남은 로그를 모두 처리한 뒤 consumer thread 를 종료하는 메소드
+     */
+    @Override
+    public void close() {
+        if (!running)
+            return;
+
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (consumer.isAlive()) {
+            logger.warn("Async access logger did not finish in {} ms, {} logs may be lost", SHUTDOWN_TIMEOUT_MILLIS, buffer.size());
+            return;
+        }
+
+        // Consumer 종료 직전에 들어온 로그 처리
+        List<AccessLog> rest = new ArrayList<>();
+        buffer.drainTo(rest, Integer.MAX_VALUE);
+        if (!rest.isEmpty())
+            flush(rest);
+    }
+
+    /**
+     * @return 현재 buffer 에 쌓여 있는 로그 개수
+     */
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    /**
+     * @return Buffer 크기
+     */
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return Overflow 정책 또는 종료로 인해 버려진 로그 개수
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return Delegate 에서 예외가 발생하여 남기지 못한 로그 개수
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+}
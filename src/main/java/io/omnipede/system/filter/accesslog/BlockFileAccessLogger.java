@@ -0,0 +1,323 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.Builder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Access log 를 deflate 로 압축된 block 단위로 파일에 기록하는 AccessLogger.
+ * 각 block 앞에는 BlockIndex (requestAt 범위, status class 별 레코드 수, URI bloom filter) 가 압축되지 않은 채로 기록되어,
+ * BlockLogQuery 가 조건에 맞지 않는 block 을 압축 해제 없이 건너뛸 수 있다.
+ *
+ * 레코드는 block 크기 만큼 모였거나, block 이 blockLingerMillis 보다 오래 되었거나, close 시에 압축되어 기록된다.
+ * 오래된 block 은 새 레코드가 들어오지 않아도 별도 thread 가 blockLingerMillis 의 절반 간격으로 확인하여 기록한다.
+ * 아직 압축되지 않은 레코드는 메모리에만 있으므로 프로세스가 죽으면 유실된다.
+ * 여러 thread 에서 호출할 수 있지만 내부적으로 동기화 되므로, AsyncAccessLogger 의 delegate 로 사용하는 것을 권장한다.
+ *
+ * 파일 형식
+ * <pre>
+ * header : magic "ALBK"(4) format version(4)
+ * block  : BlockIndex(BlockIndex.SIZE) 원본 길이(4) 압축 길이(4) crc32(4) deflate 압축된 레코드들(압축 길이)
+ * 레코드 : length(4) AccessLogCodec 레코드(length)
+ * </pre>
+ */
+public class BlockFileAccessLogger implements AccessLogger, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockFileAccessLogger.class);
+
+    static final byte[] MAGIC = {'A', 'L', 'B', 'K'};
+    static final int FORMAT_VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int BLOCK_HEADER_SIZE = BlockIndex.SIZE + 12;
+    static final String BLOCK_FILE_SUFFIX = ".alb";
+
+    private static final String DEFAULT_PREFIX = "access";
+    private static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    private static final long DEFAULT_FILE_SIZE = 256L * 1024 * 1024;
+    private static final long DEFAULT_BLOCK_LINGER_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final Path directory;
+
+    private final String prefix;
+
+    private final int blockSize;
+
+    private final long fileSize;
+
+    private final long blockLingerMillis;
+
+    private final AccessLogCodec codec = new AccessLogCodec();
+
+    private final Deflater deflater;
+
+    private final CRC32 crc = new CRC32();
+
+    private final BlockIndex blockIndex = new BlockIndex();
+
+    // 압축 전 레코드를 모으는 buffer
+    private byte[] block;
+
+    private int blockPosition;
+
+    private long blockOpenedAt;
+
+    private byte[] compressed;
+
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+    // 레코드가 들어오지 않을 때 오래된 block 을 기록하는 thread
+    private final ScheduledExecutorService flusher;
+
+    private FileChannel channel;
+
+    private long fileWritten;
+
+    private int sequence;
+
+    private boolean closed;
+
+    private final LongAdder writtenCount = new LongAdder();
+
+    private final LongAdder failedCount = new LongAdder();
+
+    private final LongAdder blockCount = new LongAdder();
+
+    /**
+     * @param directory Block 파일을 만들 디렉토리. 없으면 만든다.
+     * @param prefix Block 파일 이름 앞부분. 설정하지 않으면 "access"
+     * @param blockSize 압축 전 block 크기 (bytes). 설정하지 않으면 256KB
+     * @param fileSize 파일 크기가 이 값을 넘으면 새 파일을 만든다. 설정하지 않으면 256MB
+     * @param blockLingerMillis Block 이 가득 차지 않아도 이 시간이 지나면 기록한다. 설정하지 않으면 5 초
+     * @param compressionLevel Deflate 압축 레벨 (0 ~ 9). 설정하지 않으면 Deflater.DEFAULT_COMPRESSION
+     */
+    @Builder
+    private BlockFileAccessLogger(Path directory, String prefix, int blockSize, long fileSize, long blockLingerMillis, Integer compressionLevel) {
+        if (directory == null)
+            throw new IllegalArgumentException("Block file directory is required");
+
+        this.directory = directory;
+        this.prefix = prefix != null ? prefix : DEFAULT_PREFIX;
+        this.blockSize = blockSize > 0 ? blockSize : DEFAULT_BLOCK_SIZE;
+        this.fileSize = fileSize > 0 ? fileSize : DEFAULT_FILE_SIZE;
+        this.blockLingerMillis = blockLingerMillis > 0 ? blockLingerMillis : DEFAULT_BLOCK_LINGER_MILLIS;
+        this.deflater = new Deflater(compressionLevel != null ? compressionLevel : Deflater.DEFAULT_COMPRESSION);
+        this.block = new byte[this.blockSize];
+        this.compressed = new byte[this.blockSize];
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create block file directory " + directory, e);
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "access-log-block-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, this.blockLingerMillis / 2);
+        flusher.scheduleWithFixedDelay(this::flushLingered, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void log(AccessLog accessLog) {
+        long now = System.currentTimeMillis();
+        append(accessLog, now);
+        flushIfLingered(now);
+    }
+
+    @Override
+    public synchronized void logBatch(List<AccessLog> accessLogs) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < accessLogs.size(); i++)
+            append(accessLogs.get(i), now);
+        flushIfLingered(now);
+    }
+
+    private void append(AccessLog accessLog, long now) {
+        if (closed) {
+            failedCount.increment();
+            return;
+        }
+
+        try {
+            int length = codec.encode(accessLog);
+            int required = 4 + length;
+            if (blockPosition > 0 && blockPosition + required > blockSize)
+                flushBlockQuietly();
+
+            // Block 크기보다 큰 레코드는 해당 레코드 만으로 block 을 만든다.
+            if (block.length < required)
+                block = new byte[required];
+            if (blockPosition == 0)
+                blockOpenedAt = now;
+
+            block[blockPosition++] = (byte) (length >>> 24);
+            block[blockPosition++] = (byte) (length >>> 16);
+            block[blockPosition++] = (byte) (length >>> 8);
+            block[blockPosition++] = (byte) length;
+            System.arraycopy(codec.buffer(), 0, block, blockPosition, length);
+            blockPosition += length;
+            blockIndex.add(accessLog);
+            writtenCount.increment();
+        } catch (RuntimeException e) {
+            failedCount.increment();
+            logger.error("Failed to encode access log", e);
+        }
+    }
+
+    /**
+     * Flusher thread 에서 실행되는 메소드
+     */
+    private synchronized void flushLingered() {
+        if (!closed)
+            flushIfLingered(System.currentTimeMillis());
+    }
+
+    private void flushIfLingered(long now) {
+        if (blockPosition > 0 && now - blockOpenedAt >= blockLingerMillis)
+            flushBlockQuietly();
+    }
+
+    private void flushBlockQuietly() {
+        try {
+            flushBlock();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to write access log block", e);
+        }
+    }
+
+    /**
+     * 모은 레코드를 압축하여 index 와 함께 기록하는 메소드.
+     * 기록에 실패하면 block 의 레코드는 버린다.
+     */
+    private void flushBlock() throws IOException {
+        if (blockPosition == 0)
+            return;
+
+        int recordCount = blockIndex.getRecordCount();
+        try {
+            int compressedLength = compress();
+            if (channel == null || fileWritten >= fileSize)
+                rollFile();
+
+            crc.reset();
+            crc.update(compressed, 0, compressedLength);
+            blockHeader.clear();
+            blockIndex.write(blockHeader);
+            blockHeader.putInt(blockPosition);
+            blockHeader.putInt(compressedLength);
+            blockHeader.putInt((int) crc.getValue());
+            blockHeader.flip();
+
+            ByteBuffer[] buffers = {blockHeader, ByteBuffer.wrap(compressed, 0, compressedLength)};
+            long remaining = BLOCK_HEADER_SIZE + compressedLength;
+            while (remaining > 0)
+                remaining -= channel.write(buffers);
+            fileWritten += BLOCK_HEADER_SIZE + compressedLength;
+            blockCount.increment();
+        } catch (IOException | RuntimeException e) {
+            writtenCount.add(-recordCount);
+            failedCount.add(recordCount);
+            throw e;
+        } finally {
+            blockPosition = 0;
+            blockIndex.reset();
+            if (block.length > blockSize)
+                block = new byte[blockSize];
+        }
+    }
+
+    private int compress() {
+        deflater.reset();
+        deflater.setInput(block, 0, blockPosition);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length)
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        return length;
+    }
+
+    private void rollFile() throws IOException {
+        closeFile();
+
+        Path file = directory.resolve(String.format("%s-%013d-%06d%s", prefix, System.currentTimeMillis(), sequence++, BLOCK_FILE_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.put(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.flip();
+        while (header.hasRemaining())
+            channel.write(header);
+        fileWritten = FILE_HEADER_SIZE;
+    }
+
+    private void closeFile() throws IOException {
+        if (channel == null)
+            return;
+
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * @return 기록한 레코드 수
+     */
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    /**
+     * @return 기록하지 못한 레코드 수
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * @return 기록한 block 수
+     */
+    public long getBlockCount() {
+        return blockCount.sum();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        // 파일 기록 중인 thread 를 interrupt 하면 channel 이 닫히므로 shutdownNow 를 사용하지 않는다.
+        flusher.shutdown();
+        try {
+            flushBlock();
+        } finally {
+            deflater.end();
+            closeFile();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 압축 block 하나에 들어있는 레코드들의 요약 정보.
+ * Block 을 압축 해제 하지 않고도 query 대상이 아닌 block 을 건너뛸 수 있도록
+ * requestAt 범위, status class 별 레코드 수, URI 와 route 의 bloom filter 를 가지고 있다.
+ */
+final class BlockIndex {
+
+    // requestAt 범위(16) 레코드 수(4) status class 별 레코드 수(4 * 6) bloom filter(8 * 32)
+    static final int SIZE = 16 + 4 + 4 * 6 + 8 * 32;
+
+    // Status 가 없거나 1xx ~ 5xx 범위를 벗어나는 경우 0 번에 센다.
+    private static final int STATUS_CLASS_COUNT = 6;
+
+    private static final int BLOOM_WORDS = 32;
+    private static final int BLOOM_BITS = BLOOM_WORDS * 64;
+    private static final int BLOOM_HASHES = 4;
+
+    private long minRequestAt = Long.MAX_VALUE;
+
+    private long maxRequestAt = Long.MIN_VALUE;
+
+    private int recordCount;
+
+    private final int[] statusClassCounts = new int[STATUS_CLASS_COUNT];
+
+    private final long[] uriBloom = new long[BLOOM_WORDS];
+
+    void add(AccessLog accessLog) {
+        long requestAt = accessLog.getRequestAtMillis();
+        minRequestAt = Math.min(minRequestAt, requestAt);
+        maxRequestAt = Math.max(maxRequestAt, requestAt);
+        recordCount++;
+        statusClassCounts[statusClass(accessLog.getStatus())]++;
+
+        addToBloom(accessLog.getUri());
+        addToBloom(accessLog.getRoute());
+    }
+
+    private void addToBloom(String value) {
+        if (value == null)
+            return;
+
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % BLOOM_BITS;
+            uriBloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return requestAt 이 [from, to) 범위와 겹치는 레코드가 있을 수 있으면 true
+     */
+    boolean overlaps(long from, long to) {
+        return recordCount > 0 && maxRequestAt >= from && minRequestAt < to;
+    }
+
+    /**
+     * @param statusClass 1 ~ 5 (1xx ~ 5xx)
+     * @return 해당 status class 의 레코드가 있으면 true
+     */
+    boolean hasStatusClass(int statusClass) {
+        return statusClass > 0 && statusClass < STATUS_CLASS_COUNT && statusClassCounts[statusClass] > 0;
+    }
+
+    /**
+     * @param uri URI 또는 route
+     * @return 해당 URI 또는 route 의 레코드가 있을 수 있으면 true. False positive 가 있을 수 있다.
+     */
+    boolean mightContainUri(String uri) {
+        long hash = hash(uri);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % BLOOM_BITS;
+            if ((uriBloom[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    void write(ByteBuffer buffer) {
+        buffer.putLong(minRequestAt);
+        buffer.putLong(maxRequestAt);
+        buffer.putInt(recordCount);
+        for (int count : statusClassCounts)
+            buffer.putInt(count);
+        for (long word : uriBloom)
+            buffer.putLong(word);
+    }
+
+    static BlockIndex read(ByteBuffer buffer) {
+        BlockIndex index = new BlockIndex();
+        index.minRequestAt = buffer.getLong();
+        index.maxRequestAt = buffer.getLong();
+        index.recordCount = buffer.getInt();
+        for (int i = 0; i < STATUS_CLASS_COUNT; i++)
+            index.statusClassCounts[i] = buffer.getInt();
+        for (int i = 0; i < BLOOM_WORDS; i++)
+            index.uriBloom[i] = buffer.getLong();
+        return index;
+    }
+
+    void reset() {
+        minRequestAt = Long.MAX_VALUE;
+        maxRequestAt = Long.MIN_VALUE;
+        recordCount = 0;
+        Arrays.fill(statusClassCounts, 0);
+        Arrays.fill(uriBloom, 0);
+    }
+
+    static int statusClass(Integer status) {
+        if (status == null)
+            return 0;
+        int statusClass = status / 100;
+        return statusClass > 0 && statusClass < STATUS_CLASS_COUNT ? statusClass : 0;
+    }
+
+    /**
+     * 64 bit FNV-1a hash. 상위/하위 32 bit 를 double hashing 의 두 hash 로 사용한다.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // FNV 는 하위 bit 분포가 약하므로 한번 섞는다.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,182 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * BlockFileAccessLogger 가 기록한 block 파일에서 조건에 맞는 access log 를 찾는 query.
+ * Block index 로 조건에 맞는 레코드가 있을 수 없는 block 은 압축 해제 없이 건너뛴다.
+ *
+ * <pre>
+ * java -cp ... io.omnipede.system.filter.accesslog.BlockLogQuery \
+ *     [--from 2021-01-01T00:00:00Z] [--to 1609459200000] [--status 5xx|503] [--uri /api/v1/sample] [--route /users/{id}] \
+ *     [-o out.ndjson] &lt;block 파일 또는 디렉토리&gt;...
+ * </pre>
+ * 조건에 맞는 레코드는 AccessLogEncoder 의 NDJSON 으로 내보낸다.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BlockLogQuery {
+
+    // requestAt 이 이 시간 (epoch millis) 이후인 레코드. 설정하지 않으면 제한 없음
+    private Long from;
+
+    // requestAt 이 이 시간 (epoch millis) 이전인 레코드 (포함하지 않음). 설정하지 않으면 제한 없음
+    private Long to;
+
+    // 정확히 일치하는 status. 설정하지 않으면 제한 없음
+    private Integer status;
+
+    // Status class (5 이면 5xx). 설정하지 않으면 제한 없음
+    private Integer statusClass;
+
+    // 정확히 일치하는 URI. 설정하지 않으면 제한 없음
+    private String uri;
+
+    // 정확히 일치하는 route template (예: /users/{id}). 설정하지 않으면 제한 없음
+    private String route;
+
+    /**
+     * Query 를 실행하는 메소드
+     * @param paths Block 파일 또는 block 파일이 있는 디렉토리. 디렉토리 안의 파일은 이름 (생성 시간) 순서로 읽는다.
+     * @param consumer 조건에 맞는 레코드를 받을 consumer
+     * @return 실행 결과
+     */
+    public Result execute(List<Path> paths, Consumer<AccessLog> consumer) throws IOException {
+        long from = this.from != null ? this.from : Long.MIN_VALUE;
+        long to = this.to != null ? this.to : Long.MAX_VALUE;
+        int statusClass = status != null ? BlockIndex.statusClass(status) : this.statusClass != null ? this.statusClass : 0;
+
+        long[] matched = {0};
+        long scanned = 0;
+        try (BlockReader reader = new BlockReader()) {
+            for (Path file : SegmentExporter.resolveFiles(paths, BlockFileAccessLogger.BLOCK_FILE_SUFFIX)) {
+                scanned += reader.read(file,
+                        index -> index.overlaps(from, to)
+                                && (statusClass == 0 || index.hasStatusClass(statusClass))
+                                && (uri == null || index.mightContainUri(uri))
+                                && (route == null || index.mightContainUri(route)),
+                        accessLog -> {
+                            if (matches(accessLog, from, to, statusClass)) {
+                                matched[0]++;
+                                consumer.accept(accessLog);
+                            }
+                        });
+            }
+            return new Result(matched[0], scanned, reader.getScannedBlockCount(), reader.getSkippedBlockCount());
+        }
+    }
+
+    private boolean matches(AccessLog accessLog, long from, long to, int statusClass) {
+        long requestAt = accessLog.getRequestAtMillis();
+        if (requestAt < from || requestAt >= to)
+            return false;
+        if (status != null && !status.equals(accessLog.getStatus()))
+            return false;
+        if (statusClass != 0 && BlockIndex.statusClass(accessLog.getStatus()) != statusClass)
+            return false;
+        if (uri != null && !uri.equals(accessLog.getUri()))
+            return false;
+        return route == null || route.equals(accessLog.getRoute());
+    }
+
+    /**
+     * Query 실행 결과
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Result {
+
+        // 조건에 맞는 레코드 수
+        private final long matchedCount;
+
+        // 압축 해제 하여 확인한 레코드 수
+        private final long scannedCount;
+
+        // 압축 해제 하여 읽은 block 수
+        private final long scannedBlockCount;
+
+        // Index 만 보고 건너뛴 block 수
+        private final long skippedBlockCount;
+    }
+
+    public static void main(String[] args) throws IOException {
+        BlockLogQueryBuilder builder = BlockLogQuery.builder();
+        Path output = null;
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if ("--from".equals(arg) && hasValue) {
+                builder.from(parseTime(args[++i]));
+            } else if ("--to".equals(arg) && hasValue) {
+                builder.to(parseTime(args[++i]));
+            } else if ("--status".equals(arg) && hasValue) {
+                String status = args[++i];
+                if (status.toLowerCase().endsWith("xx"))
+                    builder.statusClass(Integer.parseInt(status.substring(0, status.length() - 2)));
+                else
+                    builder.status(Integer.parseInt(status));
+            } else if ("--uri".equals(arg) && hasValue) {
+                builder.uri(args[++i]);
+            } else if ("--route".equals(arg) && hasValue) {
+                builder.route(args[++i]);
+            } else if ("-o".equals(arg) && hasValue) {
+                output = Paths.get(args[++i]);
+            } else {
+                paths.add(Paths.get(arg));
+            }
+        }
+
+        if (paths.isEmpty()) {
+            System.err.println("Usage: BlockLogQuery [--from time] [--to time] [--status 5xx|503] [--uri uri] [--route route] [-o out.ndjson] <block file or directory>...");
+            System.exit(1);
+        }
+
+        AccessLogEncoder accessLogEncoder = new AccessLogEncoder();
+        OutputStream out = new BufferedOutputStream(output != null ? Files.newOutputStream(output) : System.out, 64 * 1024);
+        try {
+            Result result = builder.build().execute(paths, accessLog -> {
+                try {
+                    accessLogEncoder.encodeLine(accessLog, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            System.err.printf("matched=%d scanned=%d blocks(scanned=%d, skipped=%d)%n",
+                    result.getMatchedCount(), result.getScannedCount(), result.getScannedBlockCount(), result.getSkippedBlockCount());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (output != null)
+                out.close();
+            else
+                out.flush();
+        }
+    }
+
+    /**
+     * Epoch millis 또는 ISO-8601 instant (2021-01-01T00:00:00Z) 를 epoch millis 로 변환
+     */
+    private static long parseTime(String value) {
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit))
+            return Long.parseLong(value);
+        return Instant.parse(value).toEpochMilli();
+    }
+}
@@ -0,0 +1,139 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * BlockFileAccessLogger 가 기록한 block 파일을 읽는 객체.
+ * Block 의 index 가 조건에 맞지 않으면 압축 해제 없이 건너뛴다.
+ * 기록 중에 프로세스가 죽어 마지막 block 이 손상된 경우 손상된 block 직전까지만 읽는다.
+ * Inflater 와 buffer 를 재사용하므로 thread-safe 하지 않다.
+ */
+final class BlockReader implements AutoCloseable {
+
+    private final Inflater inflater = new Inflater();
+
+    private final CRC32 crc = new CRC32();
+
+    private byte[] compressed = new byte[64 * 1024];
+
+    private byte[] block = new byte[256 * 1024];
+
+    private long scannedBlockCount;
+
+    private long skippedBlockCount;
+
+    /**
+     * Block 파일의 레코드를 순서대로 읽는 메소드
+     * @param file Block 파일
+     * @param blockFilter 읽을 block 인지 판단하는 조건
+     * @param consumer 읽은 레코드를 받을 consumer
+     * @return 읽은 레코드 수
+     * @throws IOException Block 파일이 아니거나 읽을 수 없는 경우
+     */
+    long read(Path file, Predicate<BlockIndex> blockFilter, Consumer<AccessLog> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < BlockFileAccessLogger.FILE_HEADER_SIZE)
+                throw new IOException("Not an access log block file: " + file);
+
+            byte[] magic = new byte[BlockFileAccessLogger.MAGIC.length];
+            buffer.get(magic);
+            int version = buffer.getInt();
+            if (!Arrays.equals(magic, BlockFileAccessLogger.MAGIC) || version != BlockFileAccessLogger.FORMAT_VERSION)
+                throw new IOException("Not an access log block file: " + file);
+
+            long count = 0;
+            while (buffer.remaining() >= BlockFileAccessLogger.BLOCK_HEADER_SIZE) {
+                BlockIndex index = BlockIndex.read(buffer);
+                int rawLength = buffer.getInt();
+                int compressedLength = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (rawLength <= 0 || compressedLength <= 0 || compressedLength > buffer.remaining())
+                    break;
+
+                if (!blockFilter.test(index)) {
+                    buffer.position(buffer.position() + compressedLength);
+                    skippedBlockCount++;
+                    continue;
+                }
+
+                if (compressed.length < compressedLength)
+                    compressed = new byte[compressedLength];
+                buffer.get(compressed, 0, compressedLength);
+                crc.reset();
+                crc.update(compressed, 0, compressedLength);
+                if ((int) crc.getValue() != checksum)
+                    break;
+
+                inflate(compressedLength, rawLength, file);
+                scannedBlockCount++;
+                count += readRecords(rawLength, consumer);
+            }
+            return count;
+        }
+    }
+
+    private void inflate(int compressedLength, int rawLength, Path file) throws IOException {
+        if (block.length < rawLength)
+            block = new byte[rawLength];
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(block, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += inflated;
+            }
+            if (length != rawLength)
+                throw new IOException("Corrupted access log block in " + file);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted access log block in " + file, e);
+        }
+    }
+
+    private long readRecords(int rawLength, Consumer<AccessLog> consumer) {
+        long count = 0;
+        int position = 0;
+        while (position + 4 <= rawLength) {
+            int length = (block[position] & 0xff) << 24 | (block[position + 1] & 0xff) << 16
+                    | (block[position + 2] & 0xff) << 8 | (block[position + 3] & 0xff);
+            position += 4;
+            consumer.accept(AccessLogCodec.decode(block, position, length));
+            position += length;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return 압축 해제 하여 읽은 block 수
+     */
+    long getScannedBlockCount() {
+        return scannedBlockCount;
+    }
+
+    /**
+     * @return Index 만 보고 건너뛴 block 수
+     */
+    long getSkippedBlockCount() {
+        return skippedBlockCount;
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+}
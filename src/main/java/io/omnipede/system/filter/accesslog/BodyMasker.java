@@ -0,0 +1,423 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+
+/**
+ * 캐싱된 body 를 로그에 남길 바이트로 복사하는 객체.
+ * 줄바꿈, 탭 문자를 제거하면서 같은 pass 에서 MaskingPolicy 에 따라 민감한 값을 가린다.
+ *
+ * <ul>
+ *     <li>JSON key, form parameter : 민감한 key 목록을 Aho-Corasick automaton 으로 컴파일하여 한번에 찾고, 값을 "****" 로 바꾼다.</li>
+ *     <li>카드 번호 : 13 ~ 19 자리 숫자 (공백, - 구분 허용) 중 Luhn 검사를 통과하면 마지막 4 자리만 남긴다.</li>
+ *     <li>이메일 : @ 앞부분을 * 로 바꾼다.</li>
+ * </ul>
+ * 정규식은 사용하지 않으며, 생성 이후에는 thread-safe 하다.
+ */
+final class BodyMasker {
+
+    static final List<String> DEFAULT_SENSITIVE_KEYS = Arrays.asList(
+            "password", "passwd", "pwd", "secret", "token", "accessToken", "refreshToken",
+            "apiKey", "authorization", "cardNumber", "cvc", "cvv");
+
+    private static final byte[] MASK = "****".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] QUOTED_MASK = "\"****\"".getBytes(StandardCharsets.US_ASCII);
+
+    // 민감한 key 를 찾는 automaton. Masking 하지 않으면 null
+    private final KeyMatcher keyMatcher;
+
+    private final boolean maskCardNumbers;
+
+    private final boolean maskEmails;
+
+    /**
+     * @param policy Masking 설정. null 이면 줄바꿈만 제거한다.
+     */
+    BodyMasker(MaskingPolicy policy) {
+        if (policy == null) {
+            this.keyMatcher = null;
+            this.maskCardNumbers = false;
+            this.maskEmails = false;
+            return;
+        }
+
+        List<String> keys = policy.getSensitiveKeys() != null ? policy.getSensitiveKeys() : DEFAULT_SENSITIVE_KEYS;
+        this.keyMatcher = keys.isEmpty() ? null : new KeyMatcher(keys);
+        this.maskCardNumbers = !Boolean.FALSE.equals(policy.getMaskCardNumbers());
+        this.maskEmails = !Boolean.FALSE.equals(policy.getMaskEmails());
+    }
+
+    /**
+     * Body 를 복사하는 메소드
+     * @param src 캐싱된 body
+     * @param size Body 길이
+     * @param suffix 끝에 붙일 바이트. 없으면 빈 배열
+     * @return 줄바꿈이 제거되고 민감한 값이 가려진 body
+     */
+    byte[] copy(byte[] src, int size, byte[] suffix) {
+        Output out = new Output(size + suffix.length);
+        int state = 0;
+        int i = 0;
+        while (i < size) {
+            byte b = src[i];
+            if (b == '\n' || b == '\t') {
+                i++;
+                continue;
+            }
+
+            // 숫자가 시작되는 위치에서만 카드 번호 검사
+            if (maskCardNumbers && isDigit(b) && (i == 0 || !isAlphanumeric(src[i - 1]))) {
+                int end = scanCardNumber(src, i, size);
+                if (end > 0) {
+                    writeMaskedCardNumber(src, i, end, out);
+                    i = end;
+                    state = 0;
+                    continue;
+                }
+            }
+
+            out.write(b);
+
+            if (maskEmails && b == '@')
+                maskEmailLocalPart(src, i, size, out);
+
+            if (keyMatcher != null) {
+                state = keyMatcher.next(state, b);
+                int[] keyLengths = keyMatcher.outputs[state];
+                if (keyLengths != null) {
+                    int end = maskValue(src, i, size, keyLengths, out);
+                    if (end > 0) {
+                        i = end;
+                        state = 0;
+                        continue;
+                    }
+                }
+            }
+            i++;
+        }
+
+        out.write(suffix, 0, suffix.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * 민감한 key 뒤의 값을 가리는 메소드
+     * @param keyEnd Key 의 마지막 바이트 위치
+     * @return 값 다음 위치. Key 가 아니거나 가릴 수 없는 값이면 -1
+     */
+    private int maskValue(byte[] src, int keyEnd, int size, int[] keyLengths, Output out) {
+        if (keyEnd + 1 >= size)
+            return -1;
+
+        byte next = src[keyEnd + 1];
+        for (int keyLength : keyLengths) {
+            int before = keyEnd - keyLength;
+            if (next == '"' && before >= 0 && src[before] == '"')
+                return maskJsonValue(src, keyEnd + 1, size, out);
+            if (next == '=' && (before < 0 || src[before] == '&' || src[before] == '?'))
+                return maskFormValue(src, keyEnd + 1, size, out);
+        }
+        return -1;
+    }
+
+    /**
+     * JSON 값 masking. 문자열, 숫자 등 단일 값만 가리고 object, array 는 그대로 둔다.
+     * @param keyQuote Key 를 닫는 따옴표 위치
+     */
+    private int maskJsonValue(byte[] src, int keyQuote, int size, Output out) {
+        int j = skipWhitespace(src, keyQuote + 1, size);
+        if (j >= size || src[j] != ':')
+            return -1;
+        int valueStart = skipWhitespace(src, j + 1, size);
+        if (valueStart >= size || src[valueStart] == '{' || src[valueStart] == '[')
+            return -1;
+
+        int valueEnd;
+        if (src[valueStart] == '"') {
+            valueEnd = valueStart + 1;
+            while (valueEnd < size && src[valueEnd] != '"')
+                valueEnd += src[valueEnd] == '\\' ? 2 : 1;
+            valueEnd = Math.min(valueEnd + 1, size);
+        } else {
+            valueEnd = valueStart;
+            while (valueEnd < size && !isJsonValueTerminator(src[valueEnd]))
+                valueEnd++;
+        }
+
+        // 닫는 따옴표, ':' 와 공백은 줄바꿈만 빼고 그대로 남긴다.
+        for (int k = keyQuote; k < valueStart; k++) {
+            if (src[k] != '\n' && src[k] != '\t')
+                out.write(src[k]);
+        }
+        out.write(QUOTED_MASK, 0, QUOTED_MASK.length);
+        return valueEnd;
+    }
+
+    /**
+     * Form parameter 값 masking
+     * @param equals '=' 위치
+     */
+    private int maskFormValue(byte[] src, int equals, int size, Output out) {
+        int valueEnd = equals + 1;
+        while (valueEnd < size && src[valueEnd] != '&')
+            valueEnd++;
+
+        out.write((byte) '=');
+        out.write(MASK, 0, MASK.length);
+        return valueEnd;
+    }
+
+    /**
+     * 카드 번호 검사
+     * @return 카드 번호의 끝 위치. 카드 번호가 아니면 -1
+     */
+    private static int scanCardNumber(byte[] src, int start, int size) {
+        int digits = 0;
+        int j = start;
+        while (j < size) {
+            byte b = src[j];
+            if (isDigit(b)) {
+                digits++;
+                j++;
+            } else if ((b == ' ' || b == '-') && j + 1 < size && isDigit(src[j + 1])) {
+                j++;
+            } else {
+                break;
+            }
+            if (digits > 19)
+                return -1;
+        }
+
+        if (digits < 13 || (j < size && isAlphanumeric(src[j])))
+            return -1;
+        return passesLuhn(src, start, j) ? j : -1;
+    }
+
+    private static boolean passesLuhn(byte[] src, int start, int end) {
+        int sum = 0;
+        boolean doubled = false;
+        for (int k = end - 1; k >= start; k--) {
+            if (!isDigit(src[k]))
+                continue;
+            int digit = src[k] - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9)
+                    digit -= 9;
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return sum % 10 == 0;
+    }
+
+    /**
+     * 마지막 4 자리를 제외한 숫자를 * 로 바꿔 기록. 구분자는 그대로 남긴다.
+     */
+    private static void writeMaskedCardNumber(byte[] src, int start, int end, Output out) {
+        int digits = 0;
+        for (int k = start; k < end; k++) {
+            if (isDigit(src[k]))
+                digits++;
+        }
+
+        int remaining = digits;
+        for (int k = start; k < end; k++) {
+            byte b = src[k];
+            if (!isDigit(b)) {
+                out.write(b);
+                continue;
+            }
+            out.write(remaining > 4 ? (byte) '*' : b);
+            remaining--;
+        }
+    }
+
+    /**
+     * '@' 뒤가 domain 형식이면 이미 기록한 @ 앞부분을 * 로 바꾼다.
+     * @param at '@' 위치
+     */
+    private static void maskEmailLocalPart(byte[] src, int at, int size, Output out) {
+        int j = at + 1;
+        int lastDot = -1;
+        while (j < size && isDomainCharacter(src[j])) {
+            if (src[j] == '.')
+                lastDot = j;
+            j++;
+        }
+        // 최상위 domain 이 최소 2 글자여야 한다.
+        if (lastDot <= at + 1 || j - lastDot <= 2)
+            return;
+
+        // '@' 는 out 의 마지막 바이트
+        for (int k = out.length - 2; k >= 0 && isEmailLocalCharacter(out.buffer[k]); k--)
+            out.buffer[k] = '*';
+    }
+
+    private static int skipWhitespace(byte[] src, int from, int size) {
+        int j = from;
+        while (j < size && (src[j] == ' ' || src[j] == '\n' || src[j] == '\r' || src[j] == '\t'))
+            j++;
+        return j;
+    }
+
+    private static boolean isJsonValueTerminator(byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isAlphanumeric(byte b) {
+        return isDigit(b) || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isDomainCharacter(byte b) {
+        return isAlphanumeric(b) || b == '-' || b == '.';
+    }
+
+    private static boolean isEmailLocalCharacter(byte b) {
+        return isAlphanumeric(b) || b == '.' || b == '_' || b == '%' || b == '+' || b == '-';
+    }
+
+    /**
+     * 민감한 key 목록으로 만든 Aho-Corasick automaton.
+     * Failure link 를 미리 transition table 에 반영한 DFA 이므로 바이트 하나당 배열 조회 한번으로 상태를 옮긴다.
+     * ASCII 만 다루며, 대소문자를 구분하지 않는다.
+     */
+    private static final class KeyMatcher {
+
+        private static final int ALPHABET = 128;
+
+        // [state * ALPHABET + c] 다음 상태
+        private final int[] transitions;
+
+        // 상태에서 끝나는 key 의 길이 목록. 없으면 null
+        private final int[][] outputs;
+
+        private KeyMatcher(List<String> keys) {
+            List<int[]> gotoTable = new ArrayList<>();
+            List<int[]> outputList = new ArrayList<>();
+            gotoTable.add(newRow());
+            outputList.add(null);
+
+            for (String key : keys) {
+                byte[] bytes = key.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+                if (bytes.length == 0)
+                    continue;
+
+                int state = 0;
+                for (byte b : bytes) {
+                    int c = b & 0x7f;
+                    if (gotoTable.get(state)[c] < 0) {
+                        gotoTable.get(state)[c] = gotoTable.size();
+                        gotoTable.add(newRow());
+                        outputList.add(null);
+                    }
+                    state = gotoTable.get(state)[c];
+                }
+                outputList.set(state, append(outputList.get(state), bytes.length));
+            }
+
+            // BFS 로 failure link 를 계산하여 transition table 을 완성
+            int[] fail = new int[gotoTable.size()];
+            Queue<Integer> queue = new ArrayDeque<>();
+            int[] root = gotoTable.get(0);
+            for (int c = 0; c < ALPHABET; c++) {
+                if (root[c] < 0) {
+                    root[c] = 0;
+                } else {
+                    fail[root[c]] = 0;
+                    queue.add(root[c]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                int[] row = gotoTable.get(state);
+                for (int c = 0; c < ALPHABET; c++) {
+                    int next = row[c];
+                    if (next < 0) {
+                        row[c] = gotoTable.get(fail[state])[c];
+                        continue;
+                    }
+                    fail[next] = gotoTable.get(fail[state])[c];
+                    int[] inherited = outputList.get(fail[next]);
+                    if (inherited != null) {
+                        for (int length : inherited)
+                            outputList.set(next, append(outputList.get(next), length));
+                    }
+                    queue.add(next);
+                }
+            }
+
+            this.transitions = new int[gotoTable.size() * ALPHABET];
+            for (int state = 0; state < gotoTable.size(); state++)
+                System.arraycopy(gotoTable.get(state), 0, transitions, state * ALPHABET, ALPHABET);
+            this.outputs = outputList.toArray(new int[0][]);
+        }
+
+        int next(int state, byte b) {
+            int c = b & 0xff;
+            if (c >= ALPHABET)
+                return 0;
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            return transitions[state * ALPHABET + c];
+        }
+
+        private static int[] newRow() {
+            int[] row = new int[ALPHABET];
+            Arrays.fill(row, -1);
+            return row;
+        }
+
+        private static int[] append(int[] array, int value) {
+            if (array == null)
+                return new int[]{value};
+            int[] appended = Arrays.copyOf(array, array.length + 1);
+            appended[array.length] = value;
+            return appended;
+        }
+    }
+
+    /**
+     * 길이가 늘어날 수 있는 출력 버퍼. Masking 으로 값이 길어지지 않으면 처음 할당한 배열을 그대로 사용한다.
+     */
+    private static final class Output {
+
+        private byte[] buffer;
+
+        private int length;
+
+        private Output(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void write(byte b) {
+            ensureCapacity(1);
+            buffer[length++] = b;
+        }
+
+        void write(byte[] bytes, int offset, int count) {
+            ensureCapacity(count);
+            System.arraycopy(bytes, offset, buffer, length, count);
+            length += count;
+        }
+
+        private void ensureCapacity(int count) {
+            if (length + count > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+
+        byte[] toByteArray() {
+            return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        }
+    }
+}
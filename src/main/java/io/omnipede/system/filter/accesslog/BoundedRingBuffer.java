@@ -0,0 +1,125 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock 을 사용하지 않는 고정 크기 ring buffer.
+ * 여러 producer, 여러 consumer 가 동시에 접근할 수 있다 (Vyukov bounded MPMC queue).
+ */
+class BoundedRingBuffer<E> {
+
+    private final int mask;
+
+    private final AtomicReferenceArray<E> elements;
+
+    // 각 slot 의 sequence. producer/consumer 가 slot 을 차지할 수 있는지 판단할 때 사용
+    private final AtomicLongArray sequences;
+
+    // Consumer 가 다음에 읽을 위치
+    private final AtomicLong head = new AtomicLong();
+
+    // Producer 가 다음에 쓸 위치
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity 최대 원소 개수. 2 의 거듭제곱으로 올림 처리된다.
+     */
+    BoundedRingBuffer(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("Capacity must be greater than 1");
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * 원소 추가
+     * @param e 추가할 원소
+     * @return Buffer 가 가득 차 추가하지 못했을 경우 false
+     */
+    boolean offer(E e) {
+        long pos = tail.get();
+        for (;;) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(index, e);
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 가장 오래된 원소를 꺼냄
+     * @return 비어있을 경우 null
+     */
+    E poll() {
+        long pos = head.get();
+        for (;;) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.lazySet(index, pos + mask + 1);
+                    return e;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * 최대 maxElements 개의 원소를 꺼내 collection 에 담는 메소드
+     * @return 꺼낸 원소 개수
+     */
+    int drainTo(Collection<? super E> collection, int maxElements) {
+        int count = 0;
+        while (count < maxElements) {
+            E e = poll();
+            if (e == null)
+                break;
+            collection.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 현재 buffer 에 들어있는 원소 개수 (근사치)
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        if (size < 0)
+            return 0;
+        return (int) Math.min(size, capacity());
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
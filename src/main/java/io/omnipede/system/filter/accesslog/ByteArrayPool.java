@@ -0,0 +1,71 @@
+package io.omnipede.system.filter.accesslog;
+
+/**
+ * Body capture 등에 사용하는 byte 배열을 재사용하기 위한 pool.
+ * 1KB 부터 64KB 까지 2 의 거듭제곱 크기 별로 배열을 보관하며, 그 외 크기의 배열은 보관하지 않는다.
+ */
+final class ByteArrayPool {
+
+    static final int MIN_SIZE = 1024;
+    static final int MAX_SIZE = 64 * 1024;
+
+    // 크기 별로 보관할 최대 배열 개수
+    private static final int ARRAYS_PER_SIZE = 128;
+
+    // index 0 = 1KB, 1 = 2KB, ... , 6 = 64KB
+    private static final BoundedRingBuffer<byte[]>[] pools = createPools();
+
+    private ByteArrayPool() {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BoundedRingBuffer<byte[]>[] createPools() {
+        int count = Integer.numberOfTrailingZeros(MAX_SIZE) - Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+        BoundedRingBuffer<byte[]>[] pools = (BoundedRingBuffer<byte[]>[]) new BoundedRingBuffer<?>[count];
+        for (int i = 0; i < count; i++)
+            pools[i] = new BoundedRingBuffer<>(ARRAYS_PER_SIZE);
+        return pools;
+    }
+
+    /**
+     * 최소 minSize 크기의 배열을 가져오는 메소드.
+     * 64KB 이하일 경우 2 의 거듭제곱으로 올림한 크기의 배열을 반환한다.
+     */
+    static byte[] acquire(int minSize) {
+        int size = roundUp(minSize);
+        if (size > MAX_SIZE)
+            return new byte[minSize];
+
+        byte[] array = pools[indexOf(size)].poll();
+        return array != null ? array : new byte[size];
+    }
+
+    /**
+     * 다 사용한 배열을 pool 에 반환하는 메소드
+     */
+    static void release(byte[] array) {
+        if (array == null)
+            return;
+
+        int size = array.length;
+        if (size < MIN_SIZE || size > MAX_SIZE || Integer.bitCount(size) != 1)
+            return;
+
+        pools[indexOf(size)].offer(array);
+    }
+
+    /**
+     * Pool 에서 관리하는 크기로 올림하는 메소드
+     */
+    static int roundUp(int size) {
+        if (size <= MIN_SIZE)
+            return MIN_SIZE;
+        if (size > MAX_SIZE)
+            return size;
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static int indexOf(int size) {
+        return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+}
@@ -1,64 +1,148 @@
 package io.omnipede.system.filter.accesslog;
 
-import lombok.Getter;
-import org.apache.commons.io.IOUtils;
-
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Request body 를 캐싱하는 wrapper.
+ * 어플리케이션이 body 를 읽을 때 읽은 바이트를 그대로 전달하면서 최대 maxContentLength 바이트 까지만 복사해둔다.
+ */
 class CachingRequestWrapper extends HttpServletRequestWrapper {
 
-    @Getter
-    private byte[] contentsAsByteArray;
+    private final CaptureBuffer content;
+
+    private ServletInputStream inputStream;
+
+    private BufferedReader reader;
+
+    // Body capture 방식
+    private final CaptureMode captureMode;
 
-    public CachingRequestWrapper(HttpServletRequest request) throws IOException {
+    public CachingRequestWrapper(HttpServletRequest request, int maxContentLength) {
+        this(request, CaptureMode.CAPTURE, maxContentLength);
+    }
+
+    /**
+     * @param captureMode Body capture 방식
+     * @param captureLimit 캐싱할 최대 바이트 수. SKIP 일 경우 0 이며, 길이만 센다.
+     */
+    CachingRequestWrapper(HttpServletRequest request, CaptureMode captureMode, int captureLimit) {
         super(request);
-        InputStream is = super.getInputStream();
-        contentsAsByteArray = IOUtils.toByteArray(is);
+        this.captureMode = captureMode;
+        content = new CaptureBuffer(captureLimit);
+    }
+
+    CaptureMode getCaptureMode() {
+        return captureMode;
+    }
+
+    /**
+     * 캐싱된 request body.
+     * 어플리케이션이 body 를 끝까지 읽지 않았을 수 있으므로 finishCapture 를 먼저 호출해야 한다.
+     */
+    CaptureBuffer getContent() {
+        return content;
     }
 
     @Override
     public ServletInputStream getInputStream() throws IOException {
-        final ByteArrayInputStream bis = new ByteArrayInputStream(contentsAsByteArray);
-        return new ContentCachingWrapperInputStream(bis);
+        if (inputStream == null)
+            inputStream = new TeeServletInputStream(super.getInputStream(), content);
+        return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if (reader == null) {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.ISO_8859_1;
+            reader = new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+        return reader;
+    }
+
+    /**
+     * 어플리케이션이 읽지 않은 나머지 body 를 읽어 캐싱을 마무리하는 메소드.
+     * 잘림 여부를 판단할 수 있을 만큼만 읽고, 나머지 길이는 Content-Length 로 추정한다.
+     */
+    void finishCapture() throws IOException {
+        // 앞부분만 남기는 body 는 더 읽지 않고 길이만 Content-Length 로 추정한다.
+        if (captureMode == CaptureMode.SUMMARIZE || captureMode == CaptureMode.SKIP) {
+            content.adjustTotalLength(getContentLengthLong());
+            return;
+        }
+
+        ServletInputStream is = getInputStream();
+        byte[] skipBuffer = new byte[256];
+        while (!content.isTruncated()) {
+            int read = is.read(skipBuffer, 0, skipBuffer.length);
+            if (read < 0)
+                break;
+        }
+
+        content.adjustTotalLength(getContentLengthLong());
     }
 
-    private static class ContentCachingWrapperInputStream extends ServletInputStream {
+    /**
+     * 읽은 바이트를 어플리케이션에 전달하면서 capture buffer 에도 기록하는 input stream
+     */
+    private static class TeeServletInputStream extends ServletInputStream {
+
+        private final ServletInputStream original;
 
-        private InputStream is;
+        private final CaptureBuffer content;
 
-        public ContentCachingWrapperInputStream(InputStream bis) {
-            is = bis;
+        TeeServletInputStream(ServletInputStream original, CaptureBuffer content) {
+            this.original = original;
+            this.content = content;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = original.read();
+            if (b >= 0)
+                content.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = original.read(b, off, len);
+            if (read > 0)
+                content.write(b, off, read);
+            return read;
         }
 
         @Override
         public boolean isFinished() {
-            return true;
+            return original.isFinished();
         }
 
         @Override
         public boolean isReady() {
-            return true;
+            return original.isReady();
         }
 
         @Override
         public void setReadListener(ReadListener readListener) {
-
+            original.setReadListener(readListener);
         }
 
         @Override
-        public int read() throws IOException {
-            return is.read();
+        public int available() throws IOException {
+            return original.available();
         }
 
         @Override
-        public int read(byte[] b) throws IOException {
-            return is.read(b);
+        public void close() throws IOException {
+            original.close();
         }
     }
 }
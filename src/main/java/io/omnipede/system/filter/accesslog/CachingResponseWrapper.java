@@ -1,15 +1,19 @@
 package io.omnipede.system.filter.accesslog;
 
-import org.apache.commons.io.output.TeeOutputStream;
-
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Locale;
 
@@ -20,32 +24,117 @@ class CachingResponseWrapper implements HttpServletResponse {
 
     HttpServletResponse original;
     TeeServletOutputStream tee;
-    ByteArrayOutputStream bos;
+    PrintWriter writer;
+    CaptureBuffer content;
+
+    // Writer 로 작성된 body 의 charset
+    private Charset writerCharset;
+
+    // 최대 캐싱할 response body 길이
+    private final int maxContentLength;
 
-    private static final String DEFAULT_NO_RESPONSE_MESSAGE = "No response data";
+    // Content type 별 capture 규칙. null 이면 항상 CAPTURE
+    private final ContentCaptureRules captureRules;
 
-    public CachingResponseWrapper(HttpServletResponse response) {
+    // Output stream 을 열 때 정한 capture 방식
+    private CaptureMode captureMode = CaptureMode.CAPTURE;
+
+    public CachingResponseWrapper(HttpServletResponse response, int maxContentLength) {
+        this(response, maxContentLength, null);
+    }
+
+    CachingResponseWrapper(HttpServletResponse response, int maxContentLength, ContentCaptureRules captureRules) {
         original = response;
+        this.maxContentLength = maxContentLength;
+        this.captureRules = captureRules;
     }
 
-    public byte[] getContentAsByteArray() {
-        if (bos != null)
-            return bos.toByteArray();
-        return DEFAULT_NO_RESPONSE_MESSAGE.getBytes();
+    /**
+     * Output stream 을 열 때 정한 capture 방식
+     */
+    CaptureMode getCaptureMode() {
+        return captureMode;
+    }
+
+    /**
+     * 캐싱된 response body. Output stream, writer 를 모두 사용하지 않았을 경우 null
+     */
+    public CaptureBuffer getContent() {
+        return content;
+    }
+
+    /**
+     * Capture buffer 를 pool 에 반환하는 메소드
+     */
+    public void releaseContent() {
+        if (content != null)
+            content.release();
+    }
+
+    /**
+     * Writer 로 작성된 body 를 인코딩 한 charset. Writer 를 사용하지 않았으면 null
+     */
+    Charset getWriterCharset() {
+        return writerCharset;
+    }
+
+    private Charset resolveCharset() {
+        String encoding = original.getCharacterEncoding();
+        try {
+            return encoding != null ? Charset.forName(encoding) : StandardCharsets.ISO_8859_1;
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.ISO_8859_1;
+        }
     }
 
     public PrintWriter getWriter() throws IOException {
-        return original.getWriter();
+        if (writer == null) {
+            // 원본 writer 를 먼저 가져와서 container 가 정한 charset 을 사용한다.
+            PrintWriter originalWriter = original.getWriter();
+            openContent();
+            writerCharset = resolveCharset();
+            // PrintWriter 는 자체 buffer 가 없으므로 container writer 의 buffer 만 사용된다.
+            writer = new PrintWriter(new TeeWriter(originalWriter, content, writerCharset), false);
+        }
+        return writer;
     }
 
     public ServletOutputStream getOutputStream() throws IOException {
         if (tee == null) {
-            bos = new ByteArrayOutputStream();
-            tee = new TeeServletOutputStream(original.getOutputStream(), bos);
+            ServletOutputStream originalStream = original.getOutputStream();
+            openContent();
+            tee = new TeeServletOutputStream(originalStream, content);
         }
         return tee;
     }
 
+    /**
+     * Capture buffer 를 만드는 메소드.
+     * 어플리케이션은 보통 body 를 쓰기 전에 Content-Type 을 설정하므로 이 시점에 capture 방식을 정한다.
+     */
+    private void openContent() {
+        if (content != null)
+            return;
+
+        int captureLimit = maxContentLength;
+        if (captureRules != null) {
+            captureMode = captureRules.decide(original.getContentType(), original.getHeader("Content-Encoding"),
+                    parseContentLength(original.getHeader("Content-Length")), maxContentLength);
+            captureLimit = captureRules.captureLimit(captureMode, maxContentLength);
+        }
+        content = new CaptureBuffer(captureLimit);
+    }
+
+    private static long parseContentLength(String contentLength) {
+        if (contentLength == null)
+            return -1;
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     @Override
     public String getCharacterEncoding() {
         return original.getCharacterEncoding();
@@ -88,7 +177,11 @@ class CachingResponseWrapper implements HttpServletResponse {
 
     @Override
     public void flushBuffer() throws IOException {
-        tee.flush();
+        if (writer != null)
+            writer.flush();
+        if (tee != null)
+            tee.flush();
+        original.flushBuffer();
     }
 
     @Override
@@ -225,39 +318,143 @@ class CachingResponseWrapper implements HttpServletResponse {
     }
 
     /***
-     * 응답 결과 처리
+     * 응답 결과 처리.
+     * 원본 output stream 과 capture buffer 에 동시에 기록한다.
      */
     public static class TeeServletOutputStream extends ServletOutputStream {
 
-        private final TeeOutputStream targetStream;
+        private final ServletOutputStream original;
+
+        private final CaptureBuffer content;
+
+        public TeeServletOutputStream(ServletOutputStream original, CaptureBuffer content) {
+            this.original = original;
+            this.content = content;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            original.write(b);
+            content.write(b);
+        }
 
-        public TeeServletOutputStream(OutputStream one, OutputStream two) {
-            targetStream = new TeeOutputStream(one, two);
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            original.write(b, off, len);
+            content.write(b, off, len);
         }
 
         @Override
-        public void write(int arg0) throws IOException {
-            this.targetStream.write(arg0);
+        public void write(byte[] b) throws IOException {
+            write(b, 0, b.length);
         }
 
         public void flush() throws IOException {
-            super.flush();
-            this.targetStream.flush();
+            original.flush();
         }
 
         public void close() throws IOException {
-            super.close();
-            this.targetStream.close();
+            original.close();
         }
 
         @Override
         public boolean isReady() {
-            return false;
+            return original.isReady();
         }
 
         @Override
         public void setWriteListener(WriteListener writeListener) {
+            // Non-blocking I/O 는 원본 stream 이 처리한다. write 는 이 stream 을 통하므로 캐싱도 유지된다.
+            original.setWriteListener(writeListener);
+        }
+    }
+
+    /**
+     * 쓴 문자를 원본 writer 에 전달하면서 response charset 으로 인코딩하여 capture buffer 에도 기록하는 writer.
+     * Capture buffer 가 가득 찬 뒤에도 전체 길이를 바이트 단위로 세기 위해 인코딩은 계속한다.
+     */
+    static class TeeWriter extends Writer {
+
+        private final Writer original;
+
+        private final CaptureBuffer content;
+
+        private final CharsetEncoder encoder;
+
+        // 인코딩 결과를 capture buffer 로 옮기기 위한 buffer
+        private final ByteBuffer encoded = ByteBuffer.allocate(256);
+
+        // write(int) 에서 재사용하는 한 글자 buffer
+        private final char[] single = new char[1];
+
+        private final CharBuffer singleBuffer = CharBuffer.wrap(single);
+
+        // 이전 write 의 끝에서 짝을 찾지 못한 high surrogate. 없으면 0
+        private char pendingHighSurrogate;
+
+        TeeWriter(Writer original, CaptureBuffer content, Charset charset) {
+            this.original = original;
+            this.content = content;
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            original.write(c);
+            single[0] = (char) c;
+            singleBuffer.clear();
+            capture(singleBuffer);
+        }
 
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            original.write(cbuf, off, len);
+            capture(CharBuffer.wrap(cbuf, off, len));
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            original.write(str, off, len);
+            capture(CharBuffer.wrap(str, off, off + len));
+        }
+
+        private void capture(CharBuffer chars) {
+            if (pendingHighSurrogate != 0 && chars.hasRemaining()) {
+                char[] pair = {pendingHighSurrogate, chars.get()};
+                pendingHighSurrogate = 0;
+                encode(CharBuffer.wrap(pair));
+            }
+            encode(chars);
+
+            // Surrogate pair 가 write 호출 사이에 나뉜 경우 다음 write 에서 이어서 인코딩한다.
+            if (chars.remaining() == 1 && Character.isHighSurrogate(chars.get(chars.position())))
+                pendingHighSurrogate = chars.get();
+        }
+
+        private void encode(CharBuffer chars) {
+            while (true) {
+                CoderResult result = encoder.encode(chars, encoded, false);
+                // 가득 찬 buffer 는 복사하지 않고 바이트 수만 센다.
+                if (content.isFull())
+                    content.skip(encoded.position());
+                else
+                    content.write(encoded.array(), 0, encoded.position());
+                encoded.clear();
+                if (!result.isOverflow())
+                    return;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            original.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            original.close();
         }
     }
 }
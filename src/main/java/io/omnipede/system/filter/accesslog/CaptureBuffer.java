@@ -0,0 +1,127 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Request, response body 를 최대 limit 바이트 까지만 저장하는 buffer.
+ * limit 을 넘는 바이트는 저장하지 않고 전체 길이만 센다.
+ * 내부 배열은 ByteArrayPool 에서 가져오며, 사용이 끝나면 release 를 호출해야 한다.
+ */
+class CaptureBuffer extends OutputStream {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    // 저장할 최대 바이트 수
+    private final int limit;
+
+    private byte[] buf = EMPTY;
+
+    // 저장된 바이트 수
+    private int count;
+
+    // 저장 여부와 관계 없이 기록된 전체 바이트 수
+    private long totalLength;
+
+    CaptureBuffer(int limit) {
+        this.limit = Math.max(limit, 0);
+    }
+
+    @Override
+    public void write(int b) {
+        totalLength++;
+        if (count >= limit)
+            return;
+
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        totalLength += len;
+        int storable = Math.min(len, limit - count);
+        if (storable <= 0)
+            return;
+
+        ensureCapacity(count + storable);
+        System.arraycopy(b, off, buf, count, storable);
+        count += storable;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= buf.length)
+            return;
+
+        int newSize = Math.min(Math.max(required, buf.length << 1), limit);
+        byte[] newBuf = ByteArrayPool.acquire(newSize);
+        System.arraycopy(buf, 0, newBuf, 0, count);
+        ByteArrayPool.release(buf);
+        buf = newBuf;
+    }
+
+    /**
+     * 저장된 바이트를 복사 없이 접근하기 위한 내부 배열.
+     * 유효한 데이터는 0 부터 size() 까지이다.
+     */
+    byte[] array() {
+        return buf;
+    }
+
+    /**
+     * @return 저장된 바이트 수
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return 저장 여부와 관계 없이 기록된 전체 바이트 수
+     */
+    long totalLength() {
+        return totalLength;
+    }
+
+    /**
+     * @return limit 을 넘어 일부만 저장되었는지 여부
+     */
+    boolean isTruncated() {
+        return totalLength > limit;
+    }
+
+    /**
+     * @return 더 저장할 수 없는지 여부
+     */
+    boolean isFull() {
+        return count >= limit;
+    }
+
+    /**
+     * 저장하지 않고 전체 길이만 늘리는 메소드
+     */
+    void skip(long length) {
+        totalLength += length;
+    }
+
+    /**
+     * Stream 으로부터 읽은 바이트 수를 직접 보정하는 메소드.
+     * 끝까지 읽지 않은 body 의 길이를 Content-Length 로 추정할 때 사용한다.
+     */
+    void adjustTotalLength(long totalLength) {
+        if (totalLength > this.totalLength)
+            this.totalLength = totalLength;
+    }
+
+    String toString(Charset charset) {
+        return new String(buf, 0, count, charset);
+    }
+
+    /**
+     * 내부 배열을 pool 에 반환하는 메소드. 호출 이후에는 buffer 를 사용하면 안 된다.
+     */
+    void release() {
+        ByteArrayPool.release(buf);
+        buf = EMPTY;
+        count = 0;
+    }
+}
@@ -0,0 +1,19 @@
+package io.omnipede.system.filter.accesslog;
+
+/**
+ * Request, response body 를 로그에 남기는 방식
+ */
+public enum CaptureMode {
+
+    // 최대 길이 까지 캐싱하고, 넘으면 TOO LONG CONTENTS 를 남긴다.
+    CAPTURE,
+
+    // 최대 길이 까지 캐싱하고, 넘으면 앞부분만 남긴다.
+    TRUNCATE,
+
+    // 앞부분 일부만 캐싱하여 content type, 길이와 함께 hex 로 남긴다.
+    SUMMARIZE,
+
+    // 캐싱하지 않고 content type, 길이만 남긴다.
+    SKIP
+}
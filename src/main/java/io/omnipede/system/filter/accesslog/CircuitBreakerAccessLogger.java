@@ -0,0 +1,111 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 연속으로 실패하는 AccessLogger 를 잠시 건너뛰는 decorator.
+ * failureThreshold 번 연속으로 예외가 발생하면 circuit 을 열고 openMillis 동안 로그를 버린다.
+ * 이후 한 batch 를 시도하여 성공하면 circuit 을 닫고, 실패하면 다시 연다.
+ * 하나의 sink thread 에서만 호출되는 것을 전제로 한다.
+ */
+final class CircuitBreakerAccessLogger implements AccessLogger {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreakerAccessLogger.class);
+
+    private final String name;
+
+    private final AccessLogger delegate;
+
+    private final int failureThreshold;
+
+    private final long openNanos;
+
+    private int consecutiveFailures;
+
+    // Circuit 이 열린 시점. 닫혀 있으면 0
+    private volatile long openedAt;
+
+    private final LongAdder failedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    CircuitBreakerAccessLogger(String name, AccessLogger delegate, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.delegate = delegate;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    @Override
+    public void log(AccessLog accessLog) {
+        if (rejectIfOpen(1))
+            return;
+
+        try {
+            delegate.log(accessLog);
+            onSuccess();
+        } catch (RuntimeException e) {
+            onFailure(1, e);
+        }
+    }
+
+    @Override
+    public void logBatch(List<AccessLog> accessLogs) {
+        if (rejectIfOpen(accessLogs.size()))
+            return;
+
+        try {
+            delegate.logBatch(accessLogs);
+            onSuccess();
+        } catch (RuntimeException e) {
+            onFailure(accessLogs.size(), e);
+        }
+    }
+
+    private boolean rejectIfOpen(int count) {
+        long opened = openedAt;
+        if (opened == 0 || System.nanoTime() - opened >= openNanos)
+            return false;
+
+        rejectedCount.add(count);
+        return true;
+    }
+
+    private void onSuccess() {
+        consecutiveFailures = 0;
+        if (openedAt != 0) {
+            openedAt = 0;
+            logger.info("Access log sink {} recovered, circuit closed", name);
+        }
+    }
+
+    private void onFailure(int count, RuntimeException e) {
+        failedCount.add(count);
+        if (openedAt != 0 || ++consecutiveFailures >= failureThreshold) {
+            // Half-open 상태에서 실패하면 다시 연다.
+            if (openedAt == 0)
+                logger.error("Access log sink {} failed {} times in a row, circuit opened", name, consecutiveFailures, e);
+            // 0 은 닫힌 상태를 뜻하므로 최하위 bit 를 세운다.
+            openedAt = System.nanoTime() | 1;
+            return;
+        }
+        logger.error("Access log sink {} failed", name, e);
+    }
+
+    boolean isOpen() {
+        return openedAt != 0;
+    }
+
+    long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
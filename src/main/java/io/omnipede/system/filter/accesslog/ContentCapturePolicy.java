@@ -0,0 +1,34 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Content type 별 body capture 설정 클래스.
+ * Body 를 캐싱하기 전에 Content-Type, Content-Encoding, Content-Length 로 capture 방식을 정하므로
+ * 이미지, 파일, multipart 같은 binary body 는 캐싱 메모리를 사용하지 않는다.
+ * 설정하면 access log 에 requestBodySize, responseBodySize 가 남는다.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ContentCapturePolicy {
+
+    // Content type prefix 별 capture 방식 (대소문자 구분 없음). 가장 길게 일치하는 prefix 를 적용한다.
+    // 설정한 규칙은 기본 규칙 (text/*, JSON, XML, form 은 CAPTURE, multipart, 이미지, 동영상, 압축 파일은 SKIP) 에 덮어쓴다.
+    private Map<String, CaptureMode> contentTypeRules;
+
+    // 일치하는 규칙이 없는 content type 의 capture 방식. 설정하지 않으면 SUMMARIZE
+    private CaptureMode defaultMode;
+
+    // Content-Encoding 이 identity 가 아닌 (압축된) body 의 capture 방식. 설정하지 않으면 SKIP
+    private CaptureMode encodedMode;
+
+    // SUMMARIZE 시 hex 로 남길 앞부분 바이트 수. 설정하지 않으면 32
+    private Integer summaryLength;
+}
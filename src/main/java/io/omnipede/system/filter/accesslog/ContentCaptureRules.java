@@ -0,0 +1,106 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ContentCapturePolicy 를 컴파일 한 객체.
+ * Content type prefix 를 trie 로 만들어 요청마다 규칙 목록을 순회하지 않는다.
+ */
+final class ContentCaptureRules {
+
+    private static final int DEFAULT_SUMMARY_LENGTH = 32;
+
+    private final PrefixTrie<CaptureMode> contentTypeRules = new PrefixTrie<>();
+
+    private final CaptureMode defaultMode;
+
+    private final CaptureMode encodedMode;
+
+    private final int summaryLength;
+
+    ContentCaptureRules(ContentCapturePolicy policy) {
+        Map<String, CaptureMode> rules = defaultRules();
+        if (policy.getContentTypeRules() != null) {
+            for (Map.Entry<String, CaptureMode> rule : policy.getContentTypeRules().entrySet())
+                rules.put(rule.getKey().toLowerCase(Locale.ROOT), rule.getValue());
+        }
+        for (Map.Entry<String, CaptureMode> rule : rules.entrySet())
+            contentTypeRules.put(rule.getKey(), rule.getValue());
+
+        this.defaultMode = policy.getDefaultMode() != null ? policy.getDefaultMode() : CaptureMode.SUMMARIZE;
+        this.encodedMode = policy.getEncodedMode() != null ? policy.getEncodedMode() : CaptureMode.SKIP;
+        this.summaryLength = policy.getSummaryLength() != null ? policy.getSummaryLength() : DEFAULT_SUMMARY_LENGTH;
+    }
+
+    private static Map<String, CaptureMode> defaultRules() {
+        Map<String, CaptureMode> rules = new LinkedHashMap<>();
+        rules.put("text/", CaptureMode.CAPTURE);
+        rules.put("application/json", CaptureMode.CAPTURE);
+        rules.put("application/xml", CaptureMode.CAPTURE);
+        rules.put("application/x-www-form-urlencoded", CaptureMode.CAPTURE);
+        rules.put("application/javascript", CaptureMode.CAPTURE);
+        rules.put("application/graphql", CaptureMode.CAPTURE);
+        rules.put("multipart/", CaptureMode.SKIP);
+        rules.put("image/", CaptureMode.SKIP);
+        rules.put("audio/", CaptureMode.SKIP);
+        rules.put("video/", CaptureMode.SKIP);
+        rules.put("font/", CaptureMode.SKIP);
+        rules.put("application/zip", CaptureMode.SKIP);
+        rules.put("application/gzip", CaptureMode.SKIP);
+        rules.put("application/pdf", CaptureMode.SKIP);
+        return rules;
+    }
+
+    /**
+     * Body 를 캐싱하기 전에 capture 방식을 정하는 메소드
+     * @param contentType Content-Type. 없으면 null
+     * @param contentEncoding Content-Encoding. 없으면 null
+     * @param contentLength Content-Length. 모르면 -1
+     * @param maxContentLength 최대 캐싱할 body 길이
+     */
+    CaptureMode decide(String contentType, String contentEncoding, long contentLength, int maxContentLength) {
+        if (contentEncoding != null && !contentEncoding.isEmpty() && !"identity".equalsIgnoreCase(contentEncoding))
+            return encodedMode;
+
+        CaptureMode mode = resolveContentType(contentType);
+        // 길이를 미리 알 수 있으면 TOO LONG CONTENTS 대신 앞부분을 남긴다.
+        if (mode == CaptureMode.CAPTURE && contentLength > maxContentLength)
+            return CaptureMode.TRUNCATE;
+        return mode;
+    }
+
+    private CaptureMode resolveContentType(String contentType) {
+        // Content type 이 없는 body 는 텍스트로 간주
+        if (contentType == null || contentType.isEmpty())
+            return CaptureMode.CAPTURE;
+
+        String mediaType = contentType.toLowerCase(Locale.ROOT);
+        CaptureMode mode = contentTypeRules.findLongestPrefix(mediaType);
+        if (mode != null)
+            return mode;
+
+        // application/problem+json, application/atom+xml 같은 structured syntax suffix
+        int end = mediaType.indexOf(';');
+        if (end < 0)
+            end = mediaType.length();
+        if (mediaType.startsWith("+json", end - 5) || mediaType.startsWith("+xml", end - 4))
+            return CaptureMode.CAPTURE;
+        return defaultMode;
+    }
+
+    /**
+     * @return Capture 방식에 따라 캐싱할 최대 바이트 수
+     */
+    int captureLimit(CaptureMode mode, int maxContentLength) {
+        switch (mode) {
+            case SUMMARIZE:
+                return Math.min(summaryLength, maxContentLength);
+            case SKIP:
+                return 0;
+            default:
+                return maxContentLength;
+        }
+    }
+}
@@ -1,26 +1,41 @@
 package io.omnipede.system.filter.accesslog;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+
 /**
  * AccessLogFilter 생성 시 직접 AccessLogger 인터페이스에 대한 구현체를 작성하여 filter 생성자에
  * 넣어주지 않을 경우 자동 설정 되는 구현체.
+ * 로그는 한 줄짜리 JSON 으로 남긴다.
  */
 class DefaultAccessLogger implements AccessLogger {
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultAccessLogger.class);
 
-    private ObjectMapper objectMapper = new ObjectMapper();
+    private final AccessLogEncoder encoder = new AccessLogEncoder();
+
+    // 직렬화 시간을 기록할 필터 통계. 없으면 null
+    private final AccessLogFilterStats stats;
+
+    DefaultAccessLogger(AccessLogFilterStats stats) {
+        this.stats = stats;
+    }
 
     @Override
     public void log(AccessLog accessLog) {
+        // 로그 레벨이 꺼져 있으면 직렬화 하지 않음
+        if (!logger.isInfoEnabled())
+            return;
+
         try {
-            String message = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(accessLog);
+            long start = stats != null ? System.nanoTime() : 0;
+            String message = encoder.encodeToString(accessLog);
+            if (stats != null)
+                stats.record(AccessLogFilterStats.Phase.SERIALIZE, System.nanoTime() - start);
             logger.info(message);
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             logger.error("Json processing exception", e);
         }
     }
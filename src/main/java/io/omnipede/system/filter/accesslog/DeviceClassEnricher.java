@@ -0,0 +1,35 @@
+package io.omnipede.system.filter.accesslog;
+
+/**
+ * User-Agent 를 분석하여 요청 헤더에 "DeviceClass" 를 추가하는 enricher.
+ * User agent analyzer 초기화가 끝나지 않았으면 추가하지 않는다.
+ */
+public class DeviceClassEnricher implements AccessLogEnricher {
+
+    private final UserAgentService userAgentService;
+
+    public DeviceClassEnricher() {
+        this(UserAgentService.DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param userAgentCacheSize User agent 분석 결과 cache 크기. 0 이하이면 기본값
+     */
+    public DeviceClassEnricher(int userAgentCacheSize) {
+        this.userAgentService = UserAgentService.getInstance(userAgentCacheSize);
+    }
+
+    @Override
+    public void enrich(AccessLog accessLog) {
+        String deviceClass = userAgentService.getDeviceClass(accessLog.getUserAgent());
+        if (deviceClass != null)
+            accessLog.addRequestHeader("DeviceClass", deviceClass);
+    }
+
+    /**
+     * @return User agent 분석 객체. Cache hit, miss 통계를 조회할 때 사용한다.
+     */
+    public UserAgentService getUserAgentService() {
+        return userAgentService;
+    }
+}
@@ -0,0 +1,69 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Enricher 들을 실행한 뒤 delegate 로 로그를 넘기는 AccessLogger.
+ * AsyncAccessLogger 의 delegate 로 사용하면 enrichment 가 consumer thread 에서 실행된다.
+ */
+public class EnrichingAccessLogger implements AccessLogger {
+
+    private static final Logger logger = LoggerFactory.getLogger(EnrichingAccessLogger.class);
+
+    private final AccessLogEnricher[] enrichers;
+
+    private final AccessLogger delegate;
+
+    // Enrichment 시간을 기록할 필터 통계. 없으면 null
+    private final AccessLogFilterStats stats;
+
+    public EnrichingAccessLogger(List<AccessLogEnricher> enrichers, AccessLogger delegate) {
+        this(enrichers, delegate, null);
+    }
+
+    EnrichingAccessLogger(List<AccessLogEnricher> enrichers, AccessLogger delegate, AccessLogFilterStats stats) {
+        this.enrichers = enrichers.toArray(new AccessLogEnricher[0]);
+        this.delegate = delegate;
+        this.stats = stats;
+    }
+
+    /**
+     * 기본 enricher 목록. Proxy 헤더에서 IP 주소를 찾고, User-Agent 로부터 device class 를 분석한다.
+     * @param userAgentCacheSize User agent 분석 결과 cache 크기. 0 이하이면 기본값
+     */
+    public static List<AccessLogEnricher> defaultEnrichers(int userAgentCacheSize) {
+        return new ArrayList<>(Arrays.asList(new IpAddressEnricher(), new DeviceClassEnricher(userAgentCacheSize)));
+    }
+
+    @Override
+    public void log(AccessLog accessLog) {
+        enrich(accessLog);
+        delegate.log(accessLog);
+    }
+
+    @Override
+    public void logBatch(List<AccessLog> accessLogs) {
+        for (int i = 0; i < accessLogs.size(); i++)
+            enrich(accessLogs.get(i));
+        delegate.logBatch(accessLogs);
+    }
+
+    private void enrich(AccessLog accessLog) {
+        long start = stats != null ? System.nanoTime() : 0;
+        for (AccessLogEnricher enricher : enrichers) {
+            try {
+                enricher.enrich(accessLog);
+            } catch (RuntimeException e) {
+                // Enricher 하나가 실패해도 로그는 남긴다.
+                logger.warn("Access log enricher {} failed", enricher.getClass().getSimpleName(), e);
+            }
+        }
+        if (stats != null)
+            stats.record(AccessLogFilterStats.Phase.ENRICH, System.nanoTime() - start);
+    }
+}
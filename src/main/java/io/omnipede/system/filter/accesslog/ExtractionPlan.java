@@ -0,0 +1,161 @@
+package io.omnipede.system.filter.accesslog;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * FieldSelection 을 컴파일 한 객체.
+ * 요청마다 설정을 해석하지 않도록 필터 생성 시 한번만 만들어 배열과 flag 로 가지고 있는다.
+ */
+final class ExtractionPlan {
+
+    private final HeaderSelector requestHeaders;
+
+    private final HeaderSelector responseHeaders;
+
+    private final boolean captureQuery;
+
+    private final boolean captureRequestBody;
+
+    private final boolean captureResponseBody;
+
+    private final String[] extractorNames;
+
+    private final AccessLogFieldExtractor[] extractors;
+
+    ExtractionPlan(FieldSelection selection) {
+        if (selection == null)
+            selection = new FieldSelection();
+
+        this.requestHeaders = new HeaderSelector(selection.getIncludeRequestHeaders(), selection.getExcludeRequestHeaders());
+        this.responseHeaders = new HeaderSelector(selection.getIncludeResponseHeaders(), selection.getExcludeResponseHeaders());
+        this.captureQuery = !Boolean.FALSE.equals(selection.getCaptureQuery());
+        this.captureRequestBody = !Boolean.FALSE.equals(selection.getCaptureRequestBody());
+        this.captureResponseBody = !Boolean.FALSE.equals(selection.getCaptureResponseBody());
+
+        Map<String, AccessLogFieldExtractor> extractorMap = selection.getExtractors();
+        int count = extractorMap != null ? extractorMap.size() : 0;
+        this.extractorNames = new String[count];
+        this.extractors = new AccessLogFieldExtractor[count];
+        if (extractorMap != null) {
+            int i = 0;
+            for (Map.Entry<String, AccessLogFieldExtractor> entry : extractorMap.entrySet()) {
+                extractorNames[i] = entry.getKey();
+                extractors[i] = entry.getValue();
+                i++;
+            }
+        }
+    }
+
+    boolean isCaptureQuery() {
+        return captureQuery;
+    }
+
+    boolean isCaptureRequestBody() {
+        return captureRequestBody;
+    }
+
+    boolean isCaptureResponseBody() {
+        return captureResponseBody;
+    }
+
+    /**
+     * 선택된 요청 헤더를 access log 에 추가하는 메소드
+     */
+    void extractRequestHeaders(HttpServletRequest request, AccessLog accessLog) {
+        String[] include = requestHeaders.include;
+        if (include != null) {
+            for (String name : include) {
+                String value = request.getHeader(name);
+                if (value != null)
+                    accessLog.addRequestHeader(name, value);
+            }
+            return;
+        }
+
+        Enumeration<String> headerNames = request.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+            String name = headerNames.nextElement();
+            if (!requestHeaders.isExcluded(name))
+                accessLog.addRequestHeader(name, request.getHeader(name));
+        }
+    }
+
+    /**
+     * 선택된 응답 헤더를 access log 에 추가하는 메소드
+     */
+    void extractResponseHeaders(HttpServletResponse response, AccessLog accessLog) {
+        String[] include = responseHeaders.include;
+        if (include != null) {
+            for (String name : include) {
+                String value = response.getHeader(name);
+                if (value != null)
+                    accessLog.addResponseHeader(name, value);
+            }
+            return;
+        }
+
+        Collection<String> headerNames = response.getHeaderNames();
+        for (String name : headerNames) {
+            if (!responseHeaders.isExcluded(name))
+                accessLog.addResponseHeader(name, response.getHeader(name));
+        }
+    }
+
+    /**
+     * 사용자 정의 필드를 추출하는 메소드
+     */
+    void extractCustomFields(HttpServletRequest request, HttpServletResponse response, AccessLog accessLog) {
+        for (int i = 0; i < extractors.length; i++) {
+            String value = extractors[i].extract(request, response);
+            if (value != null)
+                accessLog.addExtraField(extractorNames[i], value);
+        }
+    }
+
+    /**
+     * 헤더 include, exclude 규칙
+     */
+    private static final class HeaderSelector {
+
+        // 읽을 헤더 이름. null 이면 모든 헤더
+        private final String[] include;
+
+        // 제외할 헤더 이름. null 이면 제외하지 않음
+        private final Set<String> exclude;
+
+        private HeaderSelector(List<String> include, List<String> exclude) {
+            Set<String> excludeSet = null;
+            if (exclude != null && !exclude.isEmpty()) {
+                excludeSet = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                excludeSet.addAll(exclude);
+            }
+
+            if (include == null) {
+                this.include = null;
+                this.exclude = excludeSet;
+                return;
+            }
+
+            // Include 목록에서 exclude 를 미리 빼둔다.
+            List<String> selected = new ArrayList<>(include.size());
+            for (String name : include) {
+                if (excludeSet == null || !excludeSet.contains(name))
+                    selected.add(name);
+            }
+            this.include = selected.toArray(new String[0]);
+            this.exclude = null;
+        }
+
+        private boolean isExcluded(String name) {
+            return exclude != null && exclude.contains(name);
+        }
+    }
+}
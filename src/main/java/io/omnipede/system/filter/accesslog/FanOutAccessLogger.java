@@ -0,0 +1,106 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 같은 로그를 여러 sink 로 보내는 AccessLogger.
+ * Sink 마다 AsyncAccessLogger 로 별도의 bounded queue 와 thread 를 두므로,
+ * 느리거나 실패하는 sink 가 요청 thread 나 다른 sink 를 느리게 만들지 않는다.
+ * 연속으로 실패하는 sink 는 circuit breaker 로 잠시 건너뛴다.
+ *
+ * 직렬화가 필요한 sink 는 AccessLogFormat.encode 를 사용하면 같은 형식은 레코드 당 한번만 직렬화 된다.
+ * 레코드는 여러 sink thread 가 동시에 읽는다. Getter 의 지연 변환은 thread-safe 하지만, sink 는 setter 나 반환된 Map 으로 레코드를 수정하지 않아야 한다.
+ *
+ * 사용이 끝나면 close 를 호출해야 각 sink 의 queue 에 남은 로그가 처리된다.
+ */
+public class FanOutAccessLogger implements AccessLogger, Closeable {
+
+    private final String[] names;
+
+    private final AsyncAccessLogger[] queues;
+
+    private final CircuitBreakerAccessLogger[] breakers;
+
+    public FanOutAccessLogger(List<AccessLogSink> sinks) {
+        if (sinks == null || sinks.isEmpty())
+            throw new IllegalArgumentException("At least one access log sink is required");
+
+        this.names = new String[sinks.size()];
+        this.queues = new AsyncAccessLogger[sinks.size()];
+        this.breakers = new CircuitBreakerAccessLogger[sinks.size()];
+        for (int i = 0; i < sinks.size(); i++) {
+            AccessLogSink sink = sinks.get(i);
+            if (sink.getAccessLogger() == null)
+                throw new IllegalArgumentException("Access logger of sink " + sink.getName() + " is required");
+
+            names[i] = sink.getName() != null ? sink.getName() : "sink-" + i;
+            breakers[i] = new CircuitBreakerAccessLogger(names[i], sink.getAccessLogger(),
+                    sink.resolveFailureThreshold(), sink.resolveOpenMillis());
+            queues[i] = AsyncAccessLogger.builder()
+                    .delegate(breakers[i])
+                    .capacity(sink.getQueueCapacity() != null ? sink.getQueueCapacity() : 0)
+                    .overflowPolicy(sink.getOverflowPolicy())
+                    .build();
+        }
+    }
+
+    @Override
+    public void log(AccessLog accessLog) {
+        // 각 queue 가 레코드 참조를 따로 유지하므로, 모든 sink 가 처리한 뒤에 레코드가 재사용된다.
+        for (AsyncAccessLogger queue : queues)
+            queue.log(accessLog);
+    }
+
+    /**
+     * @return Sink 별 queue, drop, 실패 통계
+     */
+    public List<SinkStats> getSinkStats() {
+        List<SinkStats> stats = new ArrayList<>(queues.length);
+        for (int i = 0; i < queues.length; i++) {
+            stats.add(new SinkStats(names[i], queues[i].getQueueDepth(), queues[i].getDroppedCount(),
+                    breakers[i].getFailedCount(), breakers[i].getRejectedCount(), breakers[i].isOpen()));
+        }
+        return stats;
+    }
+
+    /**
+     * 모든 sink 의 queue 에 남은 로그를 처리한 뒤 sink thread 를 종료한다.
+     * Sink 의 AccessLogger 는 닫지 않는다.
+     */
+    @Override
+    public void close() {
+        for (AsyncAccessLogger queue : queues)
+            queue.close();
+    }
+
+    /**
+     * Sink 하나의 통계
+     */
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class SinkStats {
+
+        private final String name;
+
+        // Queue 에 쌓여 있는 로그 수
+        private final int queueDepth;
+
+        // Queue 가 가득 차서 버린 로그 수
+        private final long droppedCount;
+
+        // Sink 에서 예외가 발생하여 남기지 못한 로그 수
+        private final long failedCount;
+
+        // Circuit 이 열려 있어 버린 로그 수
+        private final long rejectedCount;
+
+        private final boolean circuitOpen;
+    }
+}
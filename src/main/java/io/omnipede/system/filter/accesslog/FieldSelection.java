@@ -0,0 +1,47 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Access log 에 남길 필드 설정 클래스.
+ * 필터 생성 시 한번 컴파일되며, 선택되지 않은 필드는 servlet request, response 에서 읽지 않는다.
+ * 헤더 이름은 대소문자를 구분하지 않는다.
+ *
+ * IpAddressEnricher 는 로그에 남은 요청 헤더에서 proxy 헤더를 찾으므로, X-Forwarded-For 등을 제외하면 remote address 가 남는다.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FieldSelection {
+
+    // 로그에 남길 요청 헤더. 설정하면 이 헤더만 읽는다. 설정하지 않으면 모든 헤더
+    private List<String> includeRequestHeaders;
+
+    // 로그에서 제외할 요청 헤더
+    private List<String> excludeRequestHeaders;
+
+    // 로그에 남길 응답 헤더. 설정하지 않으면 모든 헤더
+    private List<String> includeResponseHeaders;
+
+    // 로그에서 제외할 응답 헤더
+    private List<String> excludeResponseHeaders;
+
+    // URL query 를 남길지 여부. 설정하지 않으면 true
+    private Boolean captureQuery;
+
+    // Request body 를 남길지 여부. enableContentLogging 설정 시에만 적용되며, 설정하지 않으면 true
+    private Boolean captureRequestBody;
+
+    // Response body 를 남길지 여부. enableContentLogging 설정 시에만 적용되며, 설정하지 않으면 true
+    private Boolean captureResponseBody;
+
+    // 사용자 정의 필드 이름과 추출 함수. 추출한 값은 AccessLog 의 extraFields 에 남는다.
+    private Map<String, AccessLogFieldExtractor> extractors;
+}
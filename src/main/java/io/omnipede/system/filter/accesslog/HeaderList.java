@@ -0,0 +1,81 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 헤더 이름, 값을 순서대로 담는 flat 배열.
+ * 요청 처리 중에는 Map 을 만들지 않고 이 객체에 한번만 담아두며, 필요할 때 Map 으로 변환한다.
+ * clear 후 재사용할 수 있다.
+ */
+class HeaderList {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // [name0, value0, name1, value1, ...]
+    private String[] entries;
+
+    private int size;
+
+    HeaderList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    HeaderList(int capacity) {
+        entries = new String[Math.max(capacity, 1) * 2];
+    }
+
+    void add(String name, String value) {
+        if ((size + 1) * 2 > entries.length)
+            entries = Arrays.copyOf(entries, entries.length * 2);
+
+        entries[size * 2] = name;
+        entries[size * 2 + 1] = value;
+        size++;
+    }
+
+    /**
+     * @return 헤더 개수
+     */
+    int size() {
+        return size;
+    }
+
+    String nameAt(int index) {
+        return entries[index * 2];
+    }
+
+    String valueAt(int index) {
+        return entries[index * 2 + 1];
+    }
+
+    /**
+     * 이름이 같은 헤더 중 마지막 값 조회 (대소문자 구분 없음)
+     * @return 없으면 null
+     */
+    String get(String name) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (entries[i * 2].equalsIgnoreCase(name))
+                return entries[i * 2 + 1];
+        }
+        return null;
+    }
+
+    /**
+     * 순서를 유지하는 Map 으로 변환하는 메소드. 이름이 같은 헤더는 마지막 값이 남는다.
+     * get 과 같이 대소문자를 구분하지 않고 조회할 수 있다.
+     */
+    Map<String, String> toMap() {
+        Map<String, String> map = new LinkedCaseInsensitiveMap<>(size * 2);
+        for (int i = 0; i < size; i++)
+            map.put(entries[i * 2], entries[i * 2 + 1]);
+        return map;
+    }
+
+    void clear() {
+        Arrays.fill(entries, 0, size * 2, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,561 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.Builder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Access log 를 batch 단위로 모아 HTTP 로 collector 에 보내는 AccessLogger.
+ * 로그는 NDJSON (AccessLogFormat.JSON 한 줄씩) 으로 모으며, 레코드 수, 크기, linger 시간 중 하나를 넘으면
+ * gzip 으로 압축하여 POST 한다. 전송은 별도의 sender thread 에서 하며, 연결은 HttpURLConnection 의 keep-alive pool 을 재사용한다.
+ *
+ * 전송에 실패하면 jitter 를 둔 exponential backoff 로 재시도하고, 그래도 실패하면 spillDirectory 에 압축된 batch 를 저장한다.
+ * 재시도 후에도 실패하면 collector 가 내려간 것으로 보고, collectorDownMillis 동안은 재시도 없이 바로 디스크에 저장한다.
+ * 저장된 batch 는 collector 가 다시 응답하면 오래된 순서로 재전송한다.
+ * 보내지 못한 batch 가 maxPendingBatches 를 넘으면 새 batch 는 호출 thread 에서 바로 디스크에 저장하고, spillDirectory 가 없으면 버린다.
+ *
+ * log 는 batch 에 추가하는 동안 동기화 되므로, FanOutAccessLogger 의 sink 또는 AsyncAccessLogger 의 delegate 로 사용하는 것을 권장한다.
+ */
+public class HttpShippingAccessLogger implements AccessLogger, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpShippingAccessLogger.class);
+
+    private static final int DEFAULT_MAX_BATCH_RECORDS = 1000;
+    private static final int DEFAULT_MAX_BATCH_BYTES = 1024 * 1024;
+    private static final long DEFAULT_LINGER_MILLIS = 1000;
+    private static final int DEFAULT_MAX_PENDING_BATCHES = 16;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 200;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 10_000;
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 3000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 10_000;
+    private static final long DEFAULT_MAX_SPILL_BYTES = 1024L * 1024 * 1024;
+    private static final long DEFAULT_COLLECTOR_DOWN_MILLIS = 5000;
+
+    // Close 시 남은 batch 를 보내기 위해 기다리는 최대 시간
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30_000;
+
+    // Sender thread 가 linger 시간과 종료 여부를 확인하는 최대 간격
+    private static final long MAX_POLL_MILLIS = 100;
+
+    static final String SPILL_SUFFIX = ".ndjson.gz";
+
+    // 기록 중인 spill 파일의 suffix. 다 기록한 뒤 이름을 바꾸므로 재전송 중에 읽히지 않는다.
+    private static final String SPILL_TEMP_SUFFIX = ".tmp";
+
+    private static final byte LINE_SEPARATOR = '\n';
+
+    private final URL endpoint;
+
+    private final Map<String, String> headers;
+
+    private final int maxBatchRecords;
+
+    private final int maxBatchBytes;
+
+    private final long lingerNanos;
+
+    private final boolean gzip;
+
+    private final int maxRetries;
+
+    private final long retryBackoffMillis;
+
+    private final int connectTimeoutMillis;
+
+    private final int readTimeoutMillis;
+
+    private final Path spillDirectory;
+
+    private final long maxSpillBytes;
+
+    private final long collectorDownNanos;
+
+    // 이 시각 (System.nanoTime) 까지는 collector 가 내려간 것으로 보고 전송하지 않는다. 0 이면 전송한다.
+    private volatile long collectorDownUntil;
+
+    // spillDirectory 에 저장된 batch 의 전체 크기
+    private final AtomicLong spilledBytes = new AtomicLong();
+
+    private final BlockingQueue<Batch> pending;
+
+    private final Thread sender;
+
+    private volatile boolean running = true;
+
+    // 모으는 중인 batch. this 로 동기화 한다.
+    private Batch current;
+
+    private final AtomicLong spillSequence = new AtomicLong();
+
+    private final LongAdder sentRecordCount = new LongAdder();
+
+    private final LongAdder sentBatchCount = new LongAdder();
+
+    private final LongAdder retryCount = new LongAdder();
+
+    private final LongAdder spilledBatchCount = new LongAdder();
+
+    private final LongAdder droppedRecordCount = new LongAdder();
+
+    /**
+     * @param endpoint Collector URL
+     * @param headers 요청마다 추가할 헤더 (인증 토큰 등)
+     * @param maxBatchRecords Batch 최대 레코드 수. 설정하지 않으면 1000
+     * @param maxBatchBytes 압축 전 batch 최대 크기 (bytes). 설정하지 않으면 1MB
+     * @param lingerMillis Batch 가 가득 차지 않아도 이 시간이 지나면 보낸다. 설정하지 않으면 1000
+     * @param gzip Batch 를 gzip 으로 압축할지 여부. 설정하지 않으면 true
+     * @param maxPendingBatches 보내지 못하고 쌓아 둘 최대 batch 수. 설정하지 않으면 16
+     * @param maxRetries 실패 시 재시도 횟수. 설정하지 않으면 3
+     * @param retryBackoffMillis 첫 재시도 대기 시간. 재시도 마다 두 배로 늘고 jitter 가 적용된다. 설정하지 않으면 200
+     * @param connectTimeoutMillis 연결 timeout. 설정하지 않으면 3000
+     * @param readTimeoutMillis 응답 timeout. 설정하지 않으면 10000
+     * @param spillDirectory 보내지 못한 batch 를 저장할 디렉토리. 설정하지 않으면 버린다.
+     * @param maxSpillBytes spillDirectory 에 저장할 최대 크기. 설정하지 않으면 1GB
+     * @param collectorDownMillis 재시도 후에도 전송에 실패하면 이 시간 동안 전송하지 않고 바로 디스크에 저장한다. 설정하지 않으면 5000
+     */
+    @Builder
+    private HttpShippingAccessLogger(String endpoint, Map<String, String> headers, Integer maxBatchRecords, Integer maxBatchBytes,
+                                     Long lingerMillis, Boolean gzip, Integer maxPendingBatches, Integer maxRetries,
+                                     Long retryBackoffMillis, Integer connectTimeoutMillis, Integer readTimeoutMillis,
+                                     Path spillDirectory, Long maxSpillBytes, Long collectorDownMillis) {
+        if (endpoint == null)
+            throw new IllegalArgumentException("Collector endpoint is required");
+
+        try {
+            this.endpoint = new URL(endpoint);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid collector endpoint " + endpoint, e);
+        }
+        this.headers = headers != null ? headers : Collections.emptyMap();
+        this.maxBatchRecords = maxBatchRecords != null ? maxBatchRecords : DEFAULT_MAX_BATCH_RECORDS;
+        this.maxBatchBytes = maxBatchBytes != null ? maxBatchBytes : DEFAULT_MAX_BATCH_BYTES;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis != null ? lingerMillis : DEFAULT_LINGER_MILLIS);
+        this.gzip = gzip != null ? gzip : true;
+        this.pending = new ArrayBlockingQueue<>(maxPendingBatches != null ? maxPendingBatches : DEFAULT_MAX_PENDING_BATCHES);
+        this.maxRetries = maxRetries != null ? maxRetries : DEFAULT_MAX_RETRIES;
+        this.retryBackoffMillis = retryBackoffMillis != null ? retryBackoffMillis : DEFAULT_RETRY_BACKOFF_MILLIS;
+        this.connectTimeoutMillis = connectTimeoutMillis != null ? connectTimeoutMillis : DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        this.readTimeoutMillis = readTimeoutMillis != null ? readTimeoutMillis : DEFAULT_READ_TIMEOUT_MILLIS;
+        this.spillDirectory = spillDirectory;
+        this.maxSpillBytes = maxSpillBytes != null ? maxSpillBytes : DEFAULT_MAX_SPILL_BYTES;
+        this.collectorDownNanos = TimeUnit.MILLISECONDS.toNanos(collectorDownMillis != null ? collectorDownMillis : DEFAULT_COLLECTOR_DOWN_MILLIS);
+
+        if (spillDirectory != null) {
+            try {
+                Files.createDirectories(spillDirectory);
+                // 이전 실행에서 보내지 못한 batch 도 재전송 대상이다.
+                for (Path file : spilledFiles())
+                    spilledBytes.addAndGet(Files.size(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create spill directory " + spillDirectory, e);
+            }
+        }
+
+        this.sender = new Thread(this::send, "access-log-shipper");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    @Override
+    public void log(AccessLog accessLog) {
+        byte[] encoded;
+        try {
+            encoded = AccessLogFormat.JSON.encode(accessLog);
+        } catch (IOException | RuntimeException e) {
+            droppedRecordCount.increment();
+            logger.error("Failed to encode access log", e);
+            return;
+        }
+
+        Batch overflow = null;
+        synchronized (this) {
+            if (!running) {
+                droppedRecordCount.increment();
+                return;
+            }
+
+            if (current == null)
+                current = new Batch(System.nanoTime());
+            current.add(encoded);
+            if (current.records >= maxBatchRecords || current.size() >= maxBatchBytes) {
+                // close 가 running 을 바꾸기 전에 queue 에 넣어야 sender thread 가 종료 전에 처리한다.
+                if (!pending.offer(current))
+                    overflow = current;
+                current = null;
+            }
+        }
+        if (overflow != null)
+            spillOverflow(overflow);
+    }
+
+    /**
+     * Queue 가 가득 차 sender thread 에 넘기지 못한 batch 를 호출 thread 에서 디스크에 저장하는 메소드
+     */
+    private void spillOverflow(Batch batch) {
+        if (spillDirectory == null) {
+            droppedRecordCount.add(batch.records);
+            logger.warn("Access log shipping queue is full, {} records dropped", batch.records);
+            return;
+        }
+
+        try {
+            spill(gzip ? compress(batch) : batch.toByteArray(), batch.records);
+        } catch (IOException e) {
+            droppedRecordCount.add(batch.records);
+            logger.error("Failed to compress access log batch", e);
+        }
+    }
+
+    /**
+     * Linger 시간이 지난 batch 를 꺼내는 메소드
+     * @param force 시간과 관계 없이 꺼낼지 여부
+     */
+    private synchronized Batch takeLingered(boolean force) {
+        if (current == null || !force && System.nanoTime() - current.createdAt < lingerNanos)
+            return null;
+
+        Batch batch = current;
+        current = null;
+        return batch;
+    }
+
+    /**
+     * Sender thread 에서 실행되는 메소드
+     */
+    private void send() {
+        long pollNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1),
+                Math.min(lingerNanos / 4, TimeUnit.MILLISECONDS.toNanos(MAX_POLL_MILLIS)));
+        while (running || !pending.isEmpty()) {
+            Batch batch;
+            try {
+                batch = pending.poll(pollNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                batch = null;
+            }
+            if (batch == null)
+                batch = takeLingered(false);
+            if (batch != null)
+                ship(batch);
+            else if (spilledBytes.get() > 0 && !isCollectorDown())
+                // 새 로그가 없어도 collector 가 복구되었는지 확인하여 저장된 batch 를 보낸다.
+                resendSpilled();
+        }
+
+        // 종료 직전에 모으던 batch
+        Batch rest = takeLingered(true);
+        if (rest != null)
+            ship(rest);
+    }
+
+    /**
+     * Batch 를 압축하여 보내고, 실패하면 재시도 후 디스크에 저장하는 메소드
+     */
+    private void ship(Batch batch) {
+        byte[] payload;
+        try {
+            payload = gzip ? compress(batch) : batch.toByteArray();
+        } catch (IOException e) {
+            droppedRecordCount.add(batch.records);
+            logger.error("Failed to compress access log batch", e);
+            return;
+        }
+
+        // Collector 가 내려간 동안에는 재시도로 queue 가 밀리지 않도록 바로 저장한다.
+        if (isCollectorDown()) {
+            spill(payload, batch.records);
+            return;
+        }
+
+        if (post(payload, batch.records, true)) {
+            // 저장된 batch 가 없으면 spillDirectory 를 조회하지 않는다.
+            if (spilledBytes.get() > 0)
+                resendSpilled();
+            return;
+        }
+        markCollectorDown();
+        spill(payload, batch.records);
+    }
+
+    private boolean isCollectorDown() {
+        long downUntil = collectorDownUntil;
+        return downUntil != 0 && System.nanoTime() - downUntil < 0;
+    }
+
+    private void markCollectorDown() {
+        long downUntil = System.nanoTime() + collectorDownNanos;
+        // 0 은 내려가지 않은 상태를 뜻한다.
+        collectorDownUntil = downUntil != 0 ? downUntil : 1;
+    }
+
+    /**
+     * @param retry 실패 시 재시도 할지 여부
+     * @return 전송 성공 여부
+     */
+    private boolean post(byte[] payload, int records, boolean retry) {
+        int attempts = retry ? maxRetries + 1 : 1;
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            if (attempt > 0) {
+                retryCount.increment();
+                if (!sleep(backoffMillis(attempt)))
+                    return false;
+            }
+
+            try {
+                int status = post(payload);
+                if (status / 100 == 2) {
+                    collectorDownUntil = 0;
+                    sentBatchCount.increment();
+                    sentRecordCount.add(records);
+                    return true;
+                }
+                // 재시도 해도 성공하지 않을 응답
+                if (status / 100 == 4 && status != 408 && status != 429) {
+                    droppedRecordCount.add(records);
+                    logger.error("Access log collector rejected a batch with status {}, {} records dropped", status, records);
+                    return true;
+                }
+                logger.warn("Access log collector responded {}", status);
+            } catch (IOException e) {
+                logger.warn("Failed to ship access logs to {}: {}", endpoint, e.toString());
+            }
+        }
+        return false;
+    }
+
+    private int post(byte[] payload) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(payload.length);
+        connection.setRequestProperty("Content-Type", "application/x-ndjson");
+        if (gzip)
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        for (Map.Entry<String, String> header : headers.entrySet())
+            connection.setRequestProperty(header.getKey(), header.getValue());
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(payload);
+        }
+
+        int status = connection.getResponseCode();
+        // 응답 body 를 끝까지 읽고 닫아야 연결이 keep-alive pool 로 반환된다.
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            try (InputStream body = in) {
+                byte[] discard = new byte[1024];
+                while (body.read(discard) >= 0) {
+                    // 버림
+                }
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Jitter 를 둔 exponential backoff. [backoff / 2, backoff) 범위에서 무작위로 정한다.
+     */
+    private long backoffMillis(int attempt) {
+        long backoff = Math.min(MAX_RETRY_BACKOFF_MILLIS, retryBackoffMillis << Math.min(attempt - 1, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(Math.max(1, backoff - backoff / 2));
+    }
+
+    private boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private void spill(byte[] payload, int records) {
+        if (spillDirectory == null) {
+            droppedRecordCount.add(records);
+            logger.error("Failed to ship access logs, {} records dropped", records);
+            return;
+        }
+
+        if (spilledBytes.addAndGet(payload.length) > maxSpillBytes) {
+            spilledBytes.addAndGet(-payload.length);
+            droppedRecordCount.add(records);
+            logger.error("Access log spill directory is full, {} records dropped", records);
+            return;
+        }
+
+        try {
+            // 이름에 레코드 수를 남겨 재전송 시 통계에 반영한다.
+            Path file = spillDirectory.resolve(String.format("batch-%013d-%06d-%d%s",
+                    System.currentTimeMillis(), spillSequence.getAndIncrement(), records, spillSuffix()));
+            Path temp = file.resolveSibling(file.getFileName() + SPILL_TEMP_SUFFIX);
+            Files.write(temp, payload, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            spilledBatchCount.increment();
+        } catch (IOException e) {
+            spilledBytes.addAndGet(-payload.length);
+            droppedRecordCount.add(records);
+            logger.error("Failed to spill access logs, {} records dropped", records, e);
+        }
+    }
+
+    /**
+     * 디스크에 저장된 batch 를 오래된 순서로 재전송하는 메소드.
+     * 하나라도 실패하면 collector 가 내려간 것으로 보고 다음 기회로 미룬다.
+     */
+    private void resendSpilled() {
+        if (spillDirectory == null)
+            return;
+
+        try {
+            for (Path file : spilledFiles()) {
+                byte[] payload = Files.readAllBytes(file);
+                int records = spilledRecords(file);
+                if (!post(payload, records, false)) {
+                    markCollectorDown();
+                    return;
+                }
+                Files.delete(file);
+                spilledBytes.addAndGet(-payload.length);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to resend spilled access logs", e);
+        }
+    }
+
+    private List<Path> spilledFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spillDirectory, "batch-*" + spillSuffix())) {
+            for (Path file : stream)
+                files.add(file);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static int spilledRecords(Path file) {
+        String name = file.getFileName().toString();
+        int end = name.indexOf('.');
+        int start = name.lastIndexOf('-', end) + 1;
+        try {
+            return Integer.parseInt(name.substring(start, end));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private String spillSuffix() {
+        return gzip ? SPILL_SUFFIX : ".ndjson";
+    }
+
+    private static byte[] compress(Batch batch) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(batch.size() / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed, 8192)) {
+            batch.writeTo(out);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * @return 전송에 성공한 레코드 수
+     */
+    public long getSentRecordCount() {
+        return sentRecordCount.sum();
+    }
+
+    /**
+     * @return 전송에 성공한 batch 수
+     */
+    public long getSentBatchCount() {
+        return sentBatchCount.sum();
+    }
+
+    /**
+     * @return 재시도 횟수
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * @return 디스크에 저장한 batch 수
+     */
+    public long getSpilledBatchCount() {
+        return spilledBatchCount.sum();
+    }
+
+    /**
+     * @return 보내지도, 저장하지도 못하고 버린 레코드 수
+     */
+    public long getDroppedRecordCount() {
+        return droppedRecordCount.sum();
+    }
+
+    /**
+     * 모으던 batch 와 쌓인 batch 를 보낸 뒤 sender thread 를 종료한다.
+     * 종료 중에도 재시도 하며, 실패한 batch 는 디스크에 저장한다.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!running)
+                return;
+            running = false;
+        }
+
+        try {
+            sender.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sender.isAlive())
+            logger.warn("Access log shipper did not finish in {} ms, {} batches may be lost", SHUTDOWN_TIMEOUT_MILLIS, pending.size());
+    }
+
+    /**
+     * NDJSON 으로 모으는 batch
+     */
+    private static final class Batch extends ByteArrayOutputStream {
+
+        private final long createdAt;
+
+        private int records;
+
+        Batch(long createdAt) {
+            super(8192);
+            this.createdAt = createdAt;
+        }
+
+        void add(byte[] encoded) {
+            write(encoded, 0, encoded.length);
+            write(LINE_SEPARATOR);
+            records++;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.omnipede.system.filter.accesslog;
+
+/**
+ * Proxy 헤더로부터 원본 client IP 주소를 찾아 access log 의 ip 를 채우는 enricher.
+ * 필터는 ip 에 servlet request 의 remote address 를 남기며, proxy 헤더가 없으면 그대로 둔다.
+ */
+public class IpAddressEnricher implements AccessLogEnricher {
+
+    // 요청이 proxy 되었을 때 다음 헤더 중 하나에 원본 client ip 가 존재한다.
+    private static final String[] IP_HEADERS = {
+            "X-Forwarded-For",
+            "Proxy-Client-IP",
+            "WL-Proxy-Client-IP",
+            "HTTP_CLIENT_IP",
+            "HTTP_X_FORWARDED_FOR"
+    };
+
+    @Override
+    public void enrich(AccessLog accessLog) {
+        for (String header : IP_HEADERS) {
+            String ip = accessLog.getRequestHeader(header);
+            if (isValidIp(ip)) {
+                accessLog.setIp(ip);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 대상 IP 문자열이 valid ip string 인지 확인하는 메소드
+     * @param target 확인할 문자열
+     * @return IP address validity
+     */
+    private boolean isValidIp(String target) {
+        if (target == null || target.length() == 0)
+            return false;
+
+        return !"unknown".equalsIgnoreCase(target);
+    }
+}
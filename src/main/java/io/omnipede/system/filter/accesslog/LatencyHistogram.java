@@ -0,0 +1,110 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HdrHistogram 과 같은 log-linear bucket 을 가지는 latency histogram.
+ * 2 의 거듭제곱 구간마다 16 개의 bucket 으로 나누므로 상대 오차는 약 6% 이내이다.
+ * Bucket 은 LongAdder 로 되어 있어 여러 thread 에서 lock 없이 기록할 수 있으며, 처음 값이 기록될 때 만든다.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // 2^36 이상은 마지막 bucket 에 기록 (ms 이면 약 2 년, ns 이면 약 68 초)
+    private static final int MAX_EXPONENT = 36;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long value) {
+        if (value < 0)
+            value = 0;
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+
+        int index = bucketIndex(Math.min(value, MAX_VALUE));
+        LongAdder bucket = buckets.get(index);
+        if (bucket == null) {
+            buckets.compareAndSet(index, null, new LongAdder());
+            bucket = buckets.get(index);
+        }
+        bucket.increment();
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getSum() {
+        return sum.sum();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 여러 percentile 을 bucket 을 한번만 순회하여 구하는 메소드.
+     * 기록 중에 호출하면 count 와 bucket 합이 조금 다를 수 있으므로 bucket 합을 기준으로 한다.
+     * @param percentiles 오름차순으로 정렬된 percentile (0 ~ 100)
+     * @return 각 percentile 에 해당하는 값. Bucket 의 중간값이며, 기록된 값이 없으면 0
+     */
+    long[] getValuesAtPercentiles(double... percentiles) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            LongAdder bucket = buckets.get(i);
+            if (bucket != null) {
+                counts[i] = bucket.sum();
+                total += counts[i];
+            }
+        }
+
+        long[] values = new long[percentiles.length];
+        if (total == 0)
+            return values;
+
+        int index = 0;
+        long cumulative = 0;
+        for (int p = 0; p < percentiles.length; p++) {
+            long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100.0 * total));
+            while (index < BUCKET_COUNT && cumulative + counts[index] < rank)
+                cumulative += counts[index++];
+            values[p] = Math.min(medianValue(Math.min(index, BUCKET_COUNT - 1)), getMax());
+        }
+        return values;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @return Bucket 에 속하는 값 범위의 중간값
+     */
+    static long medianValue(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowest = (1L << exponent) + subBucket * width;
+        return lowest + width / 2;
+    }
+}
@@ -0,0 +1,28 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Body masking 설정 클래스.
+ * 캐싱된 body 에서 줄바꿈을 제거하며 복사할 때 한번에 민감한 값을 가린다.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class MaskingPolicy {
+
+    // 값을 가릴 JSON key, form parameter 이름 (대소문자 구분 없음). 설정하지 않으면 password, token 등 기본 목록
+    private List<String> sensitiveKeys;
+
+    // 카드 번호 (Luhn 검사를 통과하는 13 ~ 19 자리 숫자) 를 마지막 4 자리만 남기고 가릴지 여부. 설정하지 않으면 true
+    private Boolean maskCardNumbers;
+
+    // 이메일 주소의 @ 앞부분을 가릴지 여부. 설정하지 않으면 true
+    private Boolean maskEmails;
+}
@@ -0,0 +1,188 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.Builder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Access log 로부터 route (route 가 없으면 URI), method, status class 별 요청 수와 latency histogram 을 집계하는 AccessLogger.
+ * 집계 후 delegate 가 있으면 로그를 넘기므로 다른 AccessLogger 앞에 둘 수 있다.
+ * 기록은 ConcurrentHashMap 조회와 LongAdder 증가만 하므로 lock 없이 여러 thread 에서 호출할 수 있다.
+ *
+ * 집계 결과는 getRoutes 로 조회하거나, jmxName 을 설정하여 JMX 로 조회할 수 있다.
+ * 집계 값은 시작 이후 누적 값이다.
+ */
+public class MetricsAccessLogger implements AccessLogger, AccessLogMetricsMXBean, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsAccessLogger.class);
+
+    private static final int DEFAULT_MAX_ROUTES = 1000;
+
+    // Route 수가 maxRoutes 를 넘으면 이 route 로 집계
+    static final String OVERFLOW_ROUTE = "OTHER";
+
+    private static final String UNKNOWN = "unknown";
+
+    private static final String[] STATUS_CLASS_NAMES = {UNKNOWN, "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final AccessLogger delegate;
+
+    private final int maxRoutes;
+
+    private final ObjectName objectName;
+
+    private final Map<String, Map<String, AtomicReferenceArray<LatencyHistogram>>> routes = new ConcurrentHashMap<>();
+
+    private final LongAdder recordedCount = new LongAdder();
+
+    private final LongAdder overflowCount = new LongAdder();
+
+    /**
+     * @param delegate 집계 후 로그를 넘길 AccessLogger. 없으면 집계만 한다.
+     * @param maxRoutes 집계할 최대 route 수. 넘으면 "OTHER" 로 집계한다. 설정하지 않으면 1000
+     * @param jmxName JMX 에 등록할 이름 (예: io.omnipede:type=AccessLogMetrics). 설정하지 않으면 등록하지 않는다.
+     */
+    @Builder
+    private MetricsAccessLogger(AccessLogger delegate, int maxRoutes, String jmxName) {
+        this.delegate = delegate;
+        this.maxRoutes = maxRoutes > 0 ? maxRoutes : DEFAULT_MAX_ROUTES;
+        this.objectName = jmxName != null ? register(jmxName) : null;
+    }
+
+    @Override
+    public void log(AccessLog accessLog) {
+        record(accessLog);
+        if (delegate != null)
+            delegate.log(accessLog);
+    }
+
+    @Override
+    public void logBatch(List<AccessLog> accessLogs) {
+        for (int i = 0; i < accessLogs.size(); i++)
+            record(accessLogs.get(i));
+        if (delegate != null)
+            delegate.logBatch(accessLogs);
+    }
+
+    private void record(AccessLog accessLog) {
+        String route = routeOf(accessLog);
+        String method = accessLog.getMethod() != null ? accessLog.getMethod() : UNKNOWN;
+
+        Map<String, AtomicReferenceArray<LatencyHistogram>> methods = routes.get(route);
+        if (methods == null) {
+            if (routes.size() >= maxRoutes) {
+                overflowCount.increment();
+                route = OVERFLOW_ROUTE;
+            }
+            methods = routes.computeIfAbsent(route, key -> new ConcurrentHashMap<>());
+        }
+
+        AtomicReferenceArray<LatencyHistogram> statusClasses = methods.get(method);
+        if (statusClasses == null)
+            statusClasses = methods.computeIfAbsent(method, key -> new AtomicReferenceArray<>(STATUS_CLASS_NAMES.length));
+
+        int statusClass = BlockIndex.statusClass(accessLog.getStatus());
+        LatencyHistogram histogram = statusClasses.get(statusClass);
+        if (histogram == null) {
+            statusClasses.compareAndSet(statusClass, null, new LatencyHistogram());
+            histogram = statusClasses.get(statusClass);
+        }
+        histogram.record(accessLog.getElapsed());
+        recordedCount.increment();
+    }
+
+    private static String routeOf(AccessLog accessLog) {
+        if (accessLog.getRoute() != null)
+            return accessLog.getRoute();
+        return accessLog.getUri() != null ? accessLog.getUri() : UNKNOWN;
+    }
+
+    /**
+     * @return Route, method, status class 별 통계. Route, method 순서로 정렬되어 있다.
+     */
+    @Override
+    public List<RouteMetricsSnapshot> getRoutes() {
+        List<RouteMetricsSnapshot> snapshots = new ArrayList<>();
+        for (Map.Entry<String, Map<String, AtomicReferenceArray<LatencyHistogram>>> route : routes.entrySet()) {
+            for (Map.Entry<String, AtomicReferenceArray<LatencyHistogram>> method : route.getValue().entrySet()) {
+                AtomicReferenceArray<LatencyHistogram> statusClasses = method.getValue();
+                for (int i = 0; i < statusClasses.length(); i++) {
+                    LatencyHistogram histogram = statusClasses.get(i);
+                    if (histogram != null)
+                        snapshots.add(snapshot(route.getKey(), method.getKey(), STATUS_CLASS_NAMES[i], histogram));
+                }
+            }
+        }
+        snapshots.sort((a, b) -> {
+            int compared = a.getRoute().compareTo(b.getRoute());
+            if (compared == 0)
+                compared = a.getMethod().compareTo(b.getMethod());
+            return compared != 0 ? compared : a.getStatusClass().compareTo(b.getStatusClass());
+        });
+        return snapshots;
+    }
+
+    private static RouteMetricsSnapshot snapshot(String route, String method, String statusClass, LatencyHistogram histogram) {
+        long count = histogram.getCount();
+        long[] percentiles = histogram.getValuesAtPercentiles(50, 90, 99, 99.9);
+        double mean = count > 0 ? (double) histogram.getSum() / count : 0;
+        return new RouteMetricsSnapshot(route, method, statusClass, count, mean, histogram.getMax(),
+                percentiles[0], percentiles[1], percentiles[2], percentiles[3]);
+    }
+
+    /**
+     * @return 집계한 로그 수
+     */
+    @Override
+    public long getRecordedCount() {
+        return recordedCount.sum();
+    }
+
+    /**
+     * @return Route 수가 maxRoutes 를 넘어 "OTHER" 로 집계한 로그 수
+     */
+    @Override
+    public long getOverflowCount() {
+        return overflowCount.sum();
+    }
+
+    private ObjectName register(String jmxName) {
+        try {
+            ObjectName name = new ObjectName(jmxName);
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(name))
+                mBeanServer.unregisterMBean(name);
+            mBeanServer.registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Failed to register access log metrics MBean " + jmxName, e);
+        }
+    }
+
+    /**
+     * JMX 에 등록했으면 해제한다.
+     */
+    @Override
+    public void close() {
+        if (objectName == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.warn("Failed to unregister access log metrics MBean {}", objectName, e);
+        }
+    }
+}
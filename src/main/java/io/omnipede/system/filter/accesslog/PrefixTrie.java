@@ -0,0 +1,93 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.util.Arrays;
+
+/**
+ * 문자열 prefix 로 값을 찾는 trie.
+ * 조회 시 객체를 생성하지 않으며 비용은 key 개수와 관계 없이 입력 문자열 길이에 비례한다.
+ * 생성 시점에 값을 모두 넣은 뒤 읽기 전용으로 사용해야 한다. (put 은 thread safe 하지 않음)
+ */
+class PrefixTrie<V> {
+
+    private final Node<V> root = new Node<>();
+
+    /**
+     * 값 추가. 같은 key 가 있으면 덮어쓴다.
+     */
+    void put(String key, V value) {
+        Node<V> node = root;
+        for (int i = 0; i < key.length(); i++)
+            node = node.getOrCreateChild(key.charAt(i));
+        node.value = value;
+    }
+
+    /**
+     * key 와 정확히 일치하는 값 조회
+     * @return 없으면 null
+     */
+    V get(String key) {
+        Node<V> node = root;
+        for (int i = 0; i < key.length() && node != null; i++)
+            node = node.child(key.charAt(i));
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * 입력 문자열의 prefix 인 key 중 가장 긴 key 의 값 조회
+     * @return 없으면 null
+     */
+    V findLongestPrefix(String input) {
+        Node<V> node = root;
+        V found = root.value;
+        for (int i = 0; i < input.length(); i++) {
+            node = node.child(input.charAt(i));
+            if (node == null)
+                break;
+            if (node.value != null)
+                found = node.value;
+        }
+        return found;
+    }
+
+    private static class Node<V> {
+
+        private static final char[] NO_KEYS = new char[0];
+
+        // 정렬된 자식 문자
+        private char[] keys = NO_KEYS;
+
+        private Node<V>[] children;
+
+        private V value;
+
+        Node<V> child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<V> getOrCreateChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0)
+                return children[index];
+
+            int insertAt = -index - 1;
+            Node<V> child = new Node<>();
+
+            char[] newKeys = new char[keys.length + 1];
+            Node<V>[] newChildren = (Node<V>[]) new Node<?>[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            if (children != null) {
+                System.arraycopy(children, 0, newChildren, 0, insertAt);
+                System.arraycopy(children, insertAt, newChildren, insertAt + 1, keys.length - insertAt);
+            }
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = child;
+
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Route, method, status class 별 요청 수와 latency (ms) 통계
+ */
+@Getter
+@ToString
+@AllArgsConstructor(onConstructor_ = @ConstructorProperties({"route", "method", "statusClass", "count", "mean", "max", "p50", "p90", "p99", "p999"}))
+public class RouteMetricsSnapshot {
+
+    private final String route;
+
+    private final String method;
+
+    // 2xx, 5xx 등. Status 가 없으면 "unknown"
+    private final String statusClass;
+
+    private final long count;
+
+    private final double mean;
+
+    private final long max;
+
+    private final long p50;
+
+    private final long p90;
+
+    private final long p99;
+
+    private final long p999;
+}
@@ -0,0 +1,236 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 요청 URI 를 route template 으로 정규화 하는 객체.
+ * "/users/123" 과 "/users/456" 을 같은 "/users/{id}" 로 묶어 route 별 집계의 cardinality 를 제한한다.
+ *
+ * <ol>
+ *     <li>Spring MVC 가 handler 를 찾으며 남긴 BEST_MATCHING_PATTERN 이 있으면 그대로 사용한다.</li>
+ *     <li>없으면 숫자 segment 는 {id}, UUID segment 는 {uuid} 로 바꾼다.</li>
+ *     <li>같은 상위 경로 아래에서 서로 다른 값이 maxSegmentValues 개 이상 나온 segment 는 {var} 로 바꾼다.</li>
+ * </ol>
+ * 2, 3 의 결과는 URI 별로 크기가 제한된 LRU cache 에 담는다.
+ *
+ * 3 의 값은 정상 처리된 (2xx, 3xx) 요청에서만 수집하므로, scanner 가 보내는 404 경로들이 route 를 {var} 로 뭉개지 않는다.
+ * 첫 segment 는 API 의 최상위 경로이므로 값을 수집하지 않는다.
+ */
+final class RouteNormalizer {
+
+    static final String ID = "{id}";
+    static final String UUID = "{uuid}";
+    static final String VARIABLE = "{var}";
+
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final int DEFAULT_MAX_SEGMENT_VALUES = 100;
+
+    // 값 종류를 추적할 최대 상위 경로 수. 넘으면 새 경로의 값은 추적하지 않고 그대로 둔다.
+    private static final int MAX_TRACKED_PARENTS = 10000;
+
+    // Lock 경합을 줄이기 위해 cache 를 나누는 수
+    private static final int CACHE_STRIPES = 16;
+
+    private final RouteCache[] caches = new RouteCache[CACHE_STRIPES];
+
+    private final int maxSegmentValues;
+
+    // 상위 경로 template 별 다음 segment 에 나온 값들
+    private final Map<String, SegmentValues> segmentValues = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheSize URI 별 정규화 결과 cache 크기. 0 이하이면 기본값 (10000)
+     * @param maxSegmentValues 한 segment 위치에서 {var} 로 바꾸기 전까지 허용하는 서로 다른 값의 수. 0 이하이면 기본값 (100)
+     */
+    RouteNormalizer(int cacheSize, int maxSegmentValues) {
+        int stripeSize = Math.max(1, (cacheSize > 0 ? cacheSize : DEFAULT_CACHE_SIZE) / CACHE_STRIPES);
+        for (int i = 0; i < CACHE_STRIPES; i++)
+            caches[i] = new RouteCache(stripeSize);
+        this.maxSegmentValues = maxSegmentValues > 0 ? maxSegmentValues : DEFAULT_MAX_SEGMENT_VALUES;
+    }
+
+    /**
+     * 요청을 처리한 handler 의 pattern 또는 요청 URI 로부터 route 를 구하는 메소드.
+     * Handler mapping 이 끝난 뒤 (filter chain 이 끝난 뒤) 호출해야 한다.
+     * @param status 응답 status. 2xx, 3xx 인 경우에만 segment 값을 수집한다.
+     */
+    String normalize(HttpServletRequest request, int status) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern instanceof String)
+            return (String) pattern;
+        return normalize(request.getRequestURI(), status >= 200 && status < 400);
+    }
+
+    String normalize(String uri) {
+        return normalize(uri, true);
+    }
+
+    /**
+     * @param learn Segment 값을 수집할지 여부. 수집하지 않으면 이미 변수로 판단된 segment 만 바꾸고, 결과를 cache 하지 않는다.
+     */
+    String normalize(String uri, boolean learn) {
+        if (uri == null)
+            return null;
+
+        RouteCache cache = caches[(uri.hashCode() & Integer.MAX_VALUE) % CACHE_STRIPES];
+        String route = cache.get(uri);
+        if (route == null) {
+            route = collapse(uri, learn);
+            // 수집하지 않은 URI 는 나중에 정상 응답이 오면 수집할 수 있도록 cache 하지 않는다.
+            if (learn)
+                cache.put(uri, route);
+        }
+        return route;
+    }
+
+    private String collapse(String uri, boolean learn) {
+        StringBuilder route = new StringBuilder(uri.length());
+        int start = 0;
+        int length = uri.length();
+        while (start < length) {
+            int end = uri.indexOf('/', start);
+            if (end < 0)
+                end = length;
+
+            if (end > start)
+                appendSegment(route, uri.substring(start, end), learn);
+            if (end < length)
+                route.append('/');
+            start = end + 1;
+        }
+        return route.toString();
+    }
+
+    private void appendSegment(StringBuilder route, String segment, boolean learn) {
+        if (isNumber(segment)) {
+            route.append(ID);
+            return;
+        }
+        if (isUuid(segment)) {
+            route.append(UUID);
+            return;
+        }
+
+        String parent = route.toString();
+        // 첫 segment 는 수집하지 않음
+        if (parent.length() <= 1) {
+            route.append(segment);
+            return;
+        }
+
+        SegmentValues values = segmentValues.get(parent);
+        if (values == null && learn && segmentValues.size() < MAX_TRACKED_PARENTS)
+            values = segmentValues.computeIfAbsent(parent, key -> new SegmentValues());
+
+        if (values != null && (learn ? values.isVariable(segment, maxSegmentValues) : values.variable)) {
+            route.append(VARIABLE);
+            return;
+        }
+        route.append(segment);
+    }
+
+    private static boolean isNumber(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 8-4-4-4-12 형식의 16 진수 UUID 인지 확인
+     */
+    private static boolean isUuid(String segment) {
+        if (segment.length() != 36)
+            return false;
+        for (int i = 0; i < 36; i++) {
+            char c = segment.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-')
+                    return false;
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 한 segment 위치에 나온 값들. 값의 종류가 제한을 넘으면 그 위치는 변수로 본다.
+     */
+    private final class SegmentValues {
+
+        private final Set<String> values = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean variable;
+
+        boolean isVariable(String segment, int maxValues) {
+            if (variable)
+                return true;
+            if (values.contains(segment))
+                return false;
+            if (values.size() < maxValues) {
+                values.add(segment);
+                return false;
+            }
+
+            variable = true;
+            values.clear();
+            // 이미 cache 된 literal route 들을 다시 정규화 하도록 비운다.
+            for (RouteCache cache : caches)
+                cache.clear();
+            return true;
+        }
+    }
+
+    /**
+     * 크기가 제한된 LRU cache
+     */
+    private static final class RouteCache {
+
+        private final Map<String, String> routes;
+
+        RouteCache(int maxSize) {
+            this.routes = new LruMap(maxSize);
+        }
+
+        synchronized String get(String uri) {
+            return routes.get(uri);
+        }
+
+        synchronized void put(String uri, String route) {
+            routes.put(uri, route);
+        }
+
+        synchronized void clear() {
+            routes.clear();
+        }
+    }
+
+    /**
+     * 가장 오래 사용하지 않은 항목을 지우는 LinkedHashMap
+     */
+    private static final class LruMap extends LinkedHashMap<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Access log sampling 설정 클래스.
+ * Sampling 에서 제외된 요청은 body 캐싱, access log 생성을 하지 않는다.
+ * 단, 에러 응답이나 느린 요청은 sampling 과 관계 없이 body 없이 로그를 남긴다.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SamplingPolicy {
+
+    // 로그를 남길 요청의 비율 (0.0 ~ 1.0). 설정하지 않으면 1.0
+    private Double rate;
+
+    // URI prefix 별 초당 최대 로그 개수. 가장 길게 일치하는 prefix 의 제한을 적용한다.
+    private Map<String, Integer> rateLimits;
+
+    // 5xx 응답은 sampling 과 관계 없이 로그를 남길지 여부. 설정하지 않으면 true
+    private Boolean alwaysLogErrors;
+
+    // 이 시간 (ms) 이상 걸린 요청은 sampling 과 관계 없이 로그를 남긴다. 설정하지 않으면 사용하지 않음
+    private Long slowRequestThresholdMillis;
+}
@@ -0,0 +1,101 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SegmentFileAccessLogger 가 기록한 segment 파일을 NDJSON 으로 변환하는 도구.
+ * 각 줄은 AccessLogEncoder 가 만드는 JSON 과 같다.
+ *
+ * <pre>
+ * java -cp ... io.omnipede.system.filter.accesslog.SegmentExporter [-o out.ndjson] &lt;segment 파일 또는 디렉토리&gt;...
+ * </pre>
+ * 디렉토리를 지정하면 디렉토리 안의 segment 파일을 이름 (생성 시간) 순서로 변환한다.
+ * 출력 파일을 지정하지 않으면 표준 출력으로 내보낸다.
+ */
+public final class SegmentExporter {
+
+    private final AccessLogEncoder accessLogEncoder = new AccessLogEncoder();
+
+    /**
+     * Segment 파일들을 NDJSON 으로 변환하는 메소드
+     * @param segments Segment 파일 또는 segment 파일이 있는 디렉토리
+     * @param out NDJSON 을 내보낼 stream. 닫지 않는다.
+     * @return 변환한 레코드 수
+     */
+    public long export(List<Path> segments, OutputStream out) throws IOException {
+        long count = 0;
+        for (Path segment : resolveFiles(segments, SegmentFileAccessLogger.SEGMENT_SUFFIX)) {
+            try {
+                count += SegmentReader.read(segment, accessLog -> {
+                    try {
+                        accessLogEncoder.encodeLine(accessLog, out);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * 디렉토리는 안에 있는 suffix 로 끝나는 파일들을 이름 순서로 펼치는 메소드
+     */
+    static List<Path> resolveFiles(List<Path> paths, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+
+            List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + suffix)) {
+                for (Path child : stream)
+                    children.add(child);
+            }
+            Collections.sort(children);
+            files.addAll(children);
+        }
+        return files;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path output = null;
+        List<Path> segments = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-o".equals(args[i]) && i + 1 < args.length)
+                output = Paths.get(args[++i]);
+            else
+                segments.add(Paths.get(args[i]));
+        }
+
+        if (segments.isEmpty()) {
+            System.err.println("Usage: SegmentExporter [-o out.ndjson] <segment file or directory>...");
+            System.exit(1);
+        }
+
+        OutputStream out = new BufferedOutputStream(output != null ? Files.newOutputStream(output) : System.out, 64 * 1024);
+        try {
+            new SegmentExporter().export(segments, out);
+        } finally {
+            if (output != null)
+                out.close();
+            else
+                out.flush();
+        }
+    }
+}
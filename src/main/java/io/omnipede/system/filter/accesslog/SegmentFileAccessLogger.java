@@ -0,0 +1,270 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.Builder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Access log 를 binary 레코드로 segment 파일에 기록하는 AccessLogger.
+ * Segment 파일은 memory-mapped 되어 있어 레코드 기록은 메모리 복사만 하며, 크기나 시간이 넘으면 새 segment 로 넘어간다.
+ *
+ * 디스크 동기화 (force) 는 레코드마다 하지 않고 forceIntervalMillis 마다 한번씩 묶어서 한다 (group commit).
+ * 새 레코드가 들어오지 않아도 별도 thread 가 forceIntervalMillis 마다 동기화 되지 않은 레코드를 동기화 한다.
+ * Force 되지 않은 레코드도 page cache 에 있으므로 프로세스가 죽어도 남지만, OS 가 죽으면 유실될 수 있다.
+ *
+ * 기록된 segment 는 SegmentExporter 로 NDJSON 으로 변환할 수 있다.
+ * 여러 thread 에서 호출할 수 있지만 내부적으로 동기화 되므로, AsyncAccessLogger 의 delegate 로 사용하는 것을 권장한다.
+ *
+ * 파일 형식
+ * <pre>
+ * header  : magic "ALSG"(4) format version(4)
+ * record  : length(4) crc32(4) AccessLogCodec 레코드(length)
+ * 끝      : length 0 또는 파일 끝
+ * </pre>
+ */
+public class SegmentFileAccessLogger implements AccessLogger, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentFileAccessLogger.class);
+
+    static final byte[] MAGIC = {'A', 'L', 'S', 'G'};
+    static final int FORMAT_VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String DEFAULT_PREFIX = "access";
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final long DEFAULT_ROLL_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DEFAULT_FORCE_INTERVAL_MILLIS = 1000;
+
+    private final Path directory;
+
+    private final String prefix;
+
+    private final long segmentSize;
+
+    private final long rollIntervalMillis;
+
+    private final long forceIntervalMillis;
+
+    private final AccessLogCodec codec = new AccessLogCodec();
+
+    private final CRC32 crc = new CRC32();
+
+    // 레코드가 들어오지 않을 때 동기화 하는 thread. close 시에만 동기화 하면 null
+    private final ScheduledExecutorService forcer;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer mapped;
+
+    private Path currentSegment;
+
+    private long segmentOpenedAt;
+
+    private long lastForcedAt;
+
+    // 마지막 force 이후 기록된 레코드가 있는지 여부
+    private boolean dirty;
+
+    private int sequence;
+
+    private boolean closed;
+
+    private final LongAdder writtenCount = new LongAdder();
+
+    private final LongAdder failedCount = new LongAdder();
+
+    /**
+     * @param directory Segment 파일을 만들 디렉토리. 없으면 만든다.
+     * @param prefix Segment 파일 이름 앞부분. 설정하지 않으면 "access"
+     * @param segmentSize Segment 파일 최대 크기 (bytes). 설정하지 않으면 64MB
+     * @param rollIntervalMillis 이 시간이 지나면 새 segment 를 만든다. 설정하지 않으면 1 시간
+     * @param forceIntervalMillis 디스크 동기화 간격. 설정하지 않으면 1 초, 음수이면 close 시에만 동기화
+     */
+    @Builder
+    private SegmentFileAccessLogger(Path directory, String prefix, long segmentSize, long rollIntervalMillis, long forceIntervalMillis) {
+        if (directory == null)
+            throw new IllegalArgumentException("Segment directory is required");
+
+        this.directory = directory;
+        this.prefix = prefix != null ? prefix : DEFAULT_PREFIX;
+        this.segmentSize = segmentSize > 0 ? segmentSize : DEFAULT_SEGMENT_SIZE;
+        this.rollIntervalMillis = rollIntervalMillis > 0 ? rollIntervalMillis : DEFAULT_ROLL_INTERVAL_MILLIS;
+        this.forceIntervalMillis = forceIntervalMillis != 0 ? forceIntervalMillis : DEFAULT_FORCE_INTERVAL_MILLIS;
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create segment directory " + directory, e);
+        }
+
+        if (this.forceIntervalMillis > 0) {
+            this.forcer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "access-log-segment-forcer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            forcer.scheduleWithFixedDelay(this::forceIdle, this.forceIntervalMillis, this.forceIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.forcer = null;
+        }
+    }
+
+    @Override
+    public synchronized void log(AccessLog accessLog) {
+        long now = System.currentTimeMillis();
+        append(accessLog, now);
+        forceIfDue(now);
+    }
+
+    /**
+     * 여러 레코드를 기록한 뒤 한번만 동기화 여부를 확인한다.
+     */
+    @Override
+    public synchronized void logBatch(List<AccessLog> accessLogs) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < accessLogs.size(); i++)
+            append(accessLogs.get(i), now);
+        forceIfDue(now);
+    }
+
+    private void append(AccessLog accessLog, long now) {
+        if (closed) {
+            failedCount.increment();
+            return;
+        }
+
+        try {
+            int length = codec.encode(accessLog);
+            int required = RECORD_HEADER_SIZE + length;
+            if (mapped == null || mapped.remaining() < required || now - segmentOpenedAt >= rollIntervalMillis)
+                roll(required, now);
+
+            crc.reset();
+            crc.update(codec.buffer(), 0, length);
+            mapped.putInt(length);
+            mapped.putInt((int) crc.getValue());
+            mapped.put(codec.buffer(), 0, length);
+            dirty = true;
+            writtenCount.increment();
+        } catch (IOException | RuntimeException e) {
+            failedCount.increment();
+            logger.error("Failed to write access log segment", e);
+        }
+    }
+
+    /**
+     * 현재 segment 를 닫고 새 segment 를 만드는 메소드
+     * @param required 새 segment 에 기록할 레코드 크기. Segment 크기보다 크면 레코드 크기에 맞춘다.
+     */
+    private void roll(int required, long now) throws IOException {
+        closeSegment();
+
+        long size = Math.max(segmentSize, FILE_HEADER_SIZE + (long) required);
+        Path segment = directory.resolve(String.format("%s-%013d-%06d%s", prefix, now, sequence++, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        mapped.put(MAGIC);
+        mapped.putInt(FORMAT_VERSION);
+        currentSegment = segment;
+        segmentOpenedAt = now;
+    }
+
+    /**
+     * Forcer thread 에서 실행되는 메소드
+     */
+    private synchronized void forceIdle() {
+        if (closed)
+            return;
+
+        try {
+            forceIfDue(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            // 예외로 scheduled task 가 멈추지 않도록 한다.
+            logger.error("Failed to force access log segment", e);
+        }
+    }
+
+    /**
+     * @return 디스크에 동기화 되지 않은 레코드가 있는지 여부
+     */
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    private void forceIfDue(long now) {
+        if (!dirty || mapped == null || forceIntervalMillis < 0 || now - lastForcedAt < forceIntervalMillis)
+            return;
+
+        mapped.force();
+        lastForcedAt = now;
+        dirty = false;
+    }
+
+    /**
+     * 현재 segment 를 동기화하고 기록된 크기 만큼 잘라낸 뒤 닫는 메소드
+     */
+    private void closeSegment() throws IOException {
+        if (mapped == null)
+            return;
+
+        mapped.force();
+        dirty = false;
+        int written = mapped.position();
+        mapped = null;
+        try {
+            channel.truncate(written);
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * @return 현재 기록 중인 segment 파일. 아직 없으면 null
+     */
+    public synchronized Path getCurrentSegment() {
+        return currentSegment;
+    }
+
+    /**
+     * @return 기록한 레코드 수
+     */
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    /**
+     * @return 기록하지 못한 레코드 수
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        if (forcer != null)
+            forcer.shutdown();
+        closeSegment();
+    }
+}
@@ -0,0 +1,70 @@
+package io.omnipede.system.filter.accesslog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * SegmentFileAccessLogger 가 기록한 segment 파일을 읽는 객체.
+ * 기록 중에 프로세스가 죽어 마지막 레코드가 손상된 경우 손상된 레코드 직전까지만 읽는다.
+ */
+final class SegmentReader {
+
+    private SegmentReader() {
+    }
+
+    /**
+     * Segment 파일의 레코드를 순서대로 읽는 메소드
+     * @param segment Segment 파일
+     * @param consumer 읽은 레코드를 받을 consumer
+     * @return 읽은 레코드 수
+     * @throws IOException Segment 파일이 아니거나 읽을 수 없는 경우
+     */
+    static long read(Path segment, Consumer<AccessLog> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, consumer, segment);
+        }
+    }
+
+    private static long read(ByteBuffer buffer, Consumer<AccessLog> consumer, Path segment) throws IOException {
+        if (buffer.remaining() < SegmentFileAccessLogger.FILE_HEADER_SIZE)
+            throw new IOException("Not an access log segment: " + segment);
+
+        byte[] magic = new byte[SegmentFileAccessLogger.MAGIC.length];
+        buffer.get(magic);
+        int version = buffer.getInt();
+        if (!Arrays.equals(magic, SegmentFileAccessLogger.MAGIC) || version != SegmentFileAccessLogger.FORMAT_VERSION)
+            throw new IOException("Not an access log segment: " + segment);
+
+        CRC32 crc = new CRC32();
+        byte[] record = new byte[1024];
+        long count = 0;
+        while (buffer.remaining() >= SegmentFileAccessLogger.RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            // 0 은 기록되지 않은 영역
+            if (length <= 0 || length > buffer.remaining())
+                break;
+
+            if (record.length < length)
+                record = new byte[Math.max(length, record.length * 2)];
+            buffer.get(record, 0, length);
+
+            crc.reset();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != checksum)
+                break;
+
+            consumer.accept(AccessLogCodec.decode(record, 0, length));
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,59 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * 느린 요청 감시 설정 클래스.
+ * 처리 중인 요청이 threshold 보다 오래 걸리면 요청을 처리하는 thread 의 stack trace 를 몇 차례 수집하여
+ * 로그의 stackSamples 사용자 정의 필드로 남긴다.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SlowRequestPolicy {
+
+    private static final long DEFAULT_THRESHOLD_MILLIS = 1000;
+    private static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 200;
+    private static final int DEFAULT_MAX_SAMPLES = 3;
+    private static final int DEFAULT_MAX_STACK_DEPTH = 32;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    // 이 시간 (ms) 보다 오래 처리 중인 요청의 stack trace 를 수집한다. 설정하지 않으면 1000
+    private Long thresholdMillis;
+
+    // 감시 thread 가 처리 중인 요청을 확인하는 간격이자 stack trace 수집 간격 (ms). 설정하지 않으면 200
+    private Long sampleIntervalMillis;
+
+    // 요청 하나에서 수집할 최대 stack trace 수. 설정하지 않으면 3
+    private Integer maxSamples;
+
+    // Stack trace 하나에 남길 최대 frame 수. 설정하지 않으면 32
+    private Integer maxStackDepth;
+
+    // 동시에 감시할 수 있는 최대 요청 수. 넘는 요청은 감시하지 않는다. 설정하지 않으면 1024
+    private Integer maxInFlight;
+
+    long resolveThresholdMillis() {
+        return thresholdMillis != null ? thresholdMillis : DEFAULT_THRESHOLD_MILLIS;
+    }
+
+    long resolveSampleIntervalMillis() {
+        return sampleIntervalMillis != null ? sampleIntervalMillis : DEFAULT_SAMPLE_INTERVAL_MILLIS;
+    }
+
+    int resolveMaxSamples() {
+        return maxSamples != null ? maxSamples : DEFAULT_MAX_SAMPLES;
+    }
+
+    int resolveMaxStackDepth() {
+        return maxStackDepth != null ? maxStackDepth : DEFAULT_MAX_STACK_DEPTH;
+    }
+
+    int resolveMaxInFlight() {
+        return maxInFlight != null ? maxInFlight : DEFAULT_MAX_IN_FLIGHT;
+    }
+}
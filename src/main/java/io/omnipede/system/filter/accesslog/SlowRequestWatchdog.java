@@ -0,0 +1,158 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 처리 중인 요청을 감시하여 느린 요청의 thread stack trace 를 수집하는 객체.
+ * 요청은 lock 없는 slot 배열에 등록되며, 하나의 감시 thread 가 주기적으로 배열을 확인한다.
+ * 빠른 요청은 등록과 해제 (CAS 두 번) 외의 비용이 없다.
+ */
+final class SlowRequestWatchdog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowRequestWatchdog.class);
+
+    private final AtomicReferenceArray<Entry> slots;
+
+    private final long thresholdNanos;
+
+    private final long sampleIntervalNanos;
+
+    private final int maxSamples;
+
+    private final int maxStackDepth;
+
+    private final ScheduledExecutorService timer;
+
+    // Slot 이 가득 차서 감시하지 못한 요청 수
+    private final LongAdder untrackedCount = new LongAdder();
+
+    SlowRequestWatchdog(SlowRequestPolicy policy) {
+        this.slots = new AtomicReferenceArray<>(Math.max(1, policy.resolveMaxInFlight()));
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(policy.resolveThresholdMillis());
+        this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(policy.resolveSampleIntervalMillis());
+        this.maxSamples = policy.resolveMaxSamples();
+        this.maxStackDepth = policy.resolveMaxStackDepth();
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "access-log-slow-request-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, policy.resolveSampleIntervalMillis());
+        timer.scheduleWithFixedDelay(this::scan, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 현재 thread 가 처리하는 요청을 감시 대상으로 등록하는 메소드
+     * @return 등록된 entry. Slot 이 가득 차면 null
+     */
+    Entry register() {
+        Thread thread = Thread.currentThread();
+        Entry entry = new Entry(thread, System.nanoTime());
+        int length = slots.length();
+        int start = (int) (thread.getId() % length);
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, entry)) {
+                entry.slot = index;
+                return entry;
+            }
+        }
+        untrackedCount.increment();
+        return null;
+    }
+
+    /**
+     * 감시를 끝내는 메소드. 여러 번 호출해도 된다.
+     * Stack trace 수집 중이면 수집이 끝날 때 까지 기다리므로, 해제 후에는 요청과 무관한 stack trace 가 수집되지 않는다.
+     */
+    void unregister(Entry entry) {
+        synchronized (entry) {
+            slots.compareAndSet(entry.slot, entry, null);
+        }
+    }
+
+    long getUntrackedCount() {
+        return untrackedCount.sum();
+    }
+
+    private void scan() {
+        try {
+            long now = System.nanoTime();
+            for (int i = 0; i < slots.length(); i++) {
+                Entry entry = slots.get(i);
+                if (entry != null && now - entry.startNanos >= thresholdNanos)
+                    entry.sample(now);
+            }
+        } catch (RuntimeException e) {
+            // 예외로 scheduled task 가 멈추지 않도록 한다.
+            logger.warn("Slow request watchdog scan failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * 감시 중인 요청.
+     * Stack trace 는 감시 thread 가 추가하고, 요청 thread 는 감시가 끝난 뒤 읽으므로 entry 단위로 동기화한다.
+     */
+    final class Entry {
+
+        private final Thread thread;
+
+        private final long startNanos;
+
+        private int slot;
+
+        private final StringBuilder samples = new StringBuilder();
+
+        private int sampleCount;
+
+        private long lastSampleNanos;
+
+        private Entry(Thread thread, long startNanos) {
+            this.thread = thread;
+            this.startNanos = startNanos;
+        }
+
+        private synchronized void sample(long now) {
+            if (sampleCount >= maxSamples || sampleCount > 0 && now - lastSampleNanos < sampleIntervalNanos)
+                return;
+            // 감시가 끝난 요청의 thread 는 이미 다른 일을 하고 있다.
+            if (slots.get(slot) != this)
+                return;
+
+            StackTraceElement[] stackTrace = thread.getStackTrace();
+            if (sampleCount > 0)
+                samples.append('\n');
+            samples.append("sample ").append(sampleCount + 1)
+                    .append(" at +").append(TimeUnit.NANOSECONDS.toMillis(now - startNanos)).append("ms")
+                    .append(" [").append(thread.getName()).append(']');
+            int depth = Math.min(stackTrace.length, maxStackDepth);
+            for (int i = 0; i < depth; i++)
+                samples.append("\n\tat ").append(stackTrace[i]);
+            if (stackTrace.length > depth)
+                samples.append("\n\t... ").append(stackTrace.length - depth).append(" more");
+            sampleCount++;
+            lastSampleNanos = now;
+        }
+
+        /**
+         * @return 수집한 stack trace. 없으면 null
+         */
+        synchronized String samples() {
+            return sampleCount > 0 ? samples.toString() : null;
+        }
+    }
+}
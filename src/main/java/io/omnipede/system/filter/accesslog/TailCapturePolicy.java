@@ -0,0 +1,52 @@
+package io.omnipede.system.filter.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * Tail based body capture 설정 클래스.
+ * 모든 요청의 body 를 작은 buffer 에 캐싱해 두었다가, 요청 처리가 끝난 뒤
+ * 에러 응답, 느린 요청, 예외가 발생한 요청의 body 만 로그에 남기고 나머지는 바로 버린다.
+ * enableContentLogging 이 true 일 때만 적용된다.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TailCapturePolicy {
+
+    private static final int DEFAULT_MAX_CAPTURE_LENGTH = 4096;
+    private static final int DEFAULT_MIN_STATUS = 400;
+
+    // Request, response body 별로 캐싱할 최대 바이트 수. 설정하지 않으면 4096
+    // 이보다 긴 body 는 앞부분만 남기고 "...(truncated)" 를 붙인다. JSON 등은 앞부분에 요청을 식별할 정보가 있으므로 끝부분 (ring) 대신 앞부분을 남긴다.
+    private Integer maxCaptureLength;
+
+    // 이 값 이상의 status 는 body 를 남긴다. 설정하지 않으면 400
+    private Integer minStatus;
+
+    // 이 시간 (ms) 이상 걸린 요청은 body 를 남긴다. 설정하지 않으면 사용하지 않음
+    private Long slowRequestThresholdMillis;
+
+    int resolveMaxCaptureLength() {
+        return maxCaptureLength != null ? maxCaptureLength : DEFAULT_MAX_CAPTURE_LENGTH;
+    }
+
+    /**
+     * 요청 처리 결과를 보고 캐싱한 body 를 남길지 결정하는 메소드
+     * @param status 응답 status
+     * @param elapsedMillis 요청 처리 소요 시간
+     * @param failed 요청 처리 중 예외 발생 여부
+     */
+    boolean shouldKeep(int status, long elapsedMillis, boolean failed) {
+        if (failed)
+            return true;
+
+        if (status >= (minStatus != null ? minStatus : DEFAULT_MIN_STATUS))
+            return true;
+
+        return slowRequestThresholdMillis != null && elapsedMillis >= slowRequestThresholdMillis;
+    }
+}
@@ -0,0 +1,166 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * White list 처럼 URI 규칙 목록에 요청이 해당하는지 확인하는 객체.
+ * 생성 시점에 규칙을 prefix trie 로 컴파일하므로 조회 비용은 규칙 개수와 관계 없이 URI 길이에 비례한다.
+ *
+ * 규칙 형식
+ * <ul>
+ *     <li>"/api/v1/health" : 해당 문자열로 시작하는 모든 URI</li>
+ *     <li>"/static/**&#47;*.js" : Ant style pattern. *, ?, {} 가 포함되면 pattern 으로 취급한다.</li>
+ *     <li>"GET /api/v1/users" : 앞에 HTTP method 를 붙이면 해당 method 의 요청에만 적용한다.</li>
+ * </ul>
+ */
+class UriMatcher {
+
+    private static final AntPathMatcher antPathMatcher = new AntPathMatcher();
+
+    // 규칙의 literal prefix 를 key 로 하는 trie. 값에는 상위 prefix 의 규칙까지 합쳐져 있다.
+    private final PrefixTrie<Rules> trie = new PrefixTrie<>();
+
+    private final boolean empty;
+
+    UriMatcher(List<String> rules) {
+        List<Rule> parsed = new ArrayList<>();
+        if (rules != null) {
+            for (String rule : rules) {
+                if (rule != null && !rule.trim().isEmpty())
+                    parsed.add(Rule.parse(rule.trim()));
+            }
+        }
+        this.empty = parsed.isEmpty();
+
+        // 짧은 prefix 부터 넣어서 하위 prefix 가 상위 prefix 의 규칙을 물려받도록 한다.
+        parsed.sort(Comparator.comparingInt(rule -> rule.literalPrefix.length()));
+        for (Rule rule : parsed) {
+            Rules rulesAtPrefix = trie.get(rule.literalPrefix);
+            if (rulesAtPrefix == null) {
+                Rules inherited = trie.findLongestPrefix(rule.literalPrefix);
+                rulesAtPrefix = inherited != null ? inherited.copy() : new Rules();
+                trie.put(rule.literalPrefix, rulesAtPrefix);
+            }
+            rulesAtPrefix.add(rule);
+            // 이미 들어간 하위 prefix 는 없으므로 (길이 순 정렬) 전파할 필요 없음
+        }
+    }
+
+    /**
+     * 요청이 규칙 중 하나에 해당하는지 확인하는 메소드
+     * @param method HTTP method
+     * @param uri 요청 URI
+     */
+    boolean matches(String method, String uri) {
+        if (empty || uri == null)
+            return false;
+
+        Rules rules = trie.findLongestPrefix(uri);
+        return rules != null && rules.matches(method, uri);
+    }
+
+    /**
+     * 하나의 규칙
+     */
+    private static class Rule {
+
+        // 적용할 method. null 이면 모든 method
+        private final String method;
+
+        // Pattern 이 아닐 경우 규칙 전체, pattern 일 경우 첫 wildcard 이전 까지의 문자열
+        private final String literalPrefix;
+
+        // Ant style pattern. Prefix 규칙일 경우 null
+        private final String pattern;
+
+        private Rule(String method, String literalPrefix, String pattern) {
+            this.method = method;
+            this.literalPrefix = literalPrefix;
+            this.pattern = pattern;
+        }
+
+        static Rule parse(String rule) {
+            String method = null;
+            String path = rule;
+            int space = rule.indexOf(' ');
+            if (space > 0) {
+                method = rule.substring(0, space);
+                path = rule.substring(space + 1).trim();
+            }
+
+            int wildcard = indexOfWildcard(path);
+            if (wildcard < 0)
+                return new Rule(method, path, null);
+            return new Rule(method, path.substring(0, wildcard), path);
+        }
+
+        private static int indexOfWildcard(String path) {
+            for (int i = 0; i < path.length(); i++) {
+                char c = path.charAt(i);
+                if (c == '*' || c == '?' || c == '{')
+                    return i;
+            }
+            return -1;
+        }
+
+        boolean matchesMethod(String requestMethod) {
+            return method == null || method.equalsIgnoreCase(requestMethod);
+        }
+    }
+
+    /**
+     * 하나의 prefix 에 해당하는 규칙 모음
+     */
+    private static class Rules {
+
+        // Prefix 규칙이 모든 method 에 적용되는지 여부
+        private boolean allMethods = false;
+
+        // Method 별 prefix 규칙
+        private final List<String> methods = new ArrayList<>();
+
+        // Pattern 규칙
+        private final List<Rule> patterns = new ArrayList<>();
+
+        void add(Rule rule) {
+            if (rule.pattern != null) {
+                patterns.add(rule);
+                return;
+            }
+
+            if (rule.method == null)
+                allMethods = true;
+            else
+                methods.add(rule.method);
+        }
+
+        Rules copy() {
+            Rules copy = new Rules();
+            copy.allMethods = allMethods;
+            copy.methods.addAll(methods);
+            copy.patterns.addAll(patterns);
+            return copy;
+        }
+
+        boolean matches(String method, String uri) {
+            if (allMethods)
+                return true;
+
+            for (int i = 0; i < methods.size(); i++) {
+                if (methods.get(i).equalsIgnoreCase(method))
+                    return true;
+            }
+
+            for (int i = 0; i < patterns.size(); i++) {
+                Rule rule = patterns.get(i);
+                if (rule.matchesMethod(method) && antPathMatcher.match(rule.pattern, uri))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
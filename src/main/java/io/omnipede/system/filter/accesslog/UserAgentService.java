@@ -2,32 +2,170 @@ package io.omnipede.system.filter.accesslog;
 
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * User agent 분석 시 사용하는 클래스
+ * User agent 분석 시 사용하는 클래스.
+ *
+ * UserAgentAnalyzer 는 생성에 수 초가 걸리고 메모리를 많이 사용하므로 모든 필터가 하나의 객체를 공유한다.
+ * Analyzer 는 background thread 에서 초기화되며, 초기화가 끝나기 전에는 device class 를 분석하지 않는다.
+ *
+ * 조회 순서
+ * <ul>
+ *     <li>L1 : 작은 direct-mapped 배열. Lock 없이 User-Agent 문자열이 정확히 일치할 때만 사용한다.</li>
+ *     <li>L2 : yauaa analyzer 내부 cache</li>
+ * </ul>
  */
-class UserAgentService {
+public final class UserAgentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserAgentService.class);
+
+    // yauaa cache 기본 크기
+    static final int DEFAULT_CACHE_SIZE = 25000;
+
+    // L1 cache 크기. 2 의 거듭제곱이어야 한다.
+    private static final int L1_CACHE_SIZE = 1024;
+
+    private static volatile UserAgentService instance;
+
+    // 초기화가 끝나기 전에는 null
+    private volatile UserAgentAnalyzer uaa;
 
-    private final UserAgentAnalyzer uaa;
+    private final CountDownLatch ready = new CountDownLatch(1);
 
-    public UserAgentService() {
-        uaa = UserAgentAnalyzer
-                .newBuilder()
-                .withField("DeviceClass")
-                .withCache(25000)
-                .build();
+    private final Entry[] l1 = new Entry[L1_CACHE_SIZE];
+
+    private final int cacheSize;
+
+    private final LongAdder l1HitCount = new LongAdder();
+    private final LongAdder l1MissCount = new LongAdder();
+    private final LongAdder notReadyCount = new LongAdder();
+
+    private UserAgentService(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * 공유 객체를 가져오는 메소드. 처음 호출될 때 analyzer 초기화를 시작한다.
+     * @param cacheSize yauaa cache 크기. 0 이하이면 기본값. 처음 호출할 때 넘긴 값만 적용된다.
+     */
+    static UserAgentService getInstance(int cacheSize) {
+        UserAgentService service = instance;
+        if (service != null)
+            return service;
+
+        synchronized (UserAgentService.class) {
+            if (instance == null) {
+                service = new UserAgentService(cacheSize > 0 ? cacheSize : DEFAULT_CACHE_SIZE);
+                service.startInitialization();
+                instance = service;
+            }
+            return instance;
+        }
+    }
+
+    static UserAgentService getInstance() {
+        return getInstance(DEFAULT_CACHE_SIZE);
+    }
+
+    private void startInitialization() {
+        Thread initializer = new Thread(() -> {
+            try {
+                uaa = UserAgentAnalyzer
+                        .newBuilder()
+                        .withField("DeviceClass")
+                        .withCache(cacheSize)
+                        .build();
+            } catch (RuntimeException e) {
+                logger.error("Failed to initialize user agent analyzer", e);
+            } finally {
+                ready.countDown();
+            }
+        }, "user-agent-analyzer-init");
+        initializer.setDaemon(true);
+        initializer.start();
     }
 
     /**
      * User-Agent 헤더로부터 device class 를 추출하는 메소드
      * @param userAgent User-Agent header value
-     * @return Device class
+     * @return Device class. Analyzer 가 아직 준비되지 않았으면 null
      */
     public String getDeviceClass(String userAgent) {
         if (userAgent == null || userAgent.length() == 0)
             return null;
 
-        UserAgent parsedUserAgent = uaa.parse(userAgent);
-        return parsedUserAgent.getValue("DeviceClass");
+        int index = userAgent.hashCode() & (L1_CACHE_SIZE - 1);
+        Entry entry = l1[index];
+        if (entry != null && entry.userAgent.equals(userAgent)) {
+            l1HitCount.increment();
+            return entry.deviceClass;
+        }
+
+        UserAgentAnalyzer analyzer = uaa;
+        if (analyzer == null) {
+            notReadyCount.increment();
+            return null;
+        }
+
+        l1MissCount.increment();
+        UserAgent parsedUserAgent = analyzer.parse(userAgent);
+        String deviceClass = parsedUserAgent.getValue("DeviceClass");
+        // Entry 의 필드는 final 이므로 lock 없이 게시해도 안전하다.
+        l1[index] = new Entry(userAgent, deviceClass);
+        return deviceClass;
+    }
+
+    /**
+     * @return Analyzer 초기화가 끝났는지 여부
+     */
+    public boolean isReady() {
+        return uaa != null;
+    }
+
+    /**
+     * Analyzer 초기화가 끝날 때 까지 기다리는 메소드
+     * @return 제한 시간 안에 초기화가 끝났는지 여부
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit) && isReady();
+    }
+
+    /**
+     * @return L1 cache 에서 찾은 횟수
+     */
+    public long getL1HitCount() {
+        return l1HitCount.sum();
+    }
+
+    /**
+     * @return L1 cache 에 없어 analyzer 로 분석한 횟수
+     */
+    public long getL1MissCount() {
+        return l1MissCount.sum();
+    }
+
+    /**
+     * @return Analyzer 가 준비되지 않아 분석하지 못한 횟수
+     */
+    public long getNotReadyCount() {
+        return notReadyCount.sum();
+    }
+
+    private static final class Entry {
+
+        private final String userAgent;
+
+        private final String deviceClass;
+
+        private Entry(String userAgent, String deviceClass) {
+            this.userAgent = userAgent;
+            this.deviceClass = deviceClass;
+        }
     }
 }
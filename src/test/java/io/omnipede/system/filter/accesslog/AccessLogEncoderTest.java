@@ -0,0 +1,116 @@
+package io.omnipede.system.filter.accesslog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Access log encoder 테스트
+ */
+class AccessLogEncoderTest {
+
+    private final AccessLogEncoder encoder = new AccessLogEncoder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * ObjectMapper 로 직렬화 한 결과와 같은 필드를 남기는지 테스트
+     */
+    @Test
+    public void test_same_fields_as_object_mapper() throws Exception {
+
+        // Given
+        AccessLog accessLog = givenAccessLog();
+        accessLog.setRequestBodyBytes("{\"message\":\"안녕\\n\"}".getBytes(StandardCharsets.UTF_8));
+        accessLog.addExtraField("tenant", "sample");
+
+        // When
+        String encoded = encoder.encodeToString(accessLog);
+
+        // Then
+        assertThat(encoded).doesNotContain("\n");
+        JsonNode expected = objectMapper.readTree(objectMapper.writeValueAsString(accessLog));
+        assertThat(objectMapper.readTree(encoded)).isEqualTo(expected);
+        assertThat(objectMapper.readTree(encoded).get("requestBody").asText()).isEqualTo("{\"message\":\"안녕\\n\"}");
+    }
+
+    /**
+     * NDJSON 형식으로 여러 줄을 기록하는 테스트
+     */
+    @Test
+    public void test_encode_lines() throws Exception {
+
+        // Given
+        AccessLog accessLog = givenAccessLog();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        encoder.encodeLine(accessLog, out);
+        encoder.encodeLine(accessLog, out);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[1]).get("uri").asText()).isEqualTo("/api/v1/foo/bar");
+        assertThat(objectMapper.readTree(lines[1]).get("query").isNull()).isTrue();
+    }
+
+    /**
+     * 올바른 UTF-8 이 아닌 body 바이트도 올바른 UTF-8 JSON 으로 기록하는지 테스트
+     */
+    @Test
+    public void test_invalid_utf8_body() throws Exception {
+
+        // Given
+        AccessLog accessLog = givenAccessLog();
+        // Latin-1 로 인코딩 된 "café"
+        accessLog.setRequestBodyBytes("caf\u00e9".getBytes(StandardCharsets.ISO_8859_1));
+        // 3 bytes 문자 "한" 의 앞 2 bytes 에서 잘린 body
+        accessLog.setResponseBodyBytes(new byte[]{'a', 'b', (byte) 0xed, (byte) 0x95});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        encoder.encode(accessLog, out);
+
+        // Then
+        String encoded = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(out.toByteArray()))
+                .toString();
+        JsonNode json = objectMapper.readTree(encoded);
+        assertThat(json.get("requestBody").asText()).isEqualTo("caf\uFFFD");
+        assertThat(json.get("responseBody").asText()).startsWith("ab\uFFFD");
+    }
+
+    private AccessLog givenAccessLog() {
+        Map<String, String> requestHeaders = new LinkedHashMap<>();
+        requestHeaders.put("SAMPLE-HEADER", "12345");
+        Map<String, String> responseHeaders = new LinkedHashMap<>();
+        responseHeaders.put("Content-Type", "application/json");
+
+        return AccessLog.builder()
+                .requestAt(new Date(1000))
+                .responseAt(new Date(1010))
+                .userAgent("SampleUserAgent")
+                .hostName("localhost")
+                .ip("127.0.0.1")
+                .uri("/api/v1/foo/bar")
+                .method("POST")
+                .requestHeaders(requestHeaders)
+                .status(200)
+                .responseHeaders(responseHeaders)
+                .responseBody("Hello \"response\"")
+                .elapsed(10)
+                .build();
+    }
+}
@@ -1,21 +1,42 @@
 package io.omnipede.system.filter.accesslog;
 
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.HandlerMapping;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -33,6 +54,12 @@ class AccessLogFilterTest {
     @Mock
     private FilterChain filterChain;
 
+    @BeforeAll
+    public static void setUp() throws InterruptedException {
+        // DeviceClass 헤더는 user agent analyzer 초기화가 끝난 뒤에 남는다.
+        assertThat(UserAgentService.getInstance().awaitReady(1, TimeUnit.MINUTES)).isTrue();
+    }
+
     /**
      * Content 를 로깅하는 테스트
      */
@@ -57,6 +84,7 @@ class AccessLogFilterTest {
             assertThat(accessLog.getHostName()).isNotNull();
             assertThat(accessLog.getIp()).isNotNull();
             assertThat(accessLog.getUri()).isEqualTo("/api/v1/foo/bar");
+            assertThat(accessLog.getRoute()).isEqualTo("/api/v1/foo/bar");
             assertThat(accessLog.getQuery()).isEqualTo("?hello=world");
             assertThat(accessLog.getMethod()).isEqualToIgnoringCase("post");
             assertThat(accessLog.getRequestHeaders().get("SAMPLE-HEADER")).isEqualTo("12345");
@@ -192,6 +220,895 @@ class AccessLogFilterTest {
         // Expect no exception
     }
 
+    /**
+     * 어플리케이션이 읽은 request body 가 그대로 전달되고 로그에도 남는지 테스트
+     */
+    @Test
+    public void test_request_body_read_by_application() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(1024)
+                .build();
+
+        AtomicReference<String> logged = new AtomicReference<>();
+        accessLogger = accessLog -> logged.set(accessLog.getRequestBody());
+
+        // 어플리케이션이 body 를 읽는 상황을 흉내냄
+        AtomicReference<String> read = new AtomicReference<>();
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            HttpServletRequest request = (HttpServletRequest) invocationOnMock.getArguments()[0];
+            read.set(StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8));
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        assertThat(read.get()).isEqualTo("Hello world");
+        assertThat(logged.get()).isEqualTo("Hello world");
+    }
+
+    /**
+     * Sampling 에서 제외된 정상 요청은 로그를 남기지 않는지 테스트
+     */
+    @Test
+    public void test_sampled_out() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .samplingPolicy(SamplingPolicy.builder().rate(0.0).build())
+                .build();
+
+        accessLogger = accessLog -> fail("Should not reach here");
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        // 원본 request, response 가 그대로 전달되어야 함
+        verify(filterChain).doFilter(httpServletRequest, httpServletResponse);
+    }
+
+    /**
+     * Sampling 에서 제외되어도 에러 응답은 body 없이 로그를 남기는지 테스트
+     */
+    @Test
+    public void test_sampled_out_error() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+        httpServletResponse.setStatus(503);
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .samplingPolicy(SamplingPolicy.builder().rate(0.0).build())
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        assertThat(logged.get()).isNotNull();
+        assertThat(logged.get().getStatus()).isEqualTo(503);
+        assertThat(logged.get().getRequestBody()).isNull();
+        assertThat(logged.get().getResponseBody()).isNull();
+    }
+
+    /**
+     * Sampling 에서 제외되어도 예외가 발생한 요청은 500 으로 로그를 남기고 예외를 그대로 던지는지 테스트
+     */
+    @Test
+    public void test_sampled_out_exception() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .samplingPolicy(SamplingPolicy.builder().rate(0.0).build())
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        doThrow(new IllegalStateException("Failed"))
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        assertThatThrownBy(() -> accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Then
+        assertThat(logged.get()).isNotNull();
+        assertThat(logged.get().getStatus()).isEqualTo(500);
+    }
+
+    /**
+     * Content 를 로깅하지 않을 때도 예외가 발생한 요청을 500 으로 로그를 남기고 예외를 그대로 던지는지 테스트
+     */
+    @Test
+    public void test_no_content_logging_exception() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(false)
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        doThrow(new IllegalStateException("Failed"))
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        assertThatThrownBy(() -> accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Then
+        assertThat(logged.get()).isNotNull();
+        assertThat(logged.get().getStatus()).isEqualTo(500);
+    }
+
+    /**
+     * Tail capture 시 정상 응답의 body 는 남기지 않는지 테스트
+     */
+    @Test
+    public void test_tail_capture_success() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(1024)
+                .tailCapturePolicy(TailCapturePolicy.builder().build())
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        assertThat(logged.get().getStatus()).isEqualTo(200);
+        assertThat(logged.get().getRequestBody()).isNull();
+        assertThat(logged.get().getResponseBody()).isNull();
+    }
+
+    /**
+     * Tail capture 시 예외가 발생한 요청의 body 를 남기는지 테스트
+     */
+    @Test
+    public void test_tail_capture_failure() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(1024)
+                .tailCapturePolicy(TailCapturePolicy.builder().maxCaptureLength(5).build())
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        // 어플리케이션이 body 를 읽은 뒤 예외를 던지는 상황
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            HttpServletRequest request = (HttpServletRequest) invocationOnMock.getArguments()[0];
+            StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8);
+            throw new IllegalStateException("Failed");
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        assertThatThrownBy(() -> accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Then
+        assertThat(logged.get().getStatus()).isEqualTo(500);
+        assertThat(logged.get().getRequestBody()).isEqualTo("Hello...(truncated)");
+        assertThat(logged.get().getResponseBody()).isEqualTo("No response data");
+    }
+
+    /**
+     * Tail capture 시 최대 길이에 걸친 UTF-8 문자를 자르지 않고 빼는지 테스트
+     */
+    @Test
+    public void test_tail_capture_utf8_boundary() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        // "abc" 3 bytes + "한" 3 bytes. 5 bytes 에서 자르면 "한" 이 걸친다.
+        httpServletRequest.setContent("abc한글".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(1024)
+                .tailCapturePolicy(TailCapturePolicy.builder().maxCaptureLength(5).build())
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            HttpServletRequest request = (HttpServletRequest) invocationOnMock.getArguments()[0];
+            StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8);
+            throw new IllegalStateException("Failed");
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        assertThatThrownBy(() -> accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Then
+        assertThat(logged.get().requestBodyBytes())
+                .isEqualTo("abc...(truncated)".getBytes(StandardCharsets.UTF_8));
+        assertThat(logged.get().getRequestBody()).isEqualTo("abc...(truncated)");
+    }
+
+    /**
+     * 예외가 발생한 요청의 로그를 남기다 실패해도 어플리케이션의 예외를 그대로 던지는지 테스트
+     */
+    @Test
+    public void test_logging_failure_does_not_mask_exception() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .build();
+
+        IllegalStateException loggingFailure = new IllegalStateException("Logging failed");
+        accessLogger = accessLog -> {
+            throw loggingFailure;
+        };
+
+        ServletException applicationFailure = new ServletException("Failed");
+        doThrow(applicationFailure).when(filterChain).doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        Throwable thrown = catchThrowable(() -> accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain));
+
+        // Then
+        assertThat(thrown).isSameAs(applicationFailure);
+        assertThat(thrown.getSuppressed()).containsExactly(loggingFailure);
+    }
+
+    /**
+     * Writer 로 작성된 응답을 캐싱하는 테스트
+     */
+    @Test
+    public void test_writer_capture() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = new MockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(1024)
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        // 어플리케이션이 writer 로 응답하는 상황. Surrogate pair 가 write 호출 사이에 나뉜다.
+        String emoji = "\uD83D\uDE00";
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            HttpServletResponse response = (HttpServletResponse) invocationOnMock.getArguments()[1];
+            response.setContentType("text/plain;charset=ISO-8859-1");
+            PrintWriter writer = response.getWriter();
+            writer.print("caf\u00e9 ");
+            writer.write(emoji.charAt(0));
+            writer.write(emoji.charAt(1));
+            writer.flush();
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        // ISO-8859-1 로 표현할 수 없는 문자는 원본 응답과 같이 ? 로 바뀐다.
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("caf\u00e9 ?");
+        assertThat(logged.get().getResponseBody()).isEqualTo("caf\u00e9 ?");
+    }
+
+    /**
+     * Writer 로 작성된 응답이 최대 길이를 넘어도 전체 크기를 바이트 단위로 세는지 테스트
+     */
+    @Test
+    public void test_writer_capture_size() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = new MockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(4)
+                .contentCapturePolicy(ContentCapturePolicy.builder().build())
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            HttpServletResponse response = (HttpServletResponse) invocationOnMock.getArguments()[1];
+            response.setContentType("text/plain;charset=UTF-8");
+            PrintWriter writer = response.getWriter();
+            writer.print("\uD55C\uAE00 ");
+            for (char c : "\uC751\uB2F5".toCharArray())
+                writer.write(c);
+            writer.flush();
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        // 한글 4 글자 (각 3 bytes) 와 공백
+        assertThat(logged.get().getResponseBodySize()).isEqualTo(13L);
+    }
+
+    /**
+     * TRUNCATE 로 남기는 body 가 최대 길이에 걸친 UTF-8 문자를 자르지 않고 빼는지 테스트
+     */
+    @Test
+    public void test_truncate_utf8_boundary() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        httpServletRequest.setContentType("text/plain;charset=UTF-8");
+        // "ab" 2 bytes + "한" 3 bytes. 4 bytes 에서 자르면 "한" 이 걸친다.
+        httpServletRequest.setContent("ab\uD55C\uAE00".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse httpServletResponse = new MockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(4)
+                .contentCapturePolicy(ContentCapturePolicy.builder()
+                        .contentTypeRules(Collections.singletonMap("text/plain", CaptureMode.TRUNCATE))
+                        .build())
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            HttpServletRequest request = (HttpServletRequest) invocationOnMock.getArguments()[0];
+            StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8);
+            HttpServletResponse response = (HttpServletResponse) invocationOnMock.getArguments()[1];
+            response.setContentType("text/plain;charset=UTF-8");
+            PrintWriter writer = response.getWriter();
+            writer.print("ab\uD55C\uAE00");
+            writer.flush();
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        byte[] expected = "ab...(truncated)".getBytes(StandardCharsets.UTF_8);
+        assertThat(logged.get().requestBodyBytes()).isEqualTo(expected);
+        assertThat(logged.get().responseBodyBytes()).isEqualTo(expected);
+        assertThat(logged.get().getRequestBodySize()).isEqualTo(8L);
+        assertThat(logged.get().getResponseBodySize()).isEqualTo(8L);
+    }
+
+    /**
+     * Content type 에 따라 binary body 를 캐싱하지 않는 테스트
+     */
+    @Test
+    public void test_content_capture_policy() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        httpServletRequest.setContentType("multipart/form-data; boundary=foo");
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(1024)
+                .contentCapturePolicy(ContentCapturePolicy.builder()
+                        .contentTypeRules(Collections.singletonMap("image/png", CaptureMode.SUMMARIZE))
+                        .summaryLength(4)
+                        .build())
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        // 어플리케이션이 이미지를 응답하는 상황
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            CachingResponseWrapper responseWrapper = (CachingResponseWrapper) invocationOnMock.getArguments()[1];
+            responseWrapper.setContentType("image/png");
+            responseWrapper.getOutputStream().write(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0, 0, 0, 0});
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        AccessLog accessLog = logged.get();
+        assertThat(accessLog.getRequestBody()).isEqualTo("[multipart/form-data; boundary=foo, 11 bytes]");
+        assertThat(accessLog.getRequestBodySize()).isEqualTo(11L);
+        assertThat(accessLog.getResponseBody()).isEqualTo("[image/png, 8 bytes] 89504e47...");
+        assertThat(accessLog.getResponseBodySize()).isEqualTo(8L);
+    }
+
+    /**
+     * 설정한 필드만 남기는 테스트
+     */
+    @Test
+    public void test_field_selection() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        httpServletRequest.setContentType("text/plain");
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(1024)
+                .fieldSelection(FieldSelection.builder()
+                        .includeRequestHeaders(Arrays.asList("sample-header", "Authorization"))
+                        .excludeResponseHeaders(Collections.singletonList("sample-response-header"))
+                        .captureQuery(false)
+                        .captureRequestBody(false)
+                        .extractors(Collections.singletonMap("contentType", (request, response) -> request.getContentType()))
+                        .build())
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        AccessLog accessLog = logged.get();
+        assertThat(accessLog.getRequestHeaders()).containsEntry("sample-header", "12345").doesNotContainKey("User-Agent");
+        assertThat(accessLog.getResponseHeaders()).doesNotContainKey("SAMPLE-RESPONSE-HEADER");
+        assertThat(accessLog.getQuery()).isNull();
+        assertThat(accessLog.getRequestBody()).isNull();
+        assertThat(accessLog.getResponseBody()).isNotNull();
+        assertThat(accessLog.getExtraFields()).containsEntry("contentType", "text/plain");
+        // Request body 를 캐싱하지 않으므로 원본 request 가 전달되어야 함
+        verify(filterChain).doFilter(eq(httpServletRequest), any());
+    }
+
+    /**
+     * 비동기 요청 처리가 끝났을 때 로그를 남기는 테스트
+     */
+    @Test
+    public void test_async_request() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        httpServletRequest.setAsyncSupported(true);
+        MockHttpServletResponse httpServletResponse = new MockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(1024)
+                .build();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = logged::set;
+
+        // 어플리케이션이 비동기 처리를 시작하고 바로 반환하는 상황
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            // Spring MVC 와 같이 필터가 넘긴 request, response 로 비동기 처리를 시작
+            HttpServletRequest request = (HttpServletRequest) invocationOnMock.getArguments()[0];
+            request.startAsync(request, (HttpServletResponse) invocationOnMock.getArguments()[1]);
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        // 비동기 처리가 끝나기 전에는 로그를 남기지 않는다.
+        assertThat(logged.get()).isNull();
+
+        // When
+        // 다른 thread 에서 응답을 작성한 뒤 비동기 처리 완료
+        HttpServletResponse asyncResponse = (HttpServletResponse) httpServletRequest.getAsyncContext().getResponse();
+        asyncResponse.setStatus(201);
+        asyncResponse.getOutputStream().write("Hello async".getBytes(StandardCharsets.UTF_8));
+        httpServletRequest.getAsyncContext().complete();
+
+        // Then
+        assertThat(logged.get().getStatus()).isEqualTo(201);
+        assertThat(logged.get().getResponseBody()).isEqualTo("Hello async");
+    }
+
+    /**
+     * 비동기 처리 timeout 시 body 포함 여부, sampling 여부와 관계 없이 503 으로 남기는지 테스트
+     */
+    @Test
+    public void test_async_timeout() throws Exception {
+
+        // Given
+        AccessLogFilterConfigurer withContents = AccessLogFilterConfigurer.builder()
+                .enableContentLogging(true)
+                .build();
+        AccessLogFilterConfigurer withoutContents = AccessLogFilterConfigurer.builder()
+                .build();
+        AccessLogFilterConfigurer sampledOut = AccessLogFilterConfigurer.builder()
+                .samplingPolicy(SamplingPolicy.builder().rate(0.0).build())
+                .build();
+
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            HttpServletRequest request = (HttpServletRequest) invocationOnMock.getArguments()[0];
+            request.startAsync(request, (HttpServletResponse) invocationOnMock.getArguments()[1]);
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        // When
+        AccessLog contentsLog = logTimedOutAsyncRequest(withContents);
+        AccessLog noContentsLog = logTimedOutAsyncRequest(withoutContents);
+        AccessLog unsampledLog = logTimedOutAsyncRequest(sampledOut);
+
+        // Then
+        assertThat(contentsLog.getStatus()).isEqualTo(503);
+        assertThat(noContentsLog.getStatus()).isEqualTo(503);
+        assertThat(unsampledLog.getStatus()).isEqualTo(503);
+    }
+
+    /**
+     * 비동기 처리를 시작한 뒤 container 처럼 timeout, complete 이벤트를 보내고 남은 로그를 반환하는 메소드
+     */
+    private AccessLog logTimedOutAsyncRequest(AccessLogFilterConfigurer configurer) throws Exception {
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        httpServletRequest.setAsyncSupported(true);
+        MockHttpServletResponse httpServletResponse = new MockHttpServletResponse();
+
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        AccessLogFilter accessLogFilter = new AccessLogFilter(configurer, logged::set);
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        MockAsyncContext asyncContext = (MockAsyncContext) httpServletRequest.getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners())
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        asyncContext.complete();
+        return logged.get();
+    }
+
+    /**
+     * Enrichment 를 별도 thread 에서 실행하는 테스트
+     */
+    @Test
+    public void test_async_enrichment() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        httpServletRequest.addHeader("X-Forwarded-For", "10.0.0.1");
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .asyncEnrichment(true)
+                .build();
+
+        Thread requestThread = Thread.currentThread();
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        accessLogger = accessLog -> {
+            assertThat(Thread.currentThread()).isNotSameAs(requestThread);
+            logged.set(accessLog);
+            latch.countDown();
+        };
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(logged.get().getIp()).isEqualTo("10.0.0.1");
+        assertThat(logged.get().getRequestHeaders().get("DeviceClass")).isNotNull();
+        accessLogFilter.destroy();
+    }
+
+    /**
+     * 설정하지 않으면 기본 enricher 와 AccessLogger 가 요청 thread 에서 실행되는지 테스트
+     */
+    @Test
+    public void test_sync_enrichment_by_default() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        httpServletRequest.addHeader("X-Forwarded-For", "10.0.0.1");
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .build();
+
+        AtomicReference<Thread> loggingThread = new AtomicReference<>();
+        AtomicReference<AccessLog> logged = new AtomicReference<>();
+        accessLogger = accessLog -> {
+            loggingThread.set(Thread.currentThread());
+            logged.set(accessLog);
+        };
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        assertThat(loggingThread.get()).isSameAs(Thread.currentThread());
+        assertThat(logged.get().getIp()).isEqualTo("10.0.0.1");
+        accessLogFilter.destroy();
+    }
+
+    /**
+     * 기본 enricher 가 사용하는 user agent 분석 객체의 통계를 필터에서 조회할 수 있는지 테스트
+     */
+    @Test
+    public void test_user_agent_service() {
+
+        // Given
+        AccessLogFilterConfigurer defaultConfigurer = AccessLogFilterConfigurer.builder().build();
+        AccessLogFilterConfigurer noEnricherConfigurer = AccessLogFilterConfigurer.builder()
+                .enrichers(Collections.emptyList())
+                .build();
+
+        // When
+        AccessLogFilter defaultFilter = new AccessLogFilter(defaultConfigurer, accessLogger);
+        AccessLogFilter noEnricherFilter = new AccessLogFilter(noEnricherConfigurer, accessLogger);
+
+        // Then
+        assertThat(defaultFilter.getUserAgentService()).isSameAs(UserAgentService.getInstance());
+        assertThat(noEnricherFilter.getUserAgentService()).isNull();
+    }
+
+    /**
+     * Spring MVC 가 남긴 handler pattern 을 route 로 사용하는지 테스트
+     */
+    @Test
+    public void test_route_pattern() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        httpServletRequest.setRequestURI("/api/v1/users/123");
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .build();
+
+        AtomicReference<String> route = new AtomicReference<>();
+        accessLogger = accessLog -> route.set(accessLog.getRoute());
+
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            HttpServletRequest request = (HttpServletRequest) invocationOnMock.getArguments()[0];
+            request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/v1/users/{userId}");
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        assertThat(route.get()).isEqualTo("/api/v1/users/{userId}");
+    }
+
+    /**
+     * 필터 자체의 처리 시간과 body capture 양을 측정하는지 테스트
+     */
+    @Test
+    public void test_filter_stats() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableContentLogging(true)
+                .maxContentLength(12)
+                .attachFilterStats(true)
+                .build();
+
+        AtomicReference<String> filterNanos = new AtomicReference<>();
+        accessLogger = accessLog -> filterNanos.set(accessLog.getExtraFields().get("filterNanos"));
+
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            HttpServletRequest request = (HttpServletRequest) invocationOnMock.getArguments()[0];
+            StreamUtils.copyToByteArray(request.getInputStream());
+            HttpServletResponse response = (HttpServletResponse) invocationOnMock.getArguments()[1];
+            response.getOutputStream().write("Hello response".getBytes());
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        AccessLogFilterStats stats = accessLogFilter.getStats();
+        // 직접 구현한 AccessLogger 의 직렬화는 측정하지 않음
+        assertThat(stats.getPhases())
+                .filteredOn(phase -> phase.getPhase() != AccessLogFilterStats.Phase.SERIALIZE)
+                .allMatch(phase -> phase.getCount() == 1);
+        // Request body 11 bytes 는 남기고, 최대 길이를 넘은 response body 14 bytes 는 버림
+        assertThat(stats.getCapturedBytes()).isEqualTo(11);
+        assertThat(stats.getDroppedBytes()).isEqualTo(14);
+        assertThat(Long.parseLong(filterNanos.get())).isPositive();
+    }
+
+    /**
+     * 기본 AccessLogger 사용 시 직렬화 시간을 따로 측정하는지 테스트
+     */
+    @Test
+    public void test_filter_stats_serialize() throws Exception {
+
+        // Given
+        MockHttpServletRequest httpServletRequest = givenMockHttpServletRequest();
+        MockHttpServletResponse httpServletResponse = givenMockHttpServletResponse();
+
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .enableFilterStats(true)
+                .build();
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer);
+
+        // When
+        accessLogFilter.doFilterInternal(httpServletRequest, httpServletResponse, filterChain);
+
+        // Then
+        assertThat(accessLogFilter.getStats().getPhases())
+                .filteredOn(phase -> phase.getPhase() == AccessLogFilterStats.Phase.SERIALIZE)
+                .allMatch(phase -> phase.getCount() == 1);
+    }
+
+    /**
+     * 느린 요청의 stack trace 를 로그에 남기는지 테스트
+     */
+    @Test
+    public void test_slow_request_stack_samples() throws Exception {
+
+        // Given
+        accessLogFilterConfigurer = AccessLogFilterConfigurer
+                .builder()
+                .slowRequestPolicy(SlowRequestPolicy.builder()
+                        .thresholdMillis(50L)
+                        .sampleIntervalMillis(20L)
+                        .maxSamples(2)
+                        .build())
+                .build();
+
+        List<Map<String, String>> extraFields = new ArrayList<>();
+        accessLogger = accessLog -> extraFields.add(accessLog.getExtraFields());
+
+        AtomicReference<Long> sleepMillis = new AtomicReference<>(300L);
+        doAnswer((Answer<Void>) invocationOnMock -> {
+            Thread.sleep(sleepMillis.get());
+            return null;
+        })
+                .when(filterChain)
+                .doFilter(any(), any());
+
+        AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogFilterConfigurer, accessLogger);
+
+        // When
+        accessLogFilter.doFilterInternal(givenMockHttpServletRequest(), givenMockHttpServletResponse(), filterChain);
+        sleepMillis.set(0L);
+        accessLogFilter.doFilterInternal(givenMockHttpServletRequest(), givenMockHttpServletResponse(), filterChain);
+        accessLogFilter.destroy();
+
+        // Then
+        String stackSamples = extraFields.get(0).get("stackSamples");
+        assertThat(stackSamples).startsWith("sample 1 at +").contains("sample 2 at +").doesNotContain("sample 3");
+        assertThat(stackSamples).contains("java.lang.Thread.sleep");
+        assertThat(extraFields.get(1)).isNull();
+    }
+
     /**
      * White list 된 URI 에 대해 access log 를 남기지 않는 것을 테스트
      */
@@ -0,0 +1,58 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sampling 정책 테스트
+ */
+class AccessLogSamplerTest {
+
+    /**
+     * URI prefix 별 rate limit 테스트
+     */
+    @Test
+    public void test_rate_limit() {
+
+        // Given
+        Map<String, Integer> rateLimits = new HashMap<>();
+        rateLimits.put("/api/v1", 3);
+        rateLimits.put("/api/v1/orders", 0);
+        AccessLogSampler sampler = new AccessLogSampler(SamplingPolicy.builder().rateLimits(rateLimits).build());
+
+        // When
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            if (sampler.sample("/api/v1/users"))
+                sampled++;
+        }
+
+        // Then
+        assertThat(sampled).isEqualTo(3);
+        assertThat(sampler.sample("/api/v1/orders/1")).isFalse();
+        assertThat(sampler.sample("/api/v2/users")).isTrue();
+    }
+
+    /**
+     * 에러, 느린 요청 판단 테스트
+     */
+    @Test
+    public void test_must_log() {
+
+        // Given
+        AccessLogSampler sampler = new AccessLogSampler(SamplingPolicy.builder()
+                .rate(0.0)
+                .slowRequestThresholdMillis(1000L)
+                .build());
+
+        // Then
+        assertThat(sampler.sample("/api/v1/users")).isFalse();
+        assertThat(sampler.mustLog(500, 10)).isTrue();
+        assertThat(sampler.mustLog(200, 1000)).isTrue();
+        assertThat(sampler.mustLog(404, 10)).isFalse();
+    }
+}
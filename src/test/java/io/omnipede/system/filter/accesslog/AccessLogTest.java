@@ -0,0 +1,82 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Access log 레코드 테스트
+ */
+class AccessLogTest {
+
+    @Test
+    public void test_lazy_headers() {
+
+        // Given
+        AccessLog accessLog = new AccessLog();
+        accessLog.addRequestHeader("Content-Type", "application/json");
+        accessLog.addRequestHeader("X-Request-Id", "1234");
+
+        // Then
+        // 헤더 하나를 조회할 때는 Map 을 만들지 않는다.
+        assertThat(accessLog.getRequestHeader("content-type")).isEqualTo("application/json");
+        assertThat(accessLog.requestHeaderList()).isNotNull();
+
+        // Map 으로 변환된 뒤 추가한 헤더도 반영된다.
+        assertThat(accessLog.getRequestHeaders()).containsEntry("X-Request-Id", "1234");
+        assertThat(accessLog.requestHeaderList()).isNull();
+        accessLog.addRequestHeader("DeviceClass", "Desktop");
+        assertThat(accessLog.getRequestHeaders()).containsKeys("Content-Type", "X-Request-Id", "DeviceClass");
+    }
+
+    @Test
+    public void test_header_lookup_ignores_case() {
+
+        // Given
+        AccessLog accessLog = new AccessLog();
+        accessLog.addRequestHeader("X-Forwarded-For", "10.0.0.1");
+
+        // When
+        // 다른 enricher, sink 가 Map 으로 변환
+        accessLog.getRequestHeaders();
+
+        // Then
+        // Map 으로 변환된 뒤에도 대소문자 구분 없이 조회된다.
+        assertThat(accessLog.getRequestHeader("x-forwarded-for")).isEqualTo("10.0.0.1");
+        assertThat(accessLog.getRequestHeaders().get("X-FORWARDED-FOR")).isEqualTo("10.0.0.1");
+        assertThat(accessLog.getRequestHeaders()).containsOnlyKeys("X-Forwarded-For");
+
+        accessLog.setRequestHeaders(Collections.singletonMap("X-Real-IP", "10.0.0.2"));
+        assertThat(accessLog.getRequestHeader("x-real-ip")).isEqualTo("10.0.0.2");
+    }
+
+    @Test
+    public void test_pool_recycle() {
+
+        // Given
+        AccessLogPool pool = new AccessLogPool(4);
+        AccessLog accessLog = pool.acquire();
+        accessLog.setUri("/api/v1/foo");
+        accessLog.setRequestAtMillis(1000L);
+        accessLog.addResponseHeader("Content-Type", "text/plain");
+
+        // When
+        accessLog.retain();
+        accessLog.release();
+
+        // Then
+        // 참조가 남아 있으면 재사용되지 않는다.
+        assertThat(pool.acquire()).isNotSameAs(accessLog);
+        assertThat(accessLog.getUri()).isEqualTo("/api/v1/foo");
+
+        // 마지막 참조가 해제되면 초기화된 뒤 재사용된다.
+        accessLog.release();
+        AccessLog reused = pool.acquire();
+        assertThat(reused).isSameAs(accessLog);
+        assertThat(reused.getUri()).isNull();
+        assertThat(reused.getRequestAt()).isNull();
+        assertThat(reused.getResponseHeaders()).isEmpty();
+    }
+}
@@ -0,0 +1,162 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 비동기 access logger 테스트
+ */
+class AsyncAccessLoggerTest {
+
+    /**
+     * Close 시 buffer 에 남은 로그가 모두 처리되는지 테스트
+     */
+    @Test
+    public void test_flush_on_close() {
+
+        // Given
+        List<AccessLog> logged = new CopyOnWriteArrayList<>();
+        AsyncAccessLogger asyncAccessLogger = AsyncAccessLogger.builder()
+                .delegate(logged::add)
+                .capacity(1024)
+                .build();
+
+        // When
+        for (int i = 0; i < 1000; i++)
+            asyncAccessLogger.log(givenAccessLog(i));
+        asyncAccessLogger.close();
+
+        // Then
+        assertThat(logged).hasSize(1000);
+        assertThat(logged.get(999).getStatus()).isEqualTo(999);
+        assertThat(asyncAccessLogger.getDroppedCount()).isEqualTo(0);
+        assertThat(asyncAccessLogger.getQueueDepth()).isEqualTo(0);
+    }
+
+    /**
+     * Buffer 가 가득 찼을 때 새 로그를 버리는지 테스트
+     */
+    @Test
+    public void test_drop_newest() throws Exception {
+
+        // Given
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<AccessLog> logged = new CopyOnWriteArrayList<>();
+        AsyncAccessLogger asyncAccessLogger = AsyncAccessLogger.builder()
+                .delegate(accessLog -> {
+                    blocked.countDown();
+                    await(release);
+                    logged.add(accessLog);
+                })
+                .capacity(4)
+                .batchSize(1)
+                .overflowPolicy(AsyncAccessLogger.OverflowPolicy.DROP_NEWEST)
+                .build();
+
+        // Consumer 가 첫 로그를 처리하는 중에 멈추도록 함
+        asyncAccessLogger.log(givenAccessLog(0));
+        blocked.await();
+
+        // When
+        for (int i = 1; i <= 10; i++)
+            asyncAccessLogger.log(givenAccessLog(i));
+
+        // Then
+        assertThat(asyncAccessLogger.getQueueDepth()).isEqualTo(4);
+        assertThat(asyncAccessLogger.getDroppedCount()).isEqualTo(6);
+
+        release.countDown();
+        asyncAccessLogger.close();
+        assertThat(logged).extracting(AccessLog::getStatus).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    /**
+     * Buffer 가 가득 찼을 때 오래된 로그를 버리는지 테스트
+     */
+    @Test
+    public void test_drop_oldest() throws Exception {
+
+        // Given
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<AccessLog> logged = new CopyOnWriteArrayList<>();
+        AsyncAccessLogger asyncAccessLogger = AsyncAccessLogger.builder()
+                .delegate(accessLog -> {
+                    blocked.countDown();
+                    await(release);
+                    logged.add(accessLog);
+                })
+                .capacity(4)
+                .batchSize(1)
+                .overflowPolicy(AsyncAccessLogger.OverflowPolicy.DROP_OLDEST)
+                .build();
+
+        asyncAccessLogger.log(givenAccessLog(0));
+        blocked.await();
+
+        // When
+        for (int i = 1; i <= 10; i++)
+            asyncAccessLogger.log(givenAccessLog(i));
+
+        // Then
+        assertThat(asyncAccessLogger.getDroppedCount()).isEqualTo(6);
+
+        release.countDown();
+        asyncAccessLogger.close();
+        assertThat(logged).extracting(AccessLog::getStatus).containsExactly(0, 7, 8, 9, 10);
+    }
+
+    /**
+     * Delegate 가 Error 를 던져도 consumer thread 가 계속 로그를 처리하는지 테스트
+     */
+    @Test
+    public void test_keep_consuming_after_error() throws Exception {
+
+        // Given
+        List<AccessLog> logged = new CopyOnWriteArrayList<>();
+        CountDownLatch failed = new CountDownLatch(1);
+        AsyncAccessLogger asyncAccessLogger = AsyncAccessLogger.builder()
+                .delegate(accessLog -> {
+                    if (accessLog.getStatus() == 0) {
+                        failed.countDown();
+                        throw new NoClassDefFoundError("Serializer");
+                    }
+                    logged.add(accessLog);
+                })
+                .capacity(16)
+                .build();
+
+        // When
+        asyncAccessLogger.log(givenAccessLog(0));
+        failed.await();
+        for (int i = 1; i <= 10; i++)
+            asyncAccessLogger.log(givenAccessLog(i));
+        asyncAccessLogger.close();
+
+        // Then
+        assertThat(logged).hasSize(10);
+        assertThat(asyncAccessLogger.getFailedCount()).isEqualTo(1);
+        assertThat(asyncAccessLogger.getDroppedCount()).isEqualTo(0);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static AccessLog givenAccessLog(int status) {
+        return AccessLog.builder()
+                .uri("/api/v1/foo/bar")
+                .status(status)
+                .build();
+    }
+}
@@ -0,0 +1,129 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 압축 block 파일 기록 및 query 테스트
+ */
+class BlockLogQueryTest {
+
+    private Path directory;
+
+    private final List<AccessLog> accessLogs = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("block-test");
+
+        // 1 초 간격으로 /api/v1/sample 과 /api/v1/other 를 번갈아 기록하고, 10 번에 한번 503 을 응답
+        BlockFileAccessLogger blockFileAccessLogger = BlockFileAccessLogger.builder()
+                .directory(directory)
+                .blockSize(4 * 1024)
+                .fileSize(32 * 1024)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            AccessLog accessLog = AccessLog.builder()
+                    .requestAt(new Date(i * 1000L))
+                    .responseAt(new Date(i * 1000L + 5))
+                    .uri(i % 2 == 0 ? "/api/v1/sample" : "/api/v1/other")
+                    .method("GET")
+                    .status(i % 10 == 4 ? 503 : 200)
+                    .responseBody("{\"index\":" + i + "}")
+                    .elapsed(5)
+                    .build();
+            accessLogs.add(accessLog);
+        }
+        blockFileAccessLogger.logBatch(accessLogs);
+        blockFileAccessLogger.close();
+        assertThat(blockFileAccessLogger.getWrittenCount()).isEqualTo(1000);
+        assertThat(blockFileAccessLogger.getBlockCount()).isGreaterThan(1);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                Files.delete(path);
+        }
+    }
+
+    @Test
+    public void test_query_skips_blocks() throws Exception {
+
+        // Given
+        BlockLogQuery query = BlockLogQuery.builder()
+                .from(100_000L)
+                .to(200_000L)
+                .statusClass(5)
+                .uri("/api/v1/sample")
+                .build();
+
+        // When
+        List<AccessLog> matched = new ArrayList<>();
+        BlockLogQuery.Result result = query.execute(Collections.singletonList(directory), matched::add);
+
+        // Then
+        // 100 ~ 199 초 중 i % 10 == 4 인 짝수 index
+        assertThat(result.getMatchedCount()).isEqualTo(10);
+        assertThat(matched).extracting(AccessLog::getResponseBody).contains("{\"index\":104}", "{\"index\":194}");
+        assertThat(matched).allMatch(accessLog -> accessLog.getStatus() == 503 && "/api/v1/sample".equals(accessLog.getUri()));
+        assertThat(result.getSkippedBlockCount()).isGreaterThan(result.getScannedBlockCount());
+        assertThat(result.getScannedCount()).isLessThan(accessLogs.size() / 2);
+    }
+
+    @Test
+    public void test_flush_lingered_block_without_new_records() throws Exception {
+
+        // Given
+        Path idleDirectory = directory.resolve("idle");
+        BlockFileAccessLogger blockFileAccessLogger = BlockFileAccessLogger.builder()
+                .directory(idleDirectory)
+                .blockLingerMillis(50)
+                .build();
+
+        // When
+        blockFileAccessLogger.log(accessLogs.get(0));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (blockFileAccessLogger.getBlockCount() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        long blockCount = blockFileAccessLogger.getBlockCount();
+        blockFileAccessLogger.close();
+
+        // Then
+        // 더 기록하지 않아도 linger 시간이 지나면 block 이 기록된다.
+        assertThat(blockCount).isEqualTo(1);
+        assertThat(blockFileAccessLogger.getBlockCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_query_all() throws Exception {
+
+        // Given
+        BlockLogQuery query = BlockLogQuery.builder().build();
+
+        // When
+        List<AccessLog> read = new ArrayList<>();
+        BlockLogQuery.Result result = query.execute(Collections.singletonList(directory), read::add);
+
+        // Then
+        assertThat(result.getMatchedCount()).isEqualTo(1000);
+        assertThat(result.getSkippedBlockCount()).isZero();
+        assertThat(read.get(999).getResponseBody()).isEqualTo("{\"index\":999}");
+        assertThat(read.get(999).getRequestAtMillis()).isEqualTo(999_000L);
+    }
+}
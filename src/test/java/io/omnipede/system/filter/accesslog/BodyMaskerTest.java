@@ -0,0 +1,63 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Body masking 테스트
+ */
+class BodyMaskerTest {
+
+    private final BodyMasker bodyMasker = new BodyMasker(MaskingPolicy.builder().build());
+
+    @Test
+    public void test_json_keys() {
+        assertThat(mask(bodyMasker, "{\"userId\":\"foo\",\n\t\"Password\" : \"p\\\"w\",\"accessToken\":12345,\"profile\":{\"token\":\"abc\"}}"))
+                .isEqualTo("{\"userId\":\"foo\",\"Password\" : \"****\",\"accessToken\":\"****\",\"profile\":{\"token\":\"****\"}}");
+        // Key 가 아닌 문자열, object 값은 가리지 않는다.
+        assertThat(mask(bodyMasker, "{\"message\":\"password\",\"secret\":{\"a\":1}}"))
+                .isEqualTo("{\"message\":\"password\",\"secret\":{\"a\":1}}");
+    }
+
+    @Test
+    public void test_form_parameters() {
+        assertThat(mask(bodyMasker, "userId=foo&password=bar&pwd=baz"))
+                .isEqualTo("userId=foo&password=****&pwd=****");
+    }
+
+    @Test
+    public void test_card_numbers_and_emails() {
+        assertThat(mask(bodyMasker, "{\"card\":\"4111 1111 1111 1111\",\"orderId\":1234567890123,\"mail\":\"foo.bar@example.com\"}"))
+                .isEqualTo("{\"card\":\"**** **** **** 1111\",\"orderId\":1234567890123,\"mail\":\"*******@example.com\"}");
+    }
+
+    @Test
+    public void test_no_policy() {
+        BodyMasker noMasking = new BodyMasker(null);
+        byte[] suffix = "...(truncated)".getBytes(StandardCharsets.UTF_8);
+        byte[] body = "{\"password\":\n\"bar\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(new String(noMasking.copy(body, body.length, suffix), StandardCharsets.UTF_8))
+                .isEqualTo("{\"password\":\"bar\"}...(truncated)");
+    }
+
+    @Test
+    public void test_custom_keys() {
+        BodyMasker customMasker = new BodyMasker(MaskingPolicy.builder()
+                .sensitiveKeys(Arrays.asList("ssn", "birthDate"))
+                .maskEmails(false)
+                .build());
+
+        assertThat(mask(customMasker, "{\"ssn\":\"123\",\"password\":\"bar\",\"mail\":\"a@b.io\"}"))
+                .isEqualTo("{\"ssn\":\"****\",\"password\":\"bar\",\"mail\":\"a@b.io\"}");
+    }
+
+    private String mask(BodyMasker masker, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return new String(masker.copy(bytes, bytes.length, new byte[0]), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,188 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fan-out access logger 테스트
+ */
+class FanOutAccessLoggerTest {
+
+    /**
+     * 멈춘 sink 가 다른 sink 와 호출 thread 를 느리게 만들지 않는지 테스트
+     */
+    @Test
+    public void test_isolate_stalled_sink() throws Exception {
+
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        List<AccessLog> fast = new CopyOnWriteArrayList<>();
+        FanOutAccessLogger fanOutAccessLogger = new FanOutAccessLogger(Arrays.asList(
+                AccessLogSink.builder()
+                        .name("stalled")
+                        .accessLogger(accessLog -> await(release))
+                        .queueCapacity(4)
+                        .build(),
+                AccessLogSink.builder()
+                        .name("fast")
+                        .accessLogger(fast::add)
+                        .build()));
+
+        // When
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++)
+            fanOutAccessLogger.log(givenAccessLog(i));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        List<FanOutAccessLogger.SinkStats> stats = fanOutAccessLogger.getSinkStats();
+        release.countDown();
+        fanOutAccessLogger.close();
+
+        // Then
+        assertThat(elapsedMillis).isLessThan(1000);
+        assertThat(fast).hasSize(100);
+        assertThat(stats.get(0).getName()).isEqualTo("stalled");
+        assertThat(stats.get(0).getDroppedCount()).isGreaterThan(0);
+        assertThat(stats.get(1).getDroppedCount()).isZero();
+    }
+
+    /**
+     * 연속으로 실패하는 sink 의 circuit 을 여는지 테스트
+     */
+    @Test
+    public void test_circuit_breaker() throws Exception {
+
+        // Given
+        FanOutAccessLogger fanOutAccessLogger = new FanOutAccessLogger(Arrays.asList(
+                AccessLogSink.builder()
+                        .name("failing")
+                        .accessLogger(accessLog -> {
+                            throw new IllegalStateException("Collector is down");
+                        })
+                        .failureThreshold(2)
+                        .openMillis(60_000L)
+                        .build()));
+
+        // When
+        // 한 batch 씩 처리되도록 앞의 로그가 처리된 뒤에 다음 로그를 넣는다.
+        for (int i = 0; i < 4; i++) {
+            fanOutAccessLogger.log(givenAccessLog(i));
+            awaitProcessed(fanOutAccessLogger, i + 1);
+        }
+        FanOutAccessLogger.SinkStats stats = fanOutAccessLogger.getSinkStats().get(0);
+        fanOutAccessLogger.close();
+
+        // Then
+        assertThat(stats.isCircuitOpen()).isTrue();
+        assertThat(stats.getFailedCount()).isEqualTo(2);
+        assertThat(stats.getRejectedCount()).isEqualTo(2);
+    }
+
+    /**
+     * 같은 형식을 요청하는 sink 들이 직렬화 결과를 공유하는지 테스트
+     */
+    @Test
+    public void test_encode_once_per_format() throws Exception {
+
+        // Given
+        List<byte[]> encoded = new CopyOnWriteArrayList<>();
+        AccessLogger jsonSink = accessLog -> {
+            try {
+                encoded.add(AccessLogFormat.JSON.encode(accessLog));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        FanOutAccessLogger fanOutAccessLogger = new FanOutAccessLogger(Arrays.asList(
+                AccessLogSink.builder().accessLogger(jsonSink).build(),
+                AccessLogSink.builder().accessLogger(jsonSink).build()));
+
+        // When
+        fanOutAccessLogger.log(givenAccessLog(200));
+        fanOutAccessLogger.close();
+
+        // Then
+        assertThat(encoded).hasSize(2);
+        assertThat(encoded.get(0)).isSameAs(encoded.get(1));
+        assertThat(new String(encoded.get(0), "UTF-8")).contains("\"status\":200");
+    }
+
+    /**
+     * 여러 sink 가 동시에 헤더, body 를 읽어도 같은 변환 결과를 공유하는지 테스트
+     */
+    @Test
+    public void test_concurrent_lazy_getters() throws Exception {
+
+        // Given
+        List<Object[]> first = new CopyOnWriteArrayList<>();
+        List<Object[]> second = new CopyOnWriteArrayList<>();
+        FanOutAccessLogger fanOutAccessLogger = new FanOutAccessLogger(Arrays.asList(
+                AccessLogSink.builder().accessLogger(accessLog -> first.add(read(accessLog))).build(),
+                AccessLogSink.builder().accessLogger(accessLog -> second.add(read(accessLog))).build()));
+
+        // When
+        for (int i = 0; i < 1000; i++) {
+            AccessLog accessLog = givenAccessLog(200);
+            accessLog.addRequestHeader("X-Request-Id", Integer.toString(i));
+            accessLog.addResponseHeader("Content-Type", "application/json");
+            accessLog.setRequestBodyBytes(("request " + i).getBytes(StandardCharsets.UTF_8));
+            accessLog.setResponseBodyBytes(("response " + i).getBytes(StandardCharsets.UTF_8));
+            fanOutAccessLogger.log(accessLog);
+        }
+        fanOutAccessLogger.close();
+
+        // Then
+        assertThat(first).hasSize(1000);
+        assertThat(second).hasSize(1000);
+        for (int i = 0; i < 1000; i++) {
+            Object[] a = first.get(i);
+            Object[] b = second.get(i);
+            assertThat(a[0]).isSameAs(b[0]);
+            assertThat(a[1]).isSameAs(b[1]);
+            assertThat(a[2]).isSameAs(b[2]);
+            assertThat(a[3]).isSameAs(b[3]);
+            assertThat(a[0]).isEqualTo(Collections.singletonMap("X-Request-Id", Integer.toString(i)));
+            assertThat(a[2]).isEqualTo("request " + i);
+            assertThat(a[3]).isEqualTo("response " + i);
+        }
+    }
+
+    private static Object[] read(AccessLog accessLog) {
+        return new Object[]{accessLog.getRequestHeaders(), accessLog.getResponseHeaders(),
+                accessLog.getRequestBody(), accessLog.getResponseBody()};
+    }
+
+    private void awaitProcessed(FanOutAccessLogger fanOutAccessLogger, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            FanOutAccessLogger.SinkStats stats = fanOutAccessLogger.getSinkStats().get(0);
+            if (stats.getFailedCount() + stats.getRejectedCount() >= count)
+                return;
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private AccessLog givenAccessLog(int status) {
+        AccessLog accessLog = new AccessLog();
+        accessLog.setUri("/api/v1/sample");
+        accessLog.setStatus(status);
+        return accessLog;
+    }
+}
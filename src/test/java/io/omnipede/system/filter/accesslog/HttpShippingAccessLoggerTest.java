@@ -0,0 +1,252 @@
+package io.omnipede.system.filter.accesslog;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * HTTP shipping access logger 테스트. 로컬 stub collector 에 보낸다.
+ */
+class HttpShippingAccessLoggerTest {
+
+    private HttpServer server;
+
+    private Path spillDirectory;
+
+    // 받은 batch 마다 레코드 (JSON 한 줄) 목록
+    private final List<List<String>> received = new CopyOnWriteArrayList<>();
+
+    private final List<String> contentEncodings = new CopyOnWriteArrayList<>();
+
+    // 503 으로 응답할 남은 요청 수
+    private final AtomicInteger failures = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        spillDirectory = Files.createTempDirectory("access-log-spill");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/logs", this::collect);
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.stop(0);
+        try (Stream<Path> files = Files.walk(spillDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                Files.delete(file);
+        }
+    }
+
+    /**
+     * 레코드 수 기준으로 batch 를 나누고 gzip 으로 압축해서 보내는지 테스트
+     */
+    @Test
+    public void test_batch_by_records() throws Exception {
+
+        // Given
+        HttpShippingAccessLogger shippingAccessLogger = givenBuilder()
+                .maxBatchRecords(10)
+                .lingerMillis(60_000L)
+                .build();
+
+        // When
+        for (int i = 0; i < 25; i++)
+            shippingAccessLogger.log(givenAccessLog(200));
+        shippingAccessLogger.close();
+
+        // Then
+        assertThat(received).extracting(List::size).containsExactly(10, 10, 5);
+        assertThat(contentEncodings).containsOnly("gzip");
+        assertThat(received.get(0).get(0)).contains("\"status\":200");
+        assertThat(shippingAccessLogger.getSentRecordCount()).isEqualTo(25);
+        assertThat(shippingAccessLogger.getSentBatchCount()).isEqualTo(3);
+    }
+
+    /**
+     * Batch 가 가득 차지 않아도 linger 시간이 지나면 보내는지 테스트
+     */
+    @Test
+    public void test_flush_after_linger() throws Exception {
+
+        // Given
+        HttpShippingAccessLogger shippingAccessLogger = givenBuilder()
+                .lingerMillis(50L)
+                .build();
+
+        // When
+        shippingAccessLogger.log(givenAccessLog(200));
+        boolean sent = await(() -> shippingAccessLogger.getSentRecordCount() == 1);
+        shippingAccessLogger.close();
+
+        // Then
+        assertThat(sent).isTrue();
+        assertThat(received).hasSize(1);
+    }
+
+    /**
+     * Collector 가 일시적으로 실패하면 재시도 하는지 테스트
+     */
+    @Test
+    public void test_retry_on_server_error() throws Exception {
+
+        // Given
+        failures.set(2);
+        HttpShippingAccessLogger shippingAccessLogger = givenBuilder()
+                .maxRetries(3)
+                .build();
+
+        // When
+        for (int i = 0; i < 5; i++)
+            shippingAccessLogger.log(givenAccessLog(200));
+        shippingAccessLogger.close();
+
+        // Then
+        assertThat(received).extracting(List::size).containsExactly(5);
+        assertThat(shippingAccessLogger.getRetryCount()).isEqualTo(2);
+        assertThat(shippingAccessLogger.getSpilledBatchCount()).isZero();
+    }
+
+    /**
+     * 재시도 후에도 실패한 batch 를 디스크에 저장하고, collector 가 복구되면 재전송 하는지 테스트
+     */
+    @Test
+    public void test_spill_and_resend() throws Exception {
+
+        // Given
+        failures.set(Integer.MAX_VALUE);
+        HttpShippingAccessLogger shippingAccessLogger = givenBuilder()
+                .maxBatchRecords(5)
+                .maxRetries(1)
+                .spillDirectory(spillDirectory)
+                .collectorDownMillis(0L)
+                .build();
+
+        // When
+        for (int i = 0; i < 5; i++)
+            shippingAccessLogger.log(givenAccessLog(500));
+        boolean spilled = await(() -> shippingAccessLogger.getSpilledBatchCount() == 1);
+        long spilledFiles = countSpilledFiles();
+
+        failures.set(0);
+        for (int i = 0; i < 5; i++)
+            shippingAccessLogger.log(givenAccessLog(200));
+        shippingAccessLogger.close();
+
+        // Then
+        assertThat(spilled).isTrue();
+        assertThat(spilledFiles).isEqualTo(1);
+        assertThat(countSpilledFiles()).isZero();
+        assertThat(received).extracting(List::size).containsExactly(5, 5);
+        assertThat(received.get(1).get(0)).contains("\"status\":500");
+        assertThat(shippingAccessLogger.getSentRecordCount()).isEqualTo(10);
+        assertThat(shippingAccessLogger.getDroppedRecordCount()).isZero();
+    }
+
+    /**
+     * Collector 가 내려간 동안 queue 를 넘친 batch 도 버리지 않고 저장하며, 재시도는 한 번만 하는지 테스트
+     */
+    @Test
+    public void test_spill_while_collector_down() throws Exception {
+
+        // Given
+        failures.set(Integer.MAX_VALUE);
+        HttpShippingAccessLogger shippingAccessLogger = givenBuilder()
+                .maxBatchRecords(1)
+                .maxPendingBatches(1)
+                .maxRetries(3)
+                .spillDirectory(spillDirectory)
+                .build();
+
+        // When
+        for (int i = 0; i < 20; i++)
+            shippingAccessLogger.log(givenAccessLog(500));
+        shippingAccessLogger.close();
+
+        // Then
+        assertThat(received).isEmpty();
+        assertThat(shippingAccessLogger.getRetryCount()).isEqualTo(3);
+        assertThat(shippingAccessLogger.getSpilledBatchCount()).isEqualTo(20);
+        assertThat(countSpilledFiles()).isEqualTo(20);
+        assertThat(shippingAccessLogger.getDroppedRecordCount()).isZero();
+    }
+
+    private HttpShippingAccessLogger.HttpShippingAccessLoggerBuilder givenBuilder() {
+        return HttpShippingAccessLogger.builder()
+                .endpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/logs")
+                .retryBackoffMillis(1L);
+    }
+
+    private void collect(HttpExchange exchange) throws IOException {
+        byte[] response = new byte[0];
+        if (failures.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+            drain(exchange.getRequestBody());
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        contentEncodings.add(String.valueOf(contentEncoding));
+        InputStream body = "gzip".equals(contentEncoding)
+                ? new GZIPInputStream(exchange.getRequestBody())
+                : exchange.getRequestBody();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            received.add(reader.lines().collect(Collectors.toList()));
+        }
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] discard = new byte[1024];
+        while (in.read(discard) >= 0) {
+            // 버림
+        }
+    }
+
+    private long countSpilledFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            return files.count();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean())
+                return true;
+            Thread.sleep(5);
+        }
+        return false;
+    }
+
+    private AccessLog givenAccessLog(int status) {
+        AccessLog accessLog = new AccessLog();
+        accessLog.setUri("/api/v1/sample");
+        accessLog.setStatus(status);
+        return accessLog;
+    }
+}
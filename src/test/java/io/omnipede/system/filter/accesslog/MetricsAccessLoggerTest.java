@@ -0,0 +1,103 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Access log metrics 집계 테스트
+ */
+class MetricsAccessLoggerTest {
+
+    @Test
+    public void test_percentiles_per_route() {
+
+        // Given
+        List<AccessLog> delegated = new ArrayList<>();
+        MetricsAccessLogger metricsAccessLogger = MetricsAccessLogger.builder()
+                .delegate(delegated::add)
+                .build();
+
+        // When
+        for (int i = 1; i <= 1000; i++)
+            metricsAccessLogger.log(givenAccessLog("/api/v1/sample", "GET", 200, i));
+        metricsAccessLogger.log(givenAccessLog("/api/v1/sample", "GET", 503, 30000));
+        metricsAccessLogger.log(givenAccessLog("/api/v1/sample", "POST", 201, 7));
+
+        // Then
+        assertThat(delegated).hasSize(1002);
+        List<RouteMetricsSnapshot> routes = metricsAccessLogger.getRoutes();
+        assertThat(routes).extracting(RouteMetricsSnapshot::getMethod, RouteMetricsSnapshot::getStatusClass)
+                .containsExactly(tuple("GET", "2xx"),
+                        tuple("GET", "5xx"),
+                        tuple("POST", "2xx"));
+
+        RouteMetricsSnapshot ok = routes.get(0);
+        assertThat(ok.getCount()).isEqualTo(1000);
+        assertThat(ok.getMax()).isEqualTo(1000);
+        assertThat(ok.getMean()).isEqualTo(500.5);
+        // Log-linear bucket 의 상대 오차 이내
+        assertThat(ok.getP50()).isBetween(470L, 530L);
+        assertThat(ok.getP99()).isBetween(930L, 1000L);
+        assertThat(routes.get(1).getP999()).isBetween(28000L, 30000L);
+        assertThat(routes.get(2).getP50()).isEqualTo(7);
+    }
+
+    @Test
+    public void test_max_routes() {
+
+        // Given
+        MetricsAccessLogger metricsAccessLogger = MetricsAccessLogger.builder()
+                .maxRoutes(2)
+                .build();
+
+        // When
+        for (int i = 0; i < 5; i++)
+            metricsAccessLogger.log(givenAccessLog("/api/v1/users/" + i, "GET", 200, 10));
+
+        // Then
+        assertThat(metricsAccessLogger.getRecordedCount()).isEqualTo(5);
+        assertThat(metricsAccessLogger.getOverflowCount()).isEqualTo(3);
+        assertThat(metricsAccessLogger.getRoutes()).extracting(RouteMetricsSnapshot::getRoute)
+                .containsExactly("/api/v1/users/0", "/api/v1/users/1", MetricsAccessLogger.OVERFLOW_ROUTE);
+    }
+
+    @Test
+    public void test_jmx() throws Exception {
+
+        // Given
+        String jmxName = "io.omnipede:type=AccessLogMetrics,name=test";
+        MetricsAccessLogger metricsAccessLogger = MetricsAccessLogger.builder()
+                .jmxName(jmxName)
+                .build();
+        metricsAccessLogger.log(givenAccessLog("/api/v1/sample", "GET", 200, 10));
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        // When
+        CompositeData[] routes = (CompositeData[]) mBeanServer.getAttribute(new ObjectName(jmxName), "Routes");
+        metricsAccessLogger.close();
+
+        // Then
+        assertThat(routes).hasSize(1);
+        assertThat(routes[0].get("route")).isEqualTo("/api/v1/sample");
+        assertThat(routes[0].get("p50")).isEqualTo(10L);
+        assertThat(mBeanServer.isRegistered(new ObjectName(jmxName))).isFalse();
+    }
+
+    private AccessLog givenAccessLog(String uri, String method, int status, long elapsed) {
+        AccessLog accessLog = new AccessLog();
+        accessLog.setUri(uri);
+        accessLog.setMethod(method);
+        accessLog.setStatus(status);
+        accessLog.setElapsed(elapsed);
+        return accessLog;
+    }
+}
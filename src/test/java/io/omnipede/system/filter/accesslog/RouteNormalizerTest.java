@@ -0,0 +1,64 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * URI route 정규화 테스트
+ */
+class RouteNormalizerTest {
+
+    @Test
+    public void test_collapse_ids() {
+
+        // Given
+        RouteNormalizer routeNormalizer = new RouteNormalizer(0, 0);
+
+        // When, Then
+        assertThat(routeNormalizer.normalize("/users/123/orders/456")).isEqualTo("/users/{id}/orders/{id}");
+        assertThat(routeNormalizer.normalize("/files/3f2504e0-4f89-11d3-9a0c-0305e82c3301/"))
+                .isEqualTo("/files/{uuid}/");
+        assertThat(routeNormalizer.normalize("/api/v1/health")).isEqualTo("/api/v1/health");
+        assertThat(routeNormalizer.normalize("/")).isEqualTo("/");
+    }
+
+    @Test
+    public void test_learn_variable_segments() {
+
+        // Given
+        RouteNormalizer routeNormalizer = new RouteNormalizer(100, 3);
+
+        // When
+        String first = routeNormalizer.normalize("/users/alice/profile");
+        routeNormalizer.normalize("/users/bob/profile");
+        routeNormalizer.normalize("/users/carol/profile");
+        String fourth = routeNormalizer.normalize("/users/dave/profile");
+
+        // Then
+        assertThat(first).isEqualTo("/users/alice/profile");
+        assertThat(fourth).isEqualTo("/users/{var}/profile");
+        // 변수로 판단된 뒤에는 cache 된 route 도 다시 정규화 된다.
+        assertThat(routeNormalizer.normalize("/users/alice/profile")).isEqualTo("/users/{var}/profile");
+        assertThat(routeNormalizer.normalize("/users")).isEqualTo("/users");
+    }
+
+    @Test
+    public void test_do_not_learn_from_unhandled_requests() {
+
+        // Given
+        RouteNormalizer routeNormalizer = new RouteNormalizer(100, 3);
+
+        // When
+        // Scanner 가 보내는 404 경로들
+        for (String probe : new String[]{"wp-admin", "phpmyadmin", ".env", "cgi-bin", "admin"})
+            routeNormalizer.normalize("/users/" + probe + "/profile", false);
+        // 최상위 경로는 정상 응답이어도 값을 수집하지 않음
+        for (String top : new String[]{"users", "orders", "items", "carts", "payments"})
+            routeNormalizer.normalize("/" + top, true);
+
+        // Then
+        assertThat(routeNormalizer.normalize("/users/alice/profile")).isEqualTo("/users/alice/profile");
+        assertThat(routeNormalizer.normalize("/shipments")).isEqualTo("/shipments");
+    }
+}
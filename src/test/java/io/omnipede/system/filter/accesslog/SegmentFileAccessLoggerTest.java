@@ -0,0 +1,161 @@
+package io.omnipede.system.filter.accesslog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Segment 파일 sink 테스트
+ */
+class SegmentFileAccessLoggerTest {
+
+    private final AccessLogEncoder encoder = new AccessLogEncoder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("segment-test");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                Files.delete(path);
+        }
+    }
+
+    /**
+     * 기록한 레코드를 segment 를 넘어가며 NDJSON 으로 그대로 export 하는지 테스트
+     */
+    @Test
+    public void test_roll_and_export() throws Exception {
+
+        // Given
+        List<AccessLog> accessLogs = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            accessLogs.add(givenAccessLog(i));
+
+        // When
+        SegmentFileAccessLogger segmentFileAccessLogger = SegmentFileAccessLogger.builder()
+                .directory(directory)
+                .segmentSize(1024)
+                .build();
+        segmentFileAccessLogger.log(accessLogs.get(0));
+        segmentFileAccessLogger.logBatch(accessLogs.subList(1, accessLogs.size()));
+        segmentFileAccessLogger.close();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported = new SegmentExporter().export(Collections.singletonList(directory), out);
+
+        // Then
+        assertThat(segmentFileAccessLogger.getWrittenCount()).isEqualTo(20);
+        assertThat(segmentFiles().size()).isGreaterThan(1);
+        assertThat(exported).isEqualTo(20);
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertThat(lines).hasSize(20);
+        for (int i = 0; i < lines.length; i++)
+            assertThat(objectMapper.readTree(lines[i])).isEqualTo(objectMapper.readTree(encoder.encodeToString(accessLogs.get(i))));
+    }
+
+    /**
+     * 마지막 레코드가 손상된 경우 손상된 레코드 직전까지만 읽는지 테스트
+     */
+    @Test
+    public void test_force_without_new_records() throws Exception {
+
+        // Given
+        SegmentFileAccessLogger segmentFileAccessLogger = SegmentFileAccessLogger.builder()
+                .directory(directory)
+                .forceIntervalMillis(50)
+                .build();
+
+        // When
+        // 첫 레코드는 바로 동기화 되므로, 두번째 레코드가 동기화 되지 않은 채로 남는다.
+        segmentFileAccessLogger.log(givenAccessLog(0));
+        segmentFileAccessLogger.log(givenAccessLog(1));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (segmentFileAccessLogger.isDirty() && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        boolean dirty = segmentFileAccessLogger.isDirty();
+        segmentFileAccessLogger.close();
+
+        // Then
+        assertThat(dirty).isFalse();
+    }
+
+    @Test
+    public void test_corrupted_tail() throws Exception {
+
+        // Given
+        SegmentFileAccessLogger segmentFileAccessLogger = SegmentFileAccessLogger.builder()
+                .directory(directory)
+                .build();
+        segmentFileAccessLogger.logBatch(Arrays.asList(givenAccessLog(0), givenAccessLog(1)));
+        segmentFileAccessLogger.close();
+
+        // When
+        Path segment = segmentFiles().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 0x7f;
+        Files.write(segment, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+        List<AccessLog> read = new ArrayList<>();
+        long count = SegmentReader.read(segment, read::add);
+
+        // Then
+        assertThat(count).isEqualTo(1);
+        assertThat(read.get(0).getUri()).isEqualTo("/api/v1/foo/0");
+    }
+
+    private List<Path> segmentFiles() throws Exception {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private AccessLog givenAccessLog(int i) {
+        AccessLog accessLog = AccessLog.builder()
+                .requestAt(new Date(1000 + i))
+                .responseAt(new Date(1010 + i))
+                .userAgent("SampleUserAgent")
+                .hostName("localhost")
+                .ip("127.0.0.1")
+                .uri("/api/v1/foo/" + i)
+                .query(i % 2 == 0 ? "page=" + i : null)
+                .method("POST")
+                .status(i % 3 == 0 ? null : 200)
+                .responseBody("안녕 \"response\" 😀")
+                .elapsed(10)
+                .build();
+        accessLog.setRoute(i % 2 == 0 ? "/api/v1/foo/{id}" : null);
+        accessLog.addRequestHeader("SAMPLE-HEADER", "12345");
+        accessLog.addResponseHeader("Content-Type", "application/json");
+        accessLog.setRequestBodyBytes(("{\"id\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+        if (i % 4 == 0) {
+            accessLog.addExtraField("tenant", "sample");
+            accessLog.setRequestBodySize(7L);
+        }
+        return accessLog;
+    }
+}
@@ -0,0 +1,68 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * White list URI 규칙 테스트
+ */
+class UriMatcherTest {
+
+    @Test
+    public void test_prefix() {
+
+        // Given
+        UriMatcher uriMatcher = new UriMatcher(Arrays.asList("/api/v1/health", "/favicon.ico"));
+
+        // Then
+        assertThat(uriMatcher.matches("GET", "/api/v1/health")).isTrue();
+        assertThat(uriMatcher.matches("GET", "/api/v1/healthz")).isTrue();
+        assertThat(uriMatcher.matches("GET", "/favicon.ico")).isTrue();
+        assertThat(uriMatcher.matches("GET", "/api/v1/heal")).isFalse();
+        assertThat(uriMatcher.matches("GET", "/api/v1/sample")).isFalse();
+    }
+
+    @Test
+    public void test_method() {
+
+        // Given
+        UriMatcher uriMatcher = new UriMatcher(Arrays.asList("GET /api/v1/users", "/api"));
+
+        // Then
+        // 상위 prefix 규칙은 모든 method 에 적용된다.
+        assertThat(uriMatcher.matches("POST", "/api/v1/users")).isTrue();
+
+        uriMatcher = new UriMatcher(Collections.singletonList("GET /api/v1/users"));
+        assertThat(uriMatcher.matches("get", "/api/v1/users/1")).isTrue();
+        assertThat(uriMatcher.matches("POST", "/api/v1/users/1")).isFalse();
+    }
+
+    @Test
+    public void test_pattern() {
+
+        // Given
+        UriMatcher uriMatcher = new UriMatcher(Arrays.asList("/static/**/*.js", "POST /api/*/upload", "/api/v1/users/{id}/avatar"));
+
+        // Then
+        assertThat(uriMatcher.matches("GET", "/static/js/app.js")).isTrue();
+        assertThat(uriMatcher.matches("GET", "/static/js/app.css")).isFalse();
+        assertThat(uriMatcher.matches("POST", "/api/v2/upload")).isTrue();
+        assertThat(uriMatcher.matches("PUT", "/api/v2/upload")).isFalse();
+        assertThat(uriMatcher.matches("GET", "/api/v1/users/123/avatar")).isTrue();
+        assertThat(uriMatcher.matches("GET", "/api/v1/users/123")).isFalse();
+    }
+
+    @Test
+    public void test_empty() {
+
+        // Given
+        UriMatcher uriMatcher = new UriMatcher(null);
+
+        // Then
+        assertThat(uriMatcher.matches("GET", "/api/v1/health")).isFalse();
+    }
+}
@@ -0,0 +1,40 @@
+package io.omnipede.system.filter.accesslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * User agent 분석 테스트
+ */
+class UserAgentServiceTest {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (iPhone; CPU iPhone OS 14_4 like Mac OS X) " +
+            "AppleWebKit/605.1.15 (KHTML, like Gecko) Version/14.0.3 Mobile/15E148 Safari/604.1";
+
+    @Test
+    public void test_shared_instance() {
+        assertThat(UserAgentService.getInstance(100)).isSameAs(UserAgentService.getInstance());
+    }
+
+    @Test
+    public void test_l1_cache() throws Exception {
+
+        // Given
+        UserAgentService userAgentService = UserAgentService.getInstance();
+        assertThat(userAgentService.awaitReady(1, TimeUnit.MINUTES)).isTrue();
+
+        // When
+        long hitCount = userAgentService.getL1HitCount();
+        String deviceClass = userAgentService.getDeviceClass(USER_AGENT);
+        String cachedDeviceClass = userAgentService.getDeviceClass(USER_AGENT);
+
+        // Then
+        assertThat(deviceClass).isEqualTo("Phone");
+        assertThat(cachedDeviceClass).isEqualTo(deviceClass);
+        assertThat(userAgentService.getL1HitCount()).isGreaterThan(hitCount);
+        assertThat(userAgentService.getDeviceClass("")).isNull();
+    }
+}